@@ -0,0 +1,61 @@
+package marvel.benchmarks;
+
+import graph.DiGraph;
+import marvel.BookMembership;
+import marvel.CsrGraph;
+import marvel.MarvelPaths;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the graphs from a dataset: the whole load of each graph from its file, and the
+ * compact graph alone from an already parsed dataset on a given number of threads. A synthetic
+ * dataset is loaded from its file on disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BuildBenchmark {
+
+    @Param({"marvel.tsv", "synthetic-250000"})
+    public String dataset;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Path file;
+    private BookMembership membership;
+
+    @Setup
+    public void setup() {
+        file = Datasets.isSynthetic(dataset) ? Datasets.syntheticFile(dataset) : null;
+        membership = Datasets.membership(dataset);
+    }
+
+    @Benchmark
+    public DiGraph<String, String> loadGraph() throws IOException {
+        if (file == null) {
+            return MarvelPaths.loadGraph(dataset);
+        }
+        return MarvelPaths.toDiGraph(MarvelPaths.loadCompactGraph(file));
+    }
+
+    @Benchmark
+    public CsrGraph loadCompactGraph() throws IOException {
+        if (file == null) {
+            return MarvelPaths.loadCompactGraph(dataset, threads);
+        }
+        return MarvelPaths.loadCompactGraph(file, threads);
+    }
+
+    @Benchmark
+    public CsrGraph fromMembership() {
+        return CsrGraph.fromMembership(membership, threads);
+    }
+}
@@ -0,0 +1,224 @@
+package marvel.benchmarks;
+
+import marvel.BookMembership;
+import marvel.CsrGraph;
+import marvel.MarvelParser;
+import marvel.SyntheticData;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Datasets builds the inputs the benchmarks share: a dataset cut down to a share of its books, and
+ * seeded pairs of characters to search between, picked by how far apart they are and by how many
+ * neighbors they have.
+ *
+ * A dataset is either a file in the resources/data folder, such as "marvel.tsv", or "synthetic-"
+ * followed by a number of rows, such as "synthetic-1000000", for the dataset SyntheticData writes
+ * with that many rows. A synthetic dataset is written to the temporary directory the first time it
+ * is asked for and read from there after that.
+ */
+final class Datasets {
+
+    private static final String SYNTHETIC = "synthetic-";
+    private static final long SEED = 331;
+
+    // Datasets only has static helpers
+    private Datasets() {
+    }
+
+    /**
+     * @param dataset a dataset name
+     * @return true iff dataset names a synthetic dataset
+     */
+    static boolean isSynthetic(String dataset) {
+        return dataset.startsWith(SYNTHETIC);
+    }
+
+    /**
+     * Finds the file of a synthetic dataset, writing it first if it does not exist yet.
+     *
+     * @param dataset the dataset, "synthetic-" followed by a number of rows
+     * @throws UncheckedIOException if the file cannot be written
+     * @spec.requires isSynthetic(dataset)
+     * @return the path of the file
+     */
+    static Path syntheticFile(String dataset) {
+        long rows = Long.parseLong(dataset.substring(SYNTHETIC.length()));
+        Path file = Paths.get(System.getProperty("java.io.tmpdir"), "marvel-" + dataset + "-" + SEED + ".tsv");
+        try {
+            if (!Files.exists(file)) {
+                // written next to its final name and moved, so an interrupted run leaves no partial file
+                Path partial = Files.createTempFile(file.getParent(), "marvel-" + dataset, ".partial");
+                SyntheticData.write(partial, rows, SEED);
+                Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return file;
+    }
+
+    /**
+     * Reads a dataset with MarvelParser.parseMembership.
+     *
+     * @param dataset a dataset name
+     * @throws UncheckedIOException if a synthetic dataset cannot be written or read
+     * @spec.requires dataset is a valid dataset name
+     * @return the characters of every book
+     */
+    static BookMembership membership(String dataset) {
+        if (!isSynthetic(dataset)) {
+            return MarvelParser.parseMembership(dataset);
+        }
+        try {
+            return MarvelParser.parseMembership(syntheticFile(dataset));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the given share of the books of a dataset. Which books are kept depends only on their
+     * names, so every run of a benchmark sees the same graph.
+     *
+     * @param dataset a dataset name
+     * @param percent share of the books to keep
+     * @throws UncheckedIOException if a synthetic dataset cannot be written or read
+     * @spec.requires dataset is a valid dataset name and 0 &lt; percent &lt;= 100
+     * @return the characters of every kept book
+     */
+    static BookMembership membership(String dataset, int percent) {
+        if (percent >= 100) {
+            return membership(dataset);
+        }
+        List<Map.Entry<String, String>> rows = new ArrayList<>();
+        MarvelParser.RowHandler handler = (data, heroStart, heroEnd, bookStart, bookEnd) -> {
+            String book = MarvelParser.decode(data, bookStart, bookEnd);
+            if (Math.floorMod(book.hashCode(), 100) < percent) {
+                rows.add(new AbstractMap.SimpleImmutableEntry<>(
+                        MarvelParser.decode(data, heroStart, heroEnd), book));
+            }
+        };
+        if (isSynthetic(dataset)) {
+            try {
+                MarvelParser.parseRows(syntheticFile(dataset), handler);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            MarvelParser.parseRows(dataset, handler);
+        }
+        return MarvelParser.parseMembership("dummyEmpty.tsv").withRows(rows);
+    }
+
+    /**
+     * Picks pairs of characters to search between. The first character of a pair is a hub, one of the
+     * 1% of characters with the most neighbors, or a leaf, one of the quarter with the fewest (but at
+     * least one). The second is at most two steps from the first when distribution is "near", as far
+     * as any character connected to it when "far", and not connected to it when "disconnected".
+     *
+     * @param graph to pick from
+     * @param distribution "near", "far" or "disconnected"
+     * @param endpoints "hub" or "leaf"
+     * @param count number of pairs
+     * @param seed of the random choices
+     * @throws IllegalArgumentException if distribution or endpoints is not one of the above
+     * @throws IllegalStateException if graph has no such pairs
+     * @spec.requires graph != null and count &gt;= 0
+     * @return count pairs of names, each an array of the two names
+     */
+    static String[][] pairs(CsrGraph graph, String distribution, String endpoints, int count, long seed) {
+        Random random = new Random(seed);
+        int[] sources = endpoints(graph, endpoints);
+        int[] level = new int[graph.size()];
+        int[] queue = new int[graph.size()];
+        String[][] pairs = new String[count][];
+        for (int i = 0; i < count; i++) {
+            for (int attempt = 0; pairs[i] == null; attempt++) {
+                if (attempt == 1000) {
+                    throw new IllegalStateException("no " + distribution + " pairs from " + endpoints + " nodes");
+                }
+                int u = sources[random.nextInt(sources.length)];
+                int v = partner(graph, u, distribution, random, level, queue);
+                if (v >= 0) {
+                    pairs[i] = new String[] {graph.name(u), graph.name(v)};
+                }
+            }
+        }
+        return pairs;
+    }
+
+    // the nodes with at least one neighbor, fewest neighbors first, keeping the share endpoints asks for
+    private static int[] endpoints(CsrGraph graph, String endpoints) {
+        List<Integer> nodes = new ArrayList<>();
+        for (int n = 0; n < graph.size(); n++) {
+            if (graph.degree(n) > 0) {
+                nodes.add(n);
+            }
+        }
+        if (nodes.isEmpty()) {
+            throw new IllegalStateException("graph has no edges");
+        }
+        nodes.sort(Comparator.comparing((Integer n) -> graph.degree(n)).thenComparing(n -> n));
+        List<Integer> kept;
+        if (endpoints.equals("hub")) {
+            kept = nodes.subList(nodes.size() - Math.max(1, nodes.size() / 100), nodes.size());
+        } else if (endpoints.equals("leaf")) {
+            kept = nodes.subList(0, Math.max(1, nodes.size() / 4));
+        } else {
+            throw new IllegalArgumentException("unknown endpoints " + endpoints);
+        }
+        return kept.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // a node in the given relation to u, or -1 if there is none
+    private static int partner(CsrGraph graph, int u, String distribution, Random random, int[] level,
+                               int[] queue) {
+        List<Integer> candidates = new ArrayList<>();
+        if (distribution.equals("disconnected")) {
+            for (int n = 0; n < graph.size(); n++) {
+                if (!graph.connected(u, n)) {
+                    candidates.add(n);
+                }
+            }
+        } else {
+            int deepest = levels(graph, u, level, queue);
+            boolean near = distribution.equals("near");
+            if (!near && !distribution.equals("far")) {
+                throw new IllegalArgumentException("unknown distribution " + distribution);
+            }
+            for (int n = 0; n < graph.size(); n++) {
+                if (near ? level[n] == 1 || level[n] == 2 : level[n] == deepest && deepest > 0) {
+                    candidates.add(n);
+                }
+            }
+        }
+        return candidates.isEmpty() ? -1 : candidates.get(random.nextInt(candidates.size()));
+    }
+
+    // fills level with the steps from start to every node, -1 if not connected. returns the most steps
+    private static int levels(CsrGraph graph, int start, int[] level, int[] queue) {
+        Arrays.fill(level, -1);
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        level[start] = 0;
+        while (head < tail) {
+            int n = queue[head++];
+            for (int k = graph.firstLink(n); k < graph.endLink(n); k++) {
+                int m = graph.linkTarget(k);
+                if (level[m] < 0) {
+                    level[m] = level[n] + 1;
+                    queue[tail++] = m;
+                }
+            }
+        }
+        return level[queue[tail - 1]];
+    }
+}
@@ -0,0 +1,76 @@
+package marvel.benchmarks;
+
+import marvel.CsrGraph;
+import marvel.NameIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking up what a user typed at the prompt. Every call looks up the next of a fixed set of
+ * seeded queries taken from the names of at least four characters in the dataset: a whole name, a
+ * piece of one, or a whole name with one letter changed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class NameLookupBenchmark {
+
+    private static final int QUERIES = 256;
+    private static final long SEED = 331;
+
+    @Param({"marvel.tsv", "synthetic-250000"})
+    public String dataset;
+
+    @Param({"exact", "substring", "typo"})
+    public String query;
+
+    private NameIndex index;
+    private String[] queries;
+    private int next;
+
+    @Setup
+    public void setup() {
+        CsrGraph graph = CsrGraph.fromMembership(Datasets.membership(dataset));
+        index = NameIndex.fromGraph(graph);
+        Random random = new Random(SEED);
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String name;
+            do {
+                name = graph.name(random.nextInt(graph.size()));
+            } while (name.length() < 4);
+            int at = random.nextInt(name.length());
+            if (query.equals("exact")) {
+                queries[i] = name;
+            } else if (query.equals("substring")) {
+                queries[i] = name.substring(at, Math.min(name.length(), at + 4));
+            } else if (query.equals("typo")) {
+                queries[i] = name.substring(0, at) + (char) ('A' + random.nextInt(26)) + name.substring(at + 1);
+            } else {
+                throw new IllegalArgumentException("unknown query " + query);
+            }
+        }
+    }
+
+    private String nextQuery() {
+        String text = queries[next];
+        next = (next + 1) % QUERIES;
+        return text;
+    }
+
+    @Benchmark
+    public List<String> lookup() {
+        return index.lookup(nextQuery());
+    }
+
+    @Benchmark
+    public List<String> fuzzyMatches() {
+        return index.fuzzyMatches(nextQuery(), 3, 10);
+    }
+}
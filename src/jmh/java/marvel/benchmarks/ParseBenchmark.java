@@ -0,0 +1,44 @@
+package marvel.benchmarks;
+
+import marvel.BookMembership;
+import marvel.MarvelParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a dataset, both into the book to characters map of parseData and into the coded
+ * BookMembership the compact graph is built from. A synthetic dataset is read from its file on disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ParseBenchmark {
+
+    @Param({"marvel.tsv", "synthetic-250000", "synthetic-1000000"})
+    public String dataset;
+
+    private Path file;
+
+    @Setup
+    public void setup() {
+        file = Datasets.isSynthetic(dataset) ? Datasets.syntheticFile(dataset) : null;
+    }
+
+    @Benchmark
+    public HashMap<String, Set<String>> parseData() throws IOException {
+        return file == null ? MarvelParser.parseData(dataset) : MarvelParser.parseData(file);
+    }
+
+    @Benchmark
+    public BookMembership parseMembership() throws IOException {
+        return file == null ? MarvelParser.parseMembership(dataset) : MarvelParser.parseMembership(file);
+    }
+}
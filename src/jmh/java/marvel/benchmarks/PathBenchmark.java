@@ -0,0 +1,94 @@
+package marvel.benchmarks;
+
+import graph.DiGraph;
+import marvel.CsrGraph;
+import marvel.MarvelPaths;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one path search with each of the searches of MarvelPaths. Every call searches the next of
+ * a fixed set of seeded pairs, so a measurement averages over pairs of the same kind: near or far
+ * apart or not connected, starting from a hub or from a leaf. The graph is a share of the books of
+ * the dataset, so the searches can be compared on graphs of a few sizes; larger ones come from the
+ * synthetic datasets, such as with -p dataset=synthetic-10000000.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PathBenchmark {
+
+    private static final int PAIRS = 256;
+    private static final long SEED = 331;
+
+    @Param({"marvel.tsv", "synthetic-250000"})
+    public String dataset;
+
+    @Param({"25", "100"})
+    public int percent;
+
+    @Param({"near", "far", "disconnected"})
+    public String distribution;
+
+    @Param({"hub", "leaf"})
+    public String endpoints;
+
+    private CsrGraph graph;
+    private String[][] pairs;
+    private int next;
+
+    @Setup
+    public void setup() {
+        graph = CsrGraph.fromMembership(Datasets.membership(dataset, percent));
+        pairs = Datasets.pairs(graph, distribution, endpoints, PAIRS, SEED);
+    }
+
+    /**
+     * The graph of a PathBenchmark as a DiGraph, only built for the benchmarks that search one.
+     */
+    @State(Scope.Benchmark)
+    public static class DiGraphState {
+
+        private DiGraph<String, String> digraph;
+
+        @Setup
+        public void setup(PathBenchmark benchmark) {
+            digraph = MarvelPaths.toDiGraph(benchmark.graph);
+        }
+    }
+
+    private String[] nextPair() {
+        String[] pair = pairs[next];
+        next = (next + 1) % PAIRS;
+        return pair;
+    }
+
+    @Benchmark
+    public LinkedList<DiGraph.LabeledEdge<String, String>> findPath(DiGraphState state) {
+        String[] pair = nextPair();
+        return MarvelPaths.findPath(state.digraph, pair[0], pair[1]);
+    }
+
+    @Benchmark
+    public LinkedList<DiGraph.LabeledEdge<String, String>> findCompactPath() {
+        String[] pair = nextPair();
+        return MarvelPaths.findCompactPath(graph, pair[0], pair[1]);
+    }
+
+    @Benchmark
+    public LinkedList<DiGraph.LabeledEdge<String, String>> findBidirectionalPath() {
+        String[] pair = nextPair();
+        return MarvelPaths.findBidirectionalPath(graph, pair[0], pair[1]);
+    }
+
+    @Benchmark
+    public LinkedList<DiGraph.LabeledEdge<String, Integer>> findStrongestPath() {
+        String[] pair = nextPair();
+        return MarvelPaths.findStrongestPath(graph, pair[0], pair[1]);
+    }
+}
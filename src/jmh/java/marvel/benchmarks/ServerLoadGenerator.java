@@ -0,0 +1,157 @@
+package marvel.benchmarks;
+
+import marvel.CsrGraph;
+import marvel.PathServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends path or distance queries to a PathServer from a number of concurrent clients and reports the
+ * throughput and the p50, p99 and max latency. Unless a url is given, it starts a server for the
+ * dataset in this process on a free port. The queries are seeded pairs from Datasets.pairs, cycling
+ * through the near and far pairs from hubs and from leaves.
+ *
+ * Arguments are name=value pairs, all optional:
+ *  dataset      the dataset to query, as the benchmarks name them (marvel.tsv)
+ *  endpoint     path or distance (path)
+ *  requests     number of requests measured (20000)
+ *  warmup       number of requests sent before measuring (2000)
+ *  concurrency  number of clients, each sending one request at a time (8)
+ *  url          base url of a running server, such as http://localhost:8331, instead of starting one
+ */
+public final class ServerLoadGenerator {
+
+    private static final int PAIRS = 256;
+    private static final long SEED = 331;
+
+    private ServerLoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                System.err.println("arguments are name=value pairs, not " + arg);
+                System.exit(2);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        String dataset = options.getOrDefault("dataset", "marvel.tsv");
+        String endpoint = options.getOrDefault("endpoint", "path");
+        int requests = Integer.parseInt(options.getOrDefault("requests", "20000"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "2000"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "8"));
+
+        // must be set before the server classes load, see PathServer
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        CsrGraph graph = CsrGraph.fromMembership(Datasets.membership(dataset));
+        String[][] pairs = queries(graph);
+        PathServer server = null;
+        String base = options.get("url");
+        if (base == null) {
+            server = PathServer.start(graph, 0);
+            base = "http://localhost:" + server.port();
+        }
+        String[] urls = new String[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            urls[i] = base + "/" + endpoint + "?from=" + URLEncoder.encode(pairs[i][0], "UTF-8")
+                    + "&to=" + URLEncoder.encode(pairs[i][1], "UTF-8");
+        }
+
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        try {
+            run(clients, concurrency, urls, warmup);
+            long began = System.nanoTime();
+            long[] latencies = run(clients, concurrency, urls, requests);
+            double seconds = (System.nanoTime() - began) / 1e9;
+            Arrays.sort(latencies);
+            System.out.printf("%s /%s, %d requests from %d clients%n", dataset, endpoint, requests, concurrency);
+            System.out.printf("throughput %.0f requests/s%n", requests / seconds);
+            System.out.printf("latency p50 %.3f ms, p99 %.3f ms, max %.3f ms%n", percentile(latencies, 0.5) / 1e6,
+                    percentile(latencies, 0.99) / 1e6, latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6);
+        } finally {
+            clients.shutdown();
+            clients.awaitTermination(1, TimeUnit.MINUTES);
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    // the near and far pairs from hubs and from leaves, interleaved
+    private static String[][] queries(CsrGraph graph) {
+        String[][][] kinds = {
+            Datasets.pairs(graph, "near", "hub", PAIRS, SEED),
+            Datasets.pairs(graph, "far", "hub", PAIRS, SEED),
+            Datasets.pairs(graph, "near", "leaf", PAIRS, SEED),
+            Datasets.pairs(graph, "far", "leaf", PAIRS, SEED),
+        };
+        String[][] pairs = new String[kinds.length * PAIRS][];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = kinds[i % kinds.length][i / kinds.length];
+        }
+        return pairs;
+    }
+
+    // sends count requests, cycling through urls, and returns the latency of each in nanoseconds
+    private static long[] run(ExecutorService clients, int concurrency, String[] urls, int count) throws Exception {
+        long[] latencies = new long[count];
+        AtomicInteger next = new AtomicInteger();
+        Future<?>[] running = new Future<?>[concurrency];
+        for (int c = 0; c < concurrency; c++) {
+            running[c] = clients.submit(() -> {
+                byte[] buffer = new byte[8192];
+                for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                    long began = System.nanoTime();
+                    send(urls[i % urls.length], buffer);
+                    latencies[i] = System.nanoTime() - began;
+                }
+            });
+        }
+        for (Future<?> client : running) {
+            client.get();
+        }
+        return latencies;
+    }
+
+    // reads the whole answer, so the connection can be kept alive for the next request
+    private static void send(String url, byte[] buffer) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            int status = connection.getResponseCode();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                while (in.read(buffer) >= 0) {
+                    // drain
+                }
+            }
+            if (status != 200) {
+                throw new IllegalStateException("status " + status + " for " + url);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,212 @@
+package marvel;
+
+import graph.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * BatchQueries answers a stream of path queries on one CsrGraph without a prompt: one "A\tB" pair per
+ * line in, one answer per line out, in the same order. Blank lines are skipped.
+ *
+ * Answers are found in parallel, but at most window queries are read ahead of the oldest answer not
+ * written yet. Reading waits for that answer, so however long the input is, only window queries and
+ * answers are held at once. Each answer is written, and the output flushed, as soon as it and those
+ * before it are found, by the thread that found it, so with input typed a line at a time each answer
+ * shows up without waiting for the next line.
+ *
+ * In TSV, an answer is from, to, the length of the path (-1 if there is none) and then, for each step,
+ * the book and the character it leads to, all separated by tabs. A query that fails is from, to,
+ * "error" and the message; for a line that is not two names, from and to are empty. In JSON lines, an
+ * answer is the object PathServer gives for /path and a failed query {from, to, error}.
+ */
+public final class BatchQueries {
+
+    /**
+     * How answers are written.
+     */
+    public enum Format { TSV, JSON }
+
+    /**
+     * Queries read ahead per thread answering them, when the window is not given.
+     */
+    public static final int WINDOW_PER_THREAD = 16;
+
+    private BatchQueries() {
+    }
+
+    /**
+     * Answers every query read from in, writing the answers to out in the order of the queries and
+     * flushing out after each run of answers written. Neither in nor out is closed. Answers are written
+     * from the threads of executor, but never two at once and never after this returns.
+     *
+     * @param graph the graph to search
+     * @param in one "A\tB" pair per line
+     * @param out where the answers are written
+     * @param format of the answers
+     * @param executor runs the searches
+     * @param window most queries read ahead of the oldest answer not yet written
+     * @throws IOException if in or out does, or if interrupted while waiting for an answer
+     * @spec.requires no argument is null and window &gt; 0 and executor is not shut down
+     * @spec.effects reads in to its end and writes one line to out for each line of in that is not blank
+     * @return the number of queries answered
+     */
+    public static long run(CsrGraph graph, BufferedReader in, Writer out, Format format,
+                           ExecutorService executor, int window) throws IOException {
+        assert graph != null && in != null && out != null && format != null && executor != null && window > 0;
+        // General idea
+        // keep the answers not written yet in input order. whichever thread finishes an answer writes
+        // every finished answer at the head, so the output never waits for more input. the reader
+        // waits while window answers are pending, and at the end of in until none are
+        Answers answers = new Answers(out, window);
+        long lines = 0;
+        try {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                lines++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String query = line;
+                long number = lines;
+                CompletableFuture<String> answer = answers.add();
+                executor.execute(() -> {
+                    try {
+                        answer.complete(answer(graph, query, number, format));
+                    } catch (RuntimeException | Error e) {
+                        answer.completeExceptionally(e);
+                    }
+                    answers.writeFinished();
+                });
+            }
+            return answers.finish();
+        } finally {
+            answers.close();
+        }
+    }
+
+    // the answers of one run not written yet, guarded by this
+    private static final class Answers {
+        private final Writer out;
+        private final int window;
+        private final ArrayDeque<CompletableFuture<String>> pending = new ArrayDeque<>();
+        private long written;
+        private Throwable failure;
+        private boolean closed;
+
+        Answers(Writer out, int window) {
+            this.out = out;
+            this.window = window;
+        }
+
+        // waits until fewer than window answers are pending, then adds one more
+        synchronized CompletableFuture<String> add() throws IOException {
+            while (pending.size() >= window && failure == null) {
+                await();
+            }
+            rethrow();
+            CompletableFuture<String> answer = new CompletableFuture<>();
+            pending.add(answer);
+            return answer;
+        }
+
+        // writes the finished answers at the head of pending, then flushes out
+        synchronized void writeFinished() {
+            if (closed || failure != null || pending.isEmpty() || !pending.peek().isDone()) {
+                return;
+            }
+            try {
+                while (!pending.isEmpty() && pending.peek().isDone()) {
+                    out.write(pending.peek().join());
+                    pending.poll();
+                    written++;
+                }
+                out.flush();
+            } catch (IOException | RuntimeException | Error e) {
+                // a CompletionException carries whatever a query threw
+                failure = e instanceof CompletionException ? e.getCause() : e;
+            }
+            notifyAll();
+        }
+
+        // waits until every answer is written
+        synchronized long finish() throws IOException {
+            while (!pending.isEmpty() && failure == null) {
+                await();
+            }
+            rethrow();
+            return written;
+        }
+
+        // stops any answer still running from being written
+        synchronized void close() {
+            closed = true;
+            for (CompletableFuture<String> answer : pending) {
+                answer.cancel(true);
+            }
+        }
+
+        private void await() throws IOException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for an answer");
+            }
+        }
+
+        private void rethrow() throws IOException {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+        }
+    }
+
+    // the line written for one query, ending in a newline
+    private static String answer(CsrGraph graph, String line, long number, Format format) {
+        String[] pair = line.split("\t", -1);
+        if (pair.length != 2) {
+            return error("", "", "line " + number + " is not two names separated by a tab", format);
+        }
+        for (String name : pair) {
+            if (graph.id(name) < 0) {
+                return error(pair[0], pair[1], name + " is not in the graph.", format);
+            }
+        }
+        List<DiGraph.LabeledEdge<String, String>> path = MarvelPaths.findBidirectionalPath(graph, pair[0], pair[1]);
+        StringBuilder out = new StringBuilder();
+        if (format == Format.JSON) {
+            PathServer.pathJson(out, pair[0], pair[1], path);
+        } else {
+            out.append(pair[0]).append('\t').append(pair[1]).append('\t').append(path == null ? -1 : path.size());
+            if (path != null) {
+                for (DiGraph.LabeledEdge<String, String> edge : path) {
+                    out.append('\t').append(edge.getLabel()).append('\t').append(edge.getTo());
+                }
+            }
+        }
+        return out.append('\n').toString();
+    }
+
+    private static String error(String from, String to, String message, Format format) {
+        StringBuilder out = new StringBuilder();
+        if (format == Format.JSON) {
+            PathServer.pairErrorJson(out, from, to, message);
+        } else {
+            out.append(from).append('\t').append(to).append("\terror\t").append(message);
+        }
+        return out.append('\n').toString();
+    }
+}
@@ -0,0 +1,151 @@
+package marvel;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * BfsWorkspace holds the arrays a breadth-first search over int node ids needs, so that searches
+ * run back to back on one thread reuse them instead of allocating new ones.
+ * Instead of being cleared between searches, every per-node mark is an epoch stamp: a node counts
+ * as marked only if its stamp equals the epoch of the current search, and starting a search just
+ * bumps the epoch. Arrays only grow, to fit the largest graph searched on the thread.
+ *
+ * A workspace belongs to a single thread and a single search at a time; get() hands out the one of
+ * the calling thread.
+ */
+final class BfsWorkspace {
+
+    private static final ThreadLocal<BfsWorkspace> LOCAL = ThreadLocal.withInitial(BfsWorkspace::new);
+
+    // stamps: a node is seen from the start, seen from the end, or marked this search iff its stamp == epoch
+    int[] seen = new int[0];
+    int[] seenBack = new int[0];
+    int[] marked = new int[0];
+    int[] bookSeen = new int[0];
+
+    // only meaningful for nodes whose matching stamp is current
+    int[] parent = new int[0];
+    int[] parentLabel = new int[0];
+    int[] distance = new int[0];
+    int[] distanceBack = new int[0];
+
+    // nodes in the order they were discovered; the BFS queues are ranges of these
+    int[] queue = new int[0];
+    int[] queueBack = new int[0];
+    int[] levels = new int[0];
+
+    int epoch = 0;
+
+    // for findStrongestPath, only allocated once it runs on the thread; which nodes are in it is told
+    // by the seen and marked stamps, so it is emptied in constant time
+    private IndexedMinHeap heap;
+
+    // for ParallelBfs, only allocated once a parallel search runs on the thread. these are not
+    // stamped: the search leaves them clear, and parallelClean is false if one did not finish
+    int[] rank = new int[0];
+    long[] linksBefore = new long[0];
+    long[] levelKeys = new long[0];
+    long[] mergedKeys = new long[0];
+    int[] namesBelow = new int[0];
+    AtomicIntegerArray parentRank = new AtomicIntegerArray(0);
+    long[] visited = new long[0];
+    long[] frontier = new long[0];
+    boolean parallelClean = true;
+
+    private BfsWorkspace() {
+    }
+
+    /**
+     * Returns the workspace of the calling thread, ready for a new search over nodes node ids.
+     *
+     * @param nodes number of node ids the search may use
+     * @spec.requires nodes &gt;= 0
+     * @return the workspace of the calling thread with arrays for at least nodes ids and a fresh epoch
+     */
+    static BfsWorkspace get(int nodes) {
+        BfsWorkspace workspace = LOCAL.get();
+        workspace.ensureNodes(nodes);
+        workspace.nextEpoch();
+        return workspace;
+    }
+
+    /**
+     * Makes sure there is room to stamp books book ids.
+     *
+     * @param books number of book ids the search may use
+     */
+    void ensureBooks(int books) {
+        if (bookSeen.length < books) {
+            bookSeen = new int[books];
+        }
+    }
+
+    /**
+     * Returns the heap of this workspace, empty and able to hold nodes node ids.
+     * Whether a node is in it is not recorded by the heap, so a search tells that from its stamps.
+     *
+     * @param nodes number of node ids the search may use
+     * @return an empty heap for at least nodes ids
+     */
+    IndexedMinHeap heap(int nodes) {
+        if (heap == null || heap.capacity() < nodes) {
+            heap = new IndexedMinHeap(nodes);
+        }
+        heap.clear();
+        return heap;
+    }
+
+    /**
+     * Makes sure the arrays of ParallelBfs fit nodes node ids and are clear.
+     *
+     * @param nodes number of node ids the search may use
+     */
+    void ensureParallel(int nodes) {
+        if (rank.length < nodes) {
+            rank = new int[nodes];
+            linksBefore = new long[nodes + 1];
+            levelKeys = new long[nodes];
+            mergedKeys = new long[nodes];
+            namesBelow = new int[nodes + 1];
+            parentRank = new AtomicIntegerArray(nodes);
+            visited = new long[(nodes + 63) >>> 6];
+            frontier = new long[visited.length];
+            parallelClean = true;
+        } else if (!parallelClean) {
+            for (int i = 0; i < parentRank.length(); i++) {
+                parentRank.set(i, 0);
+            }
+            Arrays.fill(visited, 0);
+            Arrays.fill(frontier, 0);
+            parallelClean = true;
+        }
+    }
+
+    private void ensureNodes(int nodes) {
+        if (seen.length >= nodes) {
+            return;
+        }
+        seen = new int[nodes];
+        seenBack = new int[nodes];
+        marked = new int[nodes];
+        parent = new int[nodes];
+        parentLabel = new int[nodes];
+        distance = new int[nodes];
+        distanceBack = new int[nodes];
+        queue = new int[nodes];
+        queueBack = new int[nodes];
+        levels = new int[nodes + 2];
+    }
+
+    // new stamps start at zero, so an epoch of zero would mark everything; skip it when wrapping
+    private void nextEpoch() {
+        epoch++;
+        if (epoch == 0) {
+            Arrays.fill(seen, 0);
+            Arrays.fill(seenBack, 0);
+            Arrays.fill(marked, 0);
+            Arrays.fill(bookSeen, 0);
+            epoch = 1;
+        }
+    }
+}
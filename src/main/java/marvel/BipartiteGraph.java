@@ -0,0 +1,247 @@
+package marvel;
+
+import java.util.*;
+
+/**
+ * BipartiteGraph is an immutable graph with characters on one side and books on the other.
+ * A character is linked to every book it appears in and a book is linked to every character in it;
+ * two characters are connected when they share a book, but those character-to-character edges
+ * are never stored.
+ * This keeps the storage linear in the number of (character, book) rows, where a CsrGraph needs
+ * k * (k - 1) edges for a book with k characters.
+ *
+ * @spec.specfield heroes : set of String // names of the characters
+ * @spec.specfield books  : set of String // names of the books
+ * @spec.specfield appearances : set of (hero, book) // hero is in heroes and book is in books
+ *
+ * Abstract Invariant:
+ *  every hero and every book is part of at least one appearance
+ */
+public final class BipartiteGraph {
+
+    // Abstraction Function:
+    //  heroes = {heroNames[0], ..., heroNames[heroNames.length - 1]}
+    //  books = {bookNames[0], ..., bookNames[bookNames.length - 1]}
+    //  appearances = {(heroNames[h], bookNames[heroBooks[i]]) |
+    //                    0 <= h < heroNames.length and heroOffsets[h] <= i < heroOffsets[h + 1]}
+    //
+    // Representation Invariant:
+    //  no field is null, heroNames and bookNames are sorted in strictly ascending order
+    //  heroOffsets.length == heroNames.length + 1, bookOffsets.length == bookNames.length + 1
+    //  both offset arrays start at 0, are non-decreasing and end at heroBooks.length == bookHeroes.length
+    //  the books of each hero and the heroes of each book are sorted in strictly ascending order
+    //  book b is in the row of hero h iff hero h is in the row of book b
+
+    private static final boolean DEBUG = false;
+
+    private final String[] heroNames;
+    private final String[] bookNames;
+    private final int[] heroOffsets;
+    private final int[] heroBooks;
+    private final int[] bookOffsets;
+    private final int[] bookHeroes;
+
+    private BipartiteGraph(String[] heroNames, String[] bookNames, int[] heroOffsets, int[] heroBooks,
+                           int[] bookOffsets, int[] bookHeroes) {
+        this.heroNames = heroNames;
+        this.bookNames = bookNames;
+        this.heroOffsets = heroOffsets;
+        this.heroBooks = heroBooks;
+        this.bookOffsets = bookOffsets;
+        this.bookHeroes = bookHeroes;
+        checkRep();
+    }
+
+    /**
+     * Builds the bipartite graph of a parsed dataset.
+     * Character and book ids are the positions of their names in name order, which are the ids of
+     * membership when it comes straight from a parse.
+     *
+     * @param membership the characters of every book
+     * @spec.requires membership != null
+     * @return a BipartiteGraph linking every book to its characters
+     */
+    public static BipartiteGraph fromMembership(BookMembership membership) {
+        int[] heroOrder = membership.heroOrder();
+        int[] heroRank = membership.heroRank();
+        int[] bookOrder = membership.bookOrder();
+        String[] heroNames = new String[heroOrder.length];
+        for (int r = 0; r < heroOrder.length; r++) {
+            heroNames[r] = membership.heroName(heroOrder[r]);
+        }
+        String[] bookNames = new String[bookOrder.length];
+        int[] bookOffsets = new int[bookOrder.length + 1];
+        for (int r = 0; r < bookOrder.length; r++) {
+            int book = bookOrder[r];
+            bookNames[r] = membership.bookName(book);
+            bookOffsets[r + 1] = bookOffsets[r] + membership.bookEnd(book) - membership.bookFirst(book);
+        }
+        // the heroes of a book are sorted by id in membership, which is name order only after a parse
+        int[] bookHeroes = new int[bookOffsets[bookOrder.length]];
+        for (int r = 0; r < bookOrder.length; r++) {
+            int book = bookOrder[r];
+            int i = bookOffsets[r];
+            for (int x = membership.bookFirst(book); x < membership.bookEnd(book); x++) {
+                bookHeroes[i++] = heroRank[membership.heroOf(x)];
+            }
+            Arrays.sort(bookHeroes, bookOffsets[r], i);
+        }
+
+        int[] heroOffsets = new int[heroNames.length + 1];
+        for (int hero : bookHeroes) {
+            heroOffsets[hero + 1]++;
+        }
+        for (int h = 0; h < heroNames.length; h++) {
+            heroOffsets[h + 1] += heroOffsets[h];
+        }
+
+        // books are visited in ascending order, so every hero row comes out sorted
+        int[] heroBooks = new int[bookHeroes.length];
+        int[] cursor = Arrays.copyOf(heroOffsets, heroNames.length);
+        for (int b = 0; b < bookNames.length; b++) {
+            for (int i = bookOffsets[b]; i < bookOffsets[b + 1]; i++) {
+                heroBooks[cursor[bookHeroes[i]]++] = b;
+            }
+        }
+        return new BipartiteGraph(heroNames, bookNames, heroOffsets, heroBooks, bookOffsets, bookHeroes);
+    }
+
+    /**
+     * @return the number of characters in this graph
+     */
+    public int heroCount() {
+        return heroNames.length;
+    }
+
+    /**
+     * @return the number of books in this graph
+     */
+    public int bookCount() {
+        return bookNames.length;
+    }
+
+    /**
+     * @return true iff this graph has no characters
+     */
+    public boolean isEmpty() {
+        return heroNames.length == 0;
+    }
+
+    /**
+     * @return the number of (character, book) links stored in this graph
+     */
+    public int appearanceCount() {
+        return heroBooks.length;
+    }
+
+    /**
+     * @param name of the character to look for
+     * @return the id of the character, or -1 if name is not a character in this graph
+     */
+    public int heroId(String name) {
+        if (name == null) {
+            return -1;
+        }
+        int i = Arrays.binarySearch(heroNames, name);
+        return i >= 0 ? i : -1;
+    }
+
+    /**
+     * @param hero id of a character
+     * @spec.requires 0 &lt;= hero &lt; heroCount()
+     * @return the name of the character
+     */
+    public String heroName(int hero) {
+        return heroNames[hero];
+    }
+
+    /**
+     * @param book id of a book
+     * @spec.requires 0 &lt;= book &lt; bookCount()
+     * @return the name of the book
+     */
+    public String bookName(int book) {
+        return bookNames[book];
+    }
+
+    /**
+     * The books of hero are bookOf(i) for heroFirst(hero) &lt;= i &lt; heroEnd(hero), in ascending order.
+     *
+     * @param hero id of a character
+     * @spec.requires 0 &lt;= hero &lt; heroCount()
+     * @return the index of the first book of hero
+     */
+    public int heroFirst(int hero) {
+        return heroOffsets[hero];
+    }
+
+    /**
+     * @param hero id of a character
+     * @spec.requires 0 &lt;= hero &lt; heroCount()
+     * @return one past the index of the last book of hero
+     */
+    public int heroEnd(int hero) {
+        return heroOffsets[hero + 1];
+    }
+
+    /**
+     * @param i index between heroFirst(hero) and heroEnd(hero) of some hero
+     * @return the book id stored at index i
+     */
+    public int bookOf(int i) {
+        return heroBooks[i];
+    }
+
+    /**
+     * The characters of book are heroOf(i) for bookFirst(book) &lt;= i &lt; bookEnd(book), in ascending order.
+     *
+     * @param book id of a book
+     * @spec.requires 0 &lt;= book &lt; bookCount()
+     * @return the index of the first character of book
+     */
+    public int bookFirst(int book) {
+        return bookOffsets[book];
+    }
+
+    /**
+     * @param book id of a book
+     * @spec.requires 0 &lt;= book &lt; bookCount()
+     * @return one past the index of the last character of book
+     */
+    public int bookEnd(int book) {
+        return bookOffsets[book + 1];
+    }
+
+    /**
+     * @param i index between bookFirst(book) and bookEnd(book) of some book
+     * @return the character id stored at index i
+     */
+    public int heroOf(int i) {
+        return bookHeroes[i];
+    }
+
+    /**
+     * Throws an exception if the representation invariant is violated.
+     */
+    private void checkRep() {
+        assert heroNames != null && bookNames != null : "null arrays";
+        assert heroOffsets != null && heroBooks != null && bookOffsets != null && bookHeroes != null : "null arrays";
+        assert heroOffsets.length == heroNames.length + 1 && bookOffsets.length == bookNames.length + 1
+                : "bad offsets";
+        assert heroOffsets[heroNames.length] == heroBooks.length : "bad hero offsets";
+        assert bookOffsets[bookNames.length] == bookHeroes.length : "bad book offsets";
+        assert heroBooks.length == bookHeroes.length : "sides disagree";
+        if (DEBUG) {
+            for (int h = 0; h < heroNames.length; h++) {
+                for (int i = heroOffsets[h] + 1; i < heroOffsets[h + 1]; i++) {
+                    assert heroBooks[i - 1] < heroBooks[i] : "hero row not sorted";
+                }
+                for (int i = heroOffsets[h]; i < heroOffsets[h + 1]; i++) {
+                    int b = heroBooks[i];
+                    assert Arrays.binarySearch(bookHeroes, bookOffsets[b], bookOffsets[b + 1], h) >= 0
+                            : "missing back link";
+                }
+            }
+        }
+    }
+}
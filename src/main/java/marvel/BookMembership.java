@@ -0,0 +1,446 @@
+package marvel;
+
+import java.util.*;
+
+/**
+ * BookMembership is the immutable result of parsing a Marvel dataset: a dictionary of characters,
+ * a dictionary of books, and for every book the ids of the characters appearing in it.
+ * Ids are dense, and an id once handed out always stands for the same name. A parse hands them out
+ * in name order, so there comparing two ids is the same as comparing names; withRows gives the
+ * characters and books it adds the next ids, in name order among themselves.
+ *
+ * withRows shares its arrays with the membership it was called on where it can, and appends the
+ * books that gained members to the end of them, so it costs about as much as the books it changes.
+ *
+ * @spec.specfield heroes : sequence of String // every character, in ascending order
+ * @spec.specfield books  : sequence of String // every book, in ascending order
+ * @spec.specfield members : book -> set of hero // the characters appearing in each book
+ *
+ * Abstract Invariant:
+ *  every book has at least one member and every hero is a member of at least one book
+ */
+public final class BookMembership {
+
+    // Abstraction Function:
+    //  heroes = [heroNames[heroOrder[0]], ..., heroNames[heroOrder[heroNames.length - 1]]]
+    //  books = [bookNames[bookOrder[0]], ..., bookNames[bookOrder[bookNames.length - 1]]]
+    //  members(bookNames[b]) = {heroNames[bookHeroes[i]] | bookStart[b] <= i < bookEnd[b]}
+    //
+    // Representation Invariant:
+    //  no field is null, and neither heroNames nor bookNames has a null or a repeated name
+    //  heroOrder holds every hero id once, heroNames[heroOrder[r]] ascends strictly with r and
+    //  heroRank[heroOrder[r]] == r; likewise bookOrder and bookRank for the books
+    //  bookStart.length == bookEnd.length == bookNames.length and
+    //  0 <= bookStart[b] < bookEnd[b] <= used <= bookHeroes.length for every book b
+    //  the heroes of each book are sorted in strictly ascending order and are valid hero ids
+    //  appearances is the sum of bookEnd[b] - bookStart[b] over every book
+    //  bookHeroes[0..used) is never written again; only a membership that claims the slots after
+    //  used from tail may write them
+
+    private final String[] heroNames;
+    private final String[] bookNames;
+    private final int[] heroOrder;
+    private final int[] heroRank;
+    private final int[] bookOrder;
+    private final int[] bookRank;
+    private final int[] bookStart;
+    private final int[] bookEnd;
+    private final int[] bookHeroes;
+    private final int used;
+    private final int appearances;
+    private final SharedTail tail;
+
+    private BookMembership(String[] heroNames, String[] bookNames, int[] heroOrder, int[] heroRank,
+                           int[] bookOrder, int[] bookRank, int[] bookStart, int[] bookEnd, int[] bookHeroes,
+                           int used, int appearances, SharedTail tail) {
+        this.heroNames = heroNames;
+        this.bookNames = bookNames;
+        this.heroOrder = heroOrder;
+        this.heroRank = heroRank;
+        this.bookOrder = bookOrder;
+        this.bookRank = bookRank;
+        this.bookStart = bookStart;
+        this.bookEnd = bookEnd;
+        this.bookHeroes = bookHeroes;
+        this.used = used;
+        this.appearances = appearances;
+        this.tail = tail;
+        checkRep();
+    }
+
+    /**
+     * Builds a BookMembership from (hero, book) rows coded against two symbol tables.
+     * The codes are renumbered into name order and repeated rows are dropped.
+     *
+     * @param heroes dictionary the hero codes come from
+     * @param books dictionary the book codes come from
+     * @param rowHeroes hero code of each row
+     * @param rowBooks book code of each row
+     * @param rows number of rows
+     * @spec.requires every code is valid in its dictionary and rows &lt;= length of both arrays
+     * @return the membership of the given rows
+     */
+    static BookMembership fromRows(SymbolTable heroes, SymbolTable books, int[] rowHeroes, int[] rowBooks,
+                                   int rows) {
+        String[] heroNames = heroes.names();
+        int[] heroRank = sortAndRank(heroNames);
+        String[] bookNames = books.names();
+        int[] bookRank = sortAndRank(bookNames);
+
+        // counting sort by book, then sort and dedupe the heroes of each book in place
+        int[] offsets = new int[bookNames.length + 1];
+        for (int r = 0; r < rows; r++) {
+            offsets[bookRank[rowBooks[r]] + 1]++;
+        }
+        for (int b = 0; b < bookNames.length; b++) {
+            offsets[b + 1] += offsets[b];
+        }
+        int[] members = new int[rows];
+        int[] cursor = Arrays.copyOf(offsets, bookNames.length);
+        for (int r = 0; r < rows; r++) {
+            members[cursor[bookRank[rowBooks[r]]]++] = heroRank[rowHeroes[r]];
+        }
+        int end = 0;
+        for (int b = 0; b < bookNames.length; b++) {
+            int start = offsets[b];
+            Arrays.sort(members, start, offsets[b + 1]);
+            offsets[b] = end;
+            for (int i = start; i < offsets[b + 1]; i++) {
+                if (i == start || members[i] != members[i - 1]) {
+                    members[end++] = members[i];
+                }
+            }
+        }
+        offsets[bookNames.length] = end;
+        // ids are in name order, so one identity array serves as both order and rank
+        int[] heroIdentity = identity(heroNames.length);
+        int[] bookIdentity = identity(bookNames.length);
+        return new BookMembership(heroNames, bookNames, heroIdentity, heroIdentity, bookIdentity, bookIdentity,
+                Arrays.copyOf(offsets, bookNames.length), Arrays.copyOfRange(offsets, 1, bookNames.length + 1),
+                Arrays.copyOf(members, end), end, end, new SharedTail(end));
+    }
+
+    // sorts names in place and returns the new position of every name that was at index i
+    private static int[] sortAndRank(String[] names) {
+        Integer[] order = new Integer[names.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        String[] original = names.clone();
+        Arrays.sort(order, Comparator.comparing(i -> original[i]));
+        int[] rank = new int[names.length];
+        for (int r = 0; r < order.length; r++) {
+            rank[order[r]] = r;
+            names[r] = original[order[r]];
+        }
+        return rank;
+    }
+
+    private static int[] identity(int n) {
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i;
+        }
+        return ids;
+    }
+
+    /**
+     * Builds the membership of this dataset with more (hero, book) rows added. Characters and books
+     * that are new get the next ids, in name order among themselves, and every id of this membership
+     * keeps its name; rows already in this membership, or repeated, are dropped.
+     * The new membership shares the members of the books that gain none with this one, so the rows
+     * cost about as much as the books they add to, plus copying the per-book and per-name arrays.
+     *
+     * @param rows the (hero, book) rows to add
+     * @spec.requires rows != null and no row, hero or book is null
+     * @return a new BookMembership holding every appearance of this one and of rows
+     */
+    public BookMembership withRows(Collection<? extends Map.Entry<String, String>> rows) {
+        Set<String> newHeroes = new TreeSet<>();
+        Set<String> newBooks = new TreeSet<>();
+        for (Map.Entry<String, String> row : rows) {
+            if (heroId(row.getKey()) < 0) {
+                newHeroes.add(row.getKey());
+            }
+            if (bookId(row.getValue()) < 0) {
+                newBooks.add(row.getValue());
+            }
+        }
+        String[] heroes = append(heroNames, newHeroes);
+        String[] books = append(bookNames, newBooks);
+        int[] newHeroOrder = order(heroes, heroOrder);
+        int[] newBookOrder = order(books, bookOrder);
+        int[] newHeroRank = newHeroes.isEmpty() ? heroRank : rank(newHeroOrder);
+        int[] newBookRank = newBooks.isEmpty() ? bookRank : rank(newBookOrder);
+
+        // the added appearances as (book << 32 | hero), sorted so the new members of each book come
+        // together in ascending order and can be merged with its old members in one pass
+        long[] added = new long[rows.size()];
+        int count = 0;
+        for (Map.Entry<String, String> row : rows) {
+            long book = idOf(books, newBookOrder, row.getValue());
+            added[count++] = (book << 32) | idOf(heroes, newHeroOrder, row.getKey());
+        }
+        Arrays.sort(added);
+
+        // General idea
+        //  the members of a book that gains some are merged into a new run of slots past the end of
+        //  the slots this membership uses, with room for its old and new members; every other book
+        //  keeps its run. the array is shared with this membership unless another one appended to it
+        //  first or it is full, in which case the runs are first copied, packed, to a new array
+        int need = 0;
+        for (int a = 0; a < count; a++) {
+            int b = (int) (added[a] >>> 32);
+            if (a == 0 || (int) (added[a - 1] >>> 32) != b) {
+                need += b < bookNames.length ? bookEnd[b] - bookStart[b] : 0;
+            }
+            need++;
+        }
+        int[] starts = Arrays.copyOf(bookStart, books.length);
+        int[] ends = Arrays.copyOf(bookEnd, books.length);
+        int[] members = bookHeroes;
+        int at = used;
+        SharedTail claimed = tail;
+        if (need > 0 && (used + need > bookHeroes.length || !tail.claim(used, used + need))) {
+            members = new int[SharedTail.capacity(appearances + need)];
+            at = 0;
+            for (int b = 0; b < bookNames.length; b++) {
+                System.arraycopy(bookHeroes, bookStart[b], members, at, bookEnd[b] - bookStart[b]);
+                starts[b] = at;
+                at += bookEnd[b] - bookStart[b];
+                ends[b] = at;
+            }
+            claimed = new SharedTail(at + need);
+        }
+        int end = at + need;
+        int total = appearances;
+        int a = 0;
+        while (a < count) {
+            int b = (int) (added[a] >>> 32);
+            int i = b < bookNames.length ? starts[b] : 0;
+            int iEnd = b < bookNames.length ? ends[b] : 0;
+            total -= iEnd - i;
+            starts[b] = at;
+            int last = -1;
+            while (i < iEnd || (a < count && (int) (added[a] >>> 32) == b)) {
+                int hero;
+                if (a == count || (int) (added[a] >>> 32) != b || (i < iEnd && members[i] <= (int) added[a])) {
+                    hero = members[i++];
+                } else {
+                    hero = (int) added[a++];
+                }
+                if (hero != last) {
+                    members[at++] = hero;
+                    last = hero;
+                }
+            }
+            ends[b] = at;
+            total += at - starts[b];
+        }
+        return new BookMembership(heroes, books, newHeroOrder, newHeroRank, newBookOrder, newBookRank, starts,
+                ends, members, end, total, claimed);
+    }
+
+    // names followed by the names of extra, which are all new, in ascending order
+    private static String[] append(String[] names, Set<String> extra) {
+        if (extra.isEmpty()) {
+            return names;
+        }
+        String[] all = Arrays.copyOf(names, names.length + extra.size());
+        int i = names.length;
+        for (String name : extra) {
+            all[i++] = name;
+        }
+        return all;
+    }
+
+    // the ids of names in name order, given the ids of all but the last names in name order; the last
+    // names are new and already ascending, so the two runs are merged
+    private static int[] order(String[] names, int[] order) {
+        if (order.length == names.length) {
+            return order;
+        }
+        int[] merged = new int[names.length];
+        int i = 0;
+        int next = order.length;
+        for (int r = 0; r < merged.length; r++) {
+            if (next == names.length || (i < order.length && names[order[i]].compareTo(names[next]) < 0)) {
+                merged[r] = order[i++];
+            } else {
+                merged[r] = next++;
+            }
+        }
+        return merged;
+    }
+
+    // the position of every id in order
+    private static int[] rank(int[] order) {
+        int[] rank = new int[order.length];
+        for (int r = 0; r < order.length; r++) {
+            rank[order[r]] = r;
+        }
+        return rank;
+    }
+
+    /**
+     * Finds a name by binary search over ids in name order.
+     *
+     * @param names the name of each id
+     * @param order the ids in ascending order of name
+     * @param name to look for, or null
+     * @return the id of name, or -1 if name is null or not in names
+     */
+    static int idOf(String[] names, int[] order, String name) {
+        if (name == null) {
+            return -1;
+        }
+        int lo = 0;
+        int hi = order.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = names[order[mid]].compareTo(name);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return order[mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of characters
+     */
+    public int heroCount() {
+        return heroNames.length;
+    }
+
+    /**
+     * @return the number of books
+     */
+    public int bookCount() {
+        return bookNames.length;
+    }
+
+    /**
+     * @return the number of distinct (character, book) pairs
+     */
+    public int appearanceCount() {
+        return appearances;
+    }
+
+    /**
+     * @param hero id of a character
+     * @spec.requires 0 &lt;= hero &lt; heroCount()
+     * @return the name of the character
+     */
+    public String heroName(int hero) {
+        return heroNames[hero];
+    }
+
+    /**
+     * @param book id of a book
+     * @spec.requires 0 &lt;= book &lt; bookCount()
+     * @return the name of the book
+     */
+    public String bookName(int book) {
+        return bookNames[book];
+    }
+
+    /**
+     * @param name of the character to look for
+     * @return the id of the character, or -1 if there is no such character
+     */
+    public int heroId(String name) {
+        return idOf(heroNames, heroOrder, name);
+    }
+
+    /**
+     * @param name of the book to look for
+     * @return the id of the book, or -1 if there is no such book
+     */
+    public int bookId(String name) {
+        return idOf(bookNames, bookOrder, name);
+    }
+
+    /**
+     * The characters of book are heroOf(i) for bookFirst(book) &lt;= i &lt; bookEnd(book), in ascending order.
+     *
+     * @param book id of a book
+     * @spec.requires 0 &lt;= book &lt; bookCount()
+     * @return the index of the first character of book
+     */
+    public int bookFirst(int book) {
+        return bookStart[book];
+    }
+
+    /**
+     * @param book id of a book
+     * @spec.requires 0 &lt;= book &lt; bookCount()
+     * @return one past the index of the last character of book
+     */
+    public int bookEnd(int book) {
+        return bookEnd[book];
+    }
+
+    /**
+     * @param i index between bookFirst(book) and bookEnd(book) of some book
+     * @return the character id stored at index i
+     */
+    public int heroOf(int i) {
+        return bookHeroes[i];
+    }
+
+    // the arrays below are shared, not copied, with the graphs built from this membership and the
+    // memberships made from it by withRows; none of them is ever written where this membership uses it
+
+    String[] heroNames() {
+        return heroNames;
+    }
+
+    String[] bookNames() {
+        return bookNames;
+    }
+
+    int[] heroOrder() {
+        return heroOrder;
+    }
+
+    int[] heroRank() {
+        return heroRank;
+    }
+
+    int[] bookOrder() {
+        return bookOrder;
+    }
+
+    int[] bookRank() {
+        return bookRank;
+    }
+
+    int[] bookStarts() {
+        return bookStart;
+    }
+
+    int[] bookEnds() {
+        return bookEnd;
+    }
+
+    int[] bookHeroes() {
+        return bookHeroes;
+    }
+
+    /**
+     * Throws an exception if the representation invariant is violated.
+     */
+    private void checkRep() {
+        assert heroNames != null && bookNames != null && bookStart != null && bookEnd != null
+                && bookHeroes != null && tail != null : "null arrays";
+        assert heroOrder.length == heroNames.length && heroRank.length == heroNames.length : "bad hero order";
+        assert bookOrder.length == bookNames.length && bookRank.length == bookNames.length : "bad book order";
+        assert bookStart.length == bookNames.length && bookEnd.length == bookNames.length : "bad runs";
+        assert used <= bookHeroes.length && appearances <= used : "bad runs";
+    }
+}
@@ -0,0 +1,1165 @@
+package marvel;
+
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * CsrGraph is an immutable directed graph of characters connected by the books they appear in,
+ * stored in compressed-sparse-row form.
+ * Every character and every book is given a dense int id, so the whole graph lives in a handful
+ * of arrays instead of one object per edge. The ids are those of the BookMembership the graph is
+ * built from: in name order for a graph built from a parse, with characters added by extend taking
+ * the next ids. rank(node) is the position of a node in name order.
+ *
+ * @spec.specfield nodes : set of String  // names of the characters in the graph
+ * @spec.specfield edges : set of (from, to, label) // from and to are in nodes, label is a book
+ *
+ * The edges leaving a node are numbered in ascending order of (to, label), comparing names, so
+ * walking them in order visits the children of a node in lexicographic order.
+ *
+ * A CsrGraph is never changed after it is built and all of its fields are final, so once a
+ * reference to it is obtained it can be read from any number of threads without locking.
+ * A changed graph is always a new CsrGraph, and every CsrGraph gets a version no other graph in
+ * the process has, so results cached for one graph can tell when they are asked about another.
+ * The edge, link and component columns are IntBuffers: they wrap arrays in a graph built in this
+ * process, and are views of the file in a graph read from a GraphSnapshot, which are not copied.
+ * A graph made by extend shares the arrays of the graph it was made from, and writes the rows that
+ * changed past the end of the part the older graph uses, which the older graph never looks at. When
+ * there is no room left there, or another graph has already written there, it copies every row into
+ * new arrays with half as much room again, so most appends copy only the rows that change.
+ *
+ * The nodes are also split into connected components, numbered in the order of their first node,
+ * so whether two nodes are connected at all is answered without a search.
+ *
+ * Two characters that share many books have many edges between them. The edges between each pair
+ * are also collapsed into one link, numbered in the same order as the edges, that knows the books of
+ * the pair as a sorted run of edges and how many there are. A search that only cares which nodes are
+ * adjacent walks the links of a node instead of its edges, and looks at each neighbor once.
+ *
+ * Abstract Invariant:
+ *  no edge goes from a node to itself
+ */
+public final class CsrGraph {
+
+    // Abstraction Function:
+    //  nodes = {names[0], ..., names[names.length - 1]}
+    //  edges = {(names[i], names[targets[e]], labelNames[labels[e]]) |
+    //              0 <= i < names.length and linkEdges[linkStart[i]] <= e < linkEdges[linkEnd[i]]}
+    //  where here and below an IntBuffer field is read like an array: targets[e] is targets.get(e),
+    //  and targets.length is targets.limit()
+    //
+    // Representation Invariant:
+    //  no array or buffer field is null, and neither names nor labelNames has a null or a repeated name
+    //  order holds every node id once, names[order[r]] ascends strictly with r and rank[order[r]] == r
+    //  linkStart.length >= names.length and linkEnd.length >= names.length, and the links of node i
+    //  are linkStart[i] to linkEnd[i], one per distinct target of the edges of i in ascending order of
+    //  rank; link k has the edges linkEdges[k] to linkEdges[k + 1], all of which go to linkTargets[k]
+    //  0 <= targets[e] < names.length and targets[e] != i for every edge e of node i
+    //  0 <= labels[e] < labelNames.length
+    //  the edges of each node are sorted in strictly ascending order of (rank[targets[e]], the name of
+    //  labels[e])
+    //  the edges and links of distinct nodes do not overlap, and lie below edgeTail and linkTail;
+    //  linkEdges[linkTail] == edgeTail
+    //  edgeCount and linkCount are the number of edges and links of all nodes
+    //  targets, labels, linkTargets and linkEdges are never written below edgeTail and linkTail, but
+    //  slot linkTail, with the same value; only a graph that claims the edges after edgeTail from tail
+    //  may write past them
+    //  contiguous iff the rows of the nodes are one after the other in id order from slot 0, and then
+    //  linkStart[names.length] == linkCount
+    //  linksBefore[i] is the number of links of the nodes with ids below i, for 0 <= i <= names.length
+    //  component.length == names.length and 0 <= component[i] < componentSizes.length
+    //  component[i] == component[targets[e]] for every edge e of node i, and nodes with the same
+    //  component are connected by some path
+    //  the first node of component c comes before the first node of component c + 1
+    //  componentSizes[c] is the number of nodes i with component[i] == c
+    //  each of targetArray, labelArray, linkStartArray, linkTargetArray and linkEdgeArray is the array
+    //  the column of the same name wraps from index 0, or null if it wraps none
+
+    private static final boolean DEBUG = false;
+
+    // hands out the version of every graph built in this process
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final long version;
+    private final String[] names;
+    private final String[] labelNames;
+    private final int[] order;
+    private final int[] rank;
+    private final IntBuffer targets;
+    private final IntBuffer labels;
+    private final int edgeCount;
+    private final IntBuffer component;
+    private final int[] componentSizes;
+    private final IntBuffer linkStart;
+    private final IntBuffer linkEnd;
+    private final IntBuffer linkTargets;
+    private final IntBuffer linkEdges;
+    private final int linkCount;
+    private final IntBuffer linksBefore;
+    // the arrays behind the columns the searches read most, read directly in a graph built in this
+    // process, which is quicker than through a buffer
+    private final int[] targetArray;
+    private final int[] labelArray;
+    private final int[] linkStartArray;
+    private final int[] linkTargetArray;
+    private final int[] linkEdgeArray;
+    private final int edgeTail;
+    private final int linkTail;
+    private final SharedTail tail;
+    private final boolean contiguous;
+
+    private CsrGraph(String[] names, String[] labelNames, int[] order, int[] rank, Rows rows, IntBuffer component) {
+        this.names = names;
+        this.labelNames = labelNames;
+        this.order = order;
+        this.rank = rank;
+        this.targets = rows.targets;
+        this.labels = rows.labels;
+        this.edgeCount = rows.edgeCount;
+        this.component = component;
+        int count = 0;
+        for (int i = 0; i < names.length; i++) {
+            count = Math.max(count, component.get(i) + 1);
+        }
+        this.componentSizes = new int[count];
+        for (int i = 0; i < names.length; i++) {
+            componentSizes[component.get(i)]++;
+        }
+        this.linkStart = rows.linkStart;
+        this.linkEnd = rows.linkEnd;
+        this.linkTargets = rows.linkTargets;
+        this.linkEdges = rows.linkEdges;
+        this.linkCount = rows.linkCount;
+        this.edgeTail = rows.edgeTail;
+        this.linkTail = rows.linkTail;
+        this.tail = rows.tail;
+        this.contiguous = rows.contiguous;
+        if (contiguous) {
+            this.linksBefore = linkStart;
+        } else {
+            int[] before = new int[names.length + 1];
+            for (int i = 0; i < names.length; i++) {
+                before[i + 1] = before[i] + linkEnd.get(i) - linkStart.get(i);
+            }
+            this.linksBefore = IntBuffer.wrap(before);
+        }
+        this.targetArray = arrayOf(targets);
+        this.labelArray = arrayOf(labels);
+        this.linkStartArray = arrayOf(linkStart);
+        this.linkTargetArray = arrayOf(linkTargets);
+        this.linkEdgeArray = arrayOf(linkEdges);
+        this.version = VERSIONS.incrementAndGet();
+        checkRep();
+    }
+
+    // the rows of a graph: the edge and link arrays, which graphs extended from one another share,
+    // where the links of each node are in them and how much of them is used, gathered before the
+    // graph is made
+    private static final class Rows {
+        IntBuffer targets;
+        IntBuffer labels;
+        IntBuffer linkTargets;
+        IntBuffer linkEdges;
+        IntBuffer linkStart;
+        IntBuffer linkEnd;
+        int edgeCount;
+        int linkCount;
+        int edgeTail;
+        int linkTail;
+        SharedTail tail;
+        boolean contiguous;
+
+        // the rows of edges offsets[i] to offsets[i + 1] of each node i, one after the other. edges are
+        // sorted by target, so the first edge of a row and each new target after it start a link
+        static Rows of(int[] offsets, int[] targets, int[] labels) {
+            int n = offsets.length - 1;
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                int previous = -1;
+                for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                    count += targets[e] != previous ? 1 : 0;
+                    previous = targets[e];
+                }
+            }
+            int[] linkTargets = new int[count + 1];
+            int[] linkEdges = new int[count + 1];
+            int[] linkStart = new int[n + 1];
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                linkStart[i] = k;
+                k = scan(targets, linkTargets, linkEdges, offsets[i], offsets[i + 1], k);
+            }
+            linkStart[n] = k;
+            linkEdges[k] = targets.length;
+            return contiguous(IntBuffer.wrap(targets), IntBuffer.wrap(labels), IntBuffer.wrap(linkStart),
+                    IntBuffer.wrap(linkTargets), IntBuffer.wrap(linkEdges), targets.length, k);
+        }
+
+        // the rows of nodes 0 to linkStart.limit() - 2, one after the other from slot 0: the links of
+        // node i are linkStart[i] to linkStart[i + 1], and there are edgeCount edges and linkCount links
+        static Rows contiguous(IntBuffer targets, IntBuffer labels, IntBuffer linkStart, IntBuffer linkTargets,
+                               IntBuffer linkEdges, int edgeCount, int linkCount) {
+            Rows rows = new Rows();
+            rows.targets = targets;
+            rows.labels = labels;
+            rows.linkTargets = linkTargets;
+            rows.linkEdges = linkEdges;
+            rows.linkStart = linkStart;
+            rows.linkEnd = linkStart.duplicate().position(1).slice();
+            rows.edgeCount = edgeCount;
+            rows.edgeTail = edgeCount;
+            rows.linkCount = linkCount;
+            rows.linkTail = linkCount;
+            rows.tail = new SharedTail(edgeCount);
+            rows.contiguous = true;
+            return rows;
+        }
+    }
+
+    // adds the links of the row of edges start to end, from link k on, and returns the next link.
+    // every edge is written to slot k and k only moves on at a new target, which saves a branch the
+    // processor cannot predict; so the link arrays need one slot more than the links they get
+    private static int scan(int[] targets, int[] linkTargets, int[] linkEdges, int start, int end, int k) {
+        int previous = -1;
+        for (int e = start; e < end; e++) {
+            int target = targets[e];
+            linkTargets[k] = target;
+            linkEdges[k] = e;
+            k += target != previous ? 1 : 0;
+            previous = target;
+        }
+        return k;
+    }
+
+    // copies length ints of from, starting at index at, into to from index out
+    private static void copy(IntBuffer from, int at, int[] to, int out, int length) {
+        if (from.hasArray()) {
+            System.arraycopy(from.array(), from.arrayOffset() + at, to, out, length);
+        } else {
+            from.duplicate().position(at).get(to, out, length);
+        }
+    }
+
+    // the array column wraps if it wraps one from index 0, and null otherwise
+    private static int[] arrayOf(IntBuffer column) {
+        return column.hasArray() && column.arrayOffset() == 0 ? column.array() : null;
+    }
+
+    // the first length ints of from, or as many as it has followed by zeros, as a new array
+    private static int[] toArray(IntBuffer from, int length) {
+        int[] to = new int[length];
+        copy(from, 0, to, 0, Math.min(length, from.limit()));
+        return to;
+    }
+
+    /**
+     * Builds the co-appearance graph of a parsed dataset: every pair of distinct characters that
+     * appear in the same book are connected in both directions by an edge labeled with that book.
+     * Node and label ids are the hero and book ids of membership.
+     *
+     * @param membership the characters of every book
+     * @spec.requires membership != null
+     * @return a CsrGraph with characters as nodes and books as edges
+     */
+    public static CsrGraph fromMembership(BookMembership membership) {
+        return fromMembership(membership, 1);
+    }
+
+    /**
+     * Builds the same graph as fromMembership(membership), splitting the work over the given number
+     * of threads of a fork/join pool. The books are split into as many runs as there are threads,
+     * balanced by the number of edges each run makes, and each thread places the edges of its own run;
+     * the rows are then split the same way to be sorted. With one thread no pool is started.
+     *
+     * @param membership the characters of every book
+     * @param threads number of threads to build with
+     * @spec.requires membership != null and threads &gt; 0
+     * @return a CsrGraph with characters as nodes and books as edges, equal array for array to the
+     *         one fromMembership(membership) returns
+     */
+    public static CsrGraph fromMembership(BookMembership membership, int threads) {
+        assert threads > 0 : "need at least one thread";
+        long began = Metrics.ENABLED ? System.nanoTime() : 0;
+        String[] names = membership.heroNames();
+        String[] labelNames = membership.bookNames();
+        int[] heroOrder = membership.heroOrder();
+        int[] bookOrder = membership.bookOrder();
+        int[] bookStart = membership.bookStarts();
+        int[] bookEnd = membership.bookEnds();
+        int[] bookHeroes = membership.bookHeroes();
+        int n = names.length;
+
+        // General idea
+        //  a book of k characters makes k * (k - 1) edges. run p of the books counts how many edges it
+        //  adds to each row in counts[p]; adding those up gives the row offsets, and turning counts[p]
+        //  into where run p starts writing in each row (after every earlier run) lets the runs place
+        //  their edges at the same time without ever writing the same slot. since runs cover the books
+        //  in name order, every row comes out sorted by label, exactly as with one thread.
+        //  the transpose pass is split the same way over runs of rows in name order.
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            long[] bookWork = new long[labelNames.length + 1];
+            for (int r = 0; r < labelNames.length; r++) {
+                long k = bookEnd[bookOrder[r]] - bookStart[bookOrder[r]];
+                bookWork[r + 1] = bookWork[r] + k * (k - 1);
+            }
+            int[] bookRuns = split(bookWork, threads);
+            int runs = bookRuns.length - 1;
+
+            int[][] counts = new int[runs][];
+            forEachRun(pool, runs, p -> {
+                int[] count = new int[n];
+                for (int r = bookRuns[p]; r < bookRuns[p + 1]; r++) {
+                    int b = bookOrder[r];
+                    int k = bookEnd[b] - bookStart[b];
+                    for (int i = bookStart[b]; i < bookEnd[b]; i++) {
+                        count[bookHeroes[i]] += k - 1;
+                    }
+                }
+                counts[p] = count;
+            });
+            int[] offsets = toCursors(counts, n);
+
+            int[] byLabelTargets = new int[offsets[n]];
+            int[] byLabelLabels = new int[byLabelTargets.length];
+            forEachRun(pool, runs, p -> {
+                int[] cursor = counts[p];
+                for (int r = bookRuns[p]; r < bookRuns[p + 1]; r++) {
+                    int b = bookOrder[r];
+                    for (int i = bookStart[b]; i < bookEnd[b]; i++) {
+                        int from = bookHeroes[i];
+                        for (int j = bookStart[b]; j < bookEnd[b]; j++) {
+                            int to = bookHeroes[j];
+                            if (from != to) {
+                                int e = cursor[from]++;
+                                byLabelTargets[e] = to;
+                                byLabelLabels[e] = b;
+                            }
+                        }
+                    }
+                }
+            });
+
+            // every edge has a reverse edge, so transposing gives the same graph: walking the rows in
+            // name order, each edge (from, to, label) becomes (to, from, label) at the end of row to.
+            // rows then come out sorted by target, and by label within a target
+            long[] rowWork = new long[n + 1];
+            for (int r = 0; r < n; r++) {
+                rowWork[r + 1] = rowWork[r] + offsets[heroOrder[r] + 1] - offsets[heroOrder[r]];
+            }
+            int[] rowRuns = split(rowWork, threads);
+            int rowRunCount = rowRuns.length - 1;
+            int[][] rowCounts = new int[rowRunCount][];
+            forEachRun(pool, rowRunCount, p -> {
+                int[] count = new int[n];
+                for (int r = rowRuns[p]; r < rowRuns[p + 1]; r++) {
+                    int from = heroOrder[r];
+                    for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+                        count[byLabelTargets[e]]++;
+                    }
+                }
+                rowCounts[p] = count;
+            });
+            toCursors(rowCounts, n);
+
+            int[] targets = new int[byLabelTargets.length];
+            int[] labels = new int[targets.length];
+            forEachRun(pool, rowRunCount, p -> {
+                int[] cursor = rowCounts[p];
+                for (int r = rowRuns[p]; r < rowRuns[p + 1]; r++) {
+                    int from = heroOrder[r];
+                    for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+                        int t = cursor[byLabelTargets[e]]++;
+                        targets[t] = from;
+                        labels[t] = byLabelLabels[e];
+                    }
+                }
+            });
+
+            // characters in the same book are connected, so joining each book's characters is enough
+            UnionFind sets = new UnionFind(n);
+            for (int b = 0; b < labelNames.length; b++) {
+                for (int i = bookStart[b] + 1; i < bookEnd[b]; i++) {
+                    sets.union(bookHeroes[bookStart[b]], bookHeroes[i]);
+                }
+            }
+            CsrGraph graph = new CsrGraph(names, labelNames, heroOrder, membership.heroRank(),
+                    Rows.of(offsets, targets, labels), IntBuffer.wrap(sets.labels()));
+            if (Metrics.ENABLED) {
+                Metrics.graphBuilt(graph.size(), graph.edgeCount(), Metrics.GRAPH_BUILD_TIME, began);
+            }
+            return graph;
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    // splits the items 0 to work.length - 2, where item i costs work[i + 1] - work[i], into at most
+    // parts runs of about the same cost. returns the first item of each run followed by the item count
+    private static int[] split(long[] work, int parts) {
+        int items = work.length - 1;
+        long total = work[items];
+        int[] bounds = new int[parts + 1];
+        int runs = 0;
+        for (int p = 1; p < parts; p++) {
+            long goal = total / parts * p + total % parts * p / parts;
+            int at = Arrays.binarySearch(work, goal);
+            if (at < 0) {
+                at = -at - 1;
+            }
+            // on equal prefixes binarySearch may land anywhere among them; any of them splits evenly
+            at = Math.min(at, items);
+            if (at > bounds[runs]) {
+                bounds[++runs] = at;
+            }
+        }
+        if (items > bounds[runs] || runs == 0) {
+            bounds[++runs] = items;
+        }
+        return Arrays.copyOf(bounds, runs + 1);
+    }
+
+    // turns counts[p][i], the edges run p adds to row i, into the slot where run p starts writing in
+    // row i, and returns the row offsets
+    private static int[] toCursors(int[][] counts, int n) {
+        int[] offsets = new int[n + 1];
+        int at = 0;
+        for (int i = 0; i < n; i++) {
+            offsets[i] = at;
+            for (int[] count : counts) {
+                int c = count[i];
+                count[i] = at;
+                at += c;
+            }
+        }
+        offsets[n] = at;
+        return offsets;
+    }
+
+    // runs body(p) for each run p, on pool when there is one and in order on this thread otherwise.
+    // also used by ParallelBfs to expand a level
+    static void forEachRun(ForkJoinPool pool, int runs, IntConsumer body) {
+        if (pool == null || runs == 1) {
+            for (int p = 0; p < runs; p++) {
+                body.accept(p);
+            }
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int p = 0; p < runs; p++) {
+            int run = p;
+            tasks.add(pool.submit(() -> body.accept(run)));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+
+    /**
+     * Wraps the columns of a graph laid out as inNameOrder returns it, such as the views of a mapped
+     * GraphSnapshot: node and label ids in name order, the links of node i at linkStart[i] to
+     * linkStart[i + 1], and the edges of link k at linkEdges[k] to linkEdges[k + 1]. The buffers are
+     * read from index 0 to their limit, are not copied, and must not be changed afterwards.
+     *
+     * @spec.requires names and labelNames are sorted in strictly ascending order, linkStart has
+     *                names.length + 1 entries from 0 to linkTargets.limit() - 1, linkEdges has as many
+     *                entries as linkTargets and ends at targets.limit(), labels has as many entries as
+     *                targets and component has names.length, and they satisfy the representation
+     *                invariant of CsrGraph
+     * @return a CsrGraph backed by the given buffers
+     */
+    static CsrGraph fromColumns(String[] names, String[] labelNames, IntBuffer linkStart, IntBuffer linkTargets,
+                                IntBuffer linkEdges, IntBuffer targets, IntBuffer labels, IntBuffer component) {
+        int[] identity = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            identity[i] = i;
+        }
+        return new CsrGraph(names, labelNames, identity, identity,
+                Rows.contiguous(targets, labels, linkStart, linkTargets, linkEdges, targets.limit(),
+                        linkTargets.limit() - 1),
+                component);
+    }
+
+    /**
+     * Returns this graph with its node and label ids in name order and its rows one after the other,
+     * as fromColumns takes them, renumbering and packing a copy if they are not.
+     *
+     * @return a graph equal to this one whose columns are laid out as fromColumns takes them
+     */
+    CsrGraph inNameOrder() {
+        int n = names.length;
+        boolean sorted = contiguous && targets.limit() == edgeCount && linkTargets.limit() == linkCount + 1;
+        for (int i = 0; sorted && i < n; i++) {
+            sorted = order[i] == i;
+        }
+        for (int l = 1; sorted && l < labelNames.length; l++) {
+            sorted = labelNames[l - 1].compareTo(labelNames[l]) < 0;
+        }
+        if (sorted) {
+            return this;
+        }
+        Integer[] byName = new Integer[labelNames.length];
+        for (int l = 0; l < byName.length; l++) {
+            byName[l] = l;
+        }
+        Arrays.sort(byName, Comparator.comparing(l -> labelNames[l]));
+        String[] sortedLabels = new String[labelNames.length];
+        int[] labelRank = new int[labelNames.length];
+        for (int r = 0; r < byName.length; r++) {
+            sortedLabels[r] = labelNames[byName[r]];
+            labelRank[byName[r]] = r;
+        }
+        String[] sortedNames = new String[n];
+        int[] offsets = new int[n + 1];
+        int[] sortedTargets = new int[edgeCount];
+        int[] sortedLabelIds = new int[edgeCount];
+        // components are numbered again in the order of their first node under the new ids
+        int[] componentMap = new int[componentSizes.length];
+        Arrays.fill(componentMap, -1);
+        int[] sortedComponent = new int[n];
+        int components = 0;
+        int out = 0;
+        for (int r = 0; r < n; r++) {
+            int i = order[r];
+            sortedNames[r] = names[i];
+            offsets[r] = out;
+            for (int e = firstEdge(i); e < endEdge(i); e++) {
+                sortedTargets[out] = rank[targets.get(e)];
+                sortedLabelIds[out++] = labelRank[labels.get(e)];
+            }
+            int c = component.get(i);
+            if (componentMap[c] < 0) {
+                componentMap[c] = components++;
+            }
+            sortedComponent[r] = componentMap[c];
+        }
+        offsets[n] = out;
+        int[] identity = new int[n];
+        for (int i = 0; i < n; i++) {
+            identity[i] = i;
+        }
+        return new CsrGraph(sortedNames, sortedLabels, identity, identity,
+                Rows.of(offsets, sortedTargets, sortedLabelIds), IntBuffer.wrap(sortedComponent));
+    }
+
+    /**
+     * Builds the graph of after from this graph of before, when after has every appearance of before
+     * and some more, as BookMembership.withRows gives. after keeps the ids of before, so only the rows
+     * of characters that appear in a book with a new member are written, past the end of the arrays
+     * this graph shares with the new one; every other row stays where it is. The arrays are copied,
+     * packed, only when another graph appended to them first or they are full, and are then given room
+     * to spare, so an append costs about as much as the rows it changes plus copying the per-node
+     * arrays. The result has the same nodes, edges, links and components, numbered the same, as
+     * fromMembership(after), with a new version, and this graph is left as it was.
+     *
+     * @param before the membership this graph was built from
+     * @param after the membership to build the graph of
+     * @spec.requires before != null and after != null and this graph was built from before and every
+     *                appearance of before is in after
+     * @return a CsrGraph of after
+     */
+    public CsrGraph extend(BookMembership before, BookMembership after) {
+        int n = after.heroCount();
+        int books = after.bookCount();
+        int[] heroOrder = after.heroOrder();
+        int[] heroRank = after.heroRank();
+        int[] bookOrder = after.bookOrder();
+        int[] bookRank = after.bookRank();
+        int[] beforeStarts = before.bookStarts();
+        int[] beforeEnds = before.bookEnds();
+        int[] beforeHeroes = before.bookHeroes();
+        int[] afterStarts = after.bookStarts();
+        int[] afterEnds = after.bookEnds();
+        int[] afterHeroes = after.bookHeroes();
+
+        // General idea
+        //  a member new to a book gains an edge to every other member, and an old member gains an edge
+        //  to every new one. the new edges of each node are gathered with a counting sort and sorted,
+        //  then merged with its old row into a new row past the end of the edge arrays, where its links
+        //  are found again. nodes with no new edges keep their row, and ids never change, so nothing
+        //  else is touched. a book's members are sorted in both memberships, so one walk finds the new
+        //  ones, and a book with as many members as before has none
+        int[] touched = new int[books];
+        int touchedCount = 0;
+        int touchedMembers = 0;
+        for (int b = 0; b < books; b++) {
+            int old = b < labelNames.length ? beforeEnds[b] - beforeStarts[b] : 0;
+            if (afterEnds[b] - afterStarts[b] != old) {
+                touched[touchedCount++] = b;
+                touchedMembers += afterEnds[b] - afterStarts[b];
+            }
+        }
+        // fresh[f] tells whether the member f of the touched books, counted in order, is new to its book
+        boolean[] fresh = new boolean[touchedMembers];
+        int[] freshOf = new int[touchedCount];
+        int[] added = new int[n];
+        for (int t = 0, f = 0; t < touchedCount; t++) {
+            int b = touched[t];
+            int i = b < labelNames.length ? beforeStarts[b] : 0;
+            int iEnd = b < labelNames.length ? beforeEnds[b] : 0;
+            int first = f;
+            for (int x = afterStarts[b]; x < afterEnds[b]; x++, f++) {
+                if (i < iEnd && beforeHeroes[i] == afterHeroes[x]) {
+                    i++;
+                } else {
+                    fresh[f] = true;
+                    freshOf[t]++;
+                }
+            }
+            int k = afterEnds[b] - afterStarts[b];
+            for (int x = afterStarts[b], g = first; x < afterEnds[b]; x++, g++) {
+                added[afterHeroes[x]] += fresh[g] ? k - 1 : freshOf[t];
+            }
+        }
+
+        int[] addOffsets = new int[n + 1];
+        for (int h = 0; h < n; h++) {
+            addOffsets[h + 1] = addOffsets[h] + added[h];
+        }
+        // (rank of target << 32 | rank of label), so sorting a node's new edges orders them like a row
+        long[] addEdges = new long[addOffsets[n]];
+        int[] cursor = Arrays.copyOf(addOffsets, n);
+        for (int t = 0, f = 0; t < touchedCount; t++) {
+            int b = touched[t];
+            int k = afterEnds[b] - afterStarts[b];
+            for (int x = 0; x < k; x++) {
+                int from = afterHeroes[afterStarts[b] + x];
+                for (int y = 0; y < k; y++) {
+                    if (x != y && (fresh[f + x] || fresh[f + y])) {
+                        addEdges[cursor[from]++] = ((long) heroRank[afterHeroes[afterStarts[b] + y]] << 32)
+                                | bookRank[b];
+                    }
+                }
+            }
+            f += k;
+        }
+
+        // the rows that change are written past the end of the arrays this graph uses, if it can claim
+        // the room there. otherwise every row is written, packed, to new arrays with room to spare
+        int need = 0;
+        int linkNeed = 0;
+        for (int h = 0; h < n; h++) {
+            if (added[h] > 0) {
+                need += (h < names.length ? endEdge(h) - firstEdge(h) : 0) + added[h];
+                linkNeed += (h < names.length ? degree(h) : 0) + added[h];
+            }
+        }
+        boolean packed = !claimRoom(need, linkNeed);
+        int[] newTargets;
+        int[] newLabels;
+        int[] newLinkTargets;
+        int[] newLinkEdges;
+        int[] newLinkStart;
+        int[] newLinkEnd;
+        int out;
+        int k;
+        if (packed) {
+            newTargets = new int[SharedTail.capacity(edgeCount + addEdges.length)];
+            newLabels = new int[newTargets.length];
+            newLinkTargets = new int[SharedTail.capacity(linkCount + addEdges.length + 1)];
+            newLinkEdges = new int[newLinkTargets.length];
+            newLinkStart = new int[n + 1];
+            newLinkEnd = null;
+            out = 0;
+            k = 0;
+        } else {
+            // claimRoom only grants room in arrays, never in the views of a mapped snapshot; with no
+            // room needed nothing is written
+            newTargets = targets.hasArray() ? targets.array() : null;
+            newLabels = labels.hasArray() ? labels.array() : null;
+            newLinkTargets = linkTargets.hasArray() ? linkTargets.array() : null;
+            newLinkEdges = linkEdges.hasArray() ? linkEdges.array() : null;
+            newLinkStart = toArray(linkStart, n);
+            newLinkEnd = toArray(linkEnd, n);
+            out = edgeTail;
+            k = linkTail;
+        }
+        int links = linkCount;
+        for (int h = 0; h < n; h++) {
+            boolean old = h < names.length;
+            int e = old ? firstEdge(h) : 0;
+            int eEnd = old ? endEdge(h) : 0;
+            if (added[h] == 0) {
+                if (packed) {
+                    // the links of a copied row are copied along with it, shifted to where the row now starts
+                    copy(targets, e, newTargets, out, eEnd - e);
+                    copy(labels, e, newLabels, out, eEnd - e);
+                    newLinkStart[h] = k;
+                    for (int l = old ? linkStart.get(h) : 0; l < (old ? linkEnd.get(h) : 0); l++) {
+                        newLinkTargets[k] = linkTargets.get(l);
+                        newLinkEdges[k++] = linkEdges.get(l) - e + out;
+                    }
+                    out += eEnd - e;
+                }
+                continue;
+            }
+            // a row gains few edges, so the old edges between two new ones are found by binary search
+            // and copied as a run. the old rows are read from this graph's own part of the arrays
+            int start = out;
+            Arrays.sort(addEdges, addOffsets[h], addOffsets[h + 1]);
+            for (int a = addOffsets[h]; a < addOffsets[h + 1]; a++) {
+                int lo = e;
+                int hi = eEnd;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if ((((long) heroRank[targets.get(mid)] << 32) | bookRank[labels.get(mid)]) < addEdges[a]) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                copy(targets, e, newTargets, out, lo - e);
+                copy(labels, e, newLabels, out, lo - e);
+                out += lo - e;
+                e = lo;
+                newTargets[out] = heroOrder[(int) (addEdges[a] >>> 32)];
+                newLabels[out] = bookOrder[(int) addEdges[a]];
+                out++;
+            }
+            copy(targets, e, newTargets, out, eEnd - e);
+            copy(labels, e, newLabels, out, eEnd - e);
+            out += eEnd - e;
+            links -= old ? degree(h) : 0;
+            newLinkStart[h] = k;
+            k = scan(newTargets, newLinkTargets, newLinkEdges, start, out, k);
+            if (!packed) {
+                newLinkEnd[h] = k;
+            }
+            links += k - newLinkStart[h];
+        }
+        if (need > 0 || packed) {
+            newLinkEdges[k] = out;
+        }
+
+        Rows rows;
+        if (packed) {
+            newLinkStart[n] = k;
+            rows = Rows.contiguous(IntBuffer.wrap(newTargets), IntBuffer.wrap(newLabels), IntBuffer.wrap(newLinkStart),
+                    IntBuffer.wrap(newLinkTargets), IntBuffer.wrap(newLinkEdges), out, k);
+        } else {
+            rows = new Rows();
+            rows.targets = targets;
+            rows.labels = labels;
+            rows.linkTargets = linkTargets;
+            rows.linkEdges = linkEdges;
+            rows.linkStart = IntBuffer.wrap(newLinkStart);
+            rows.linkEnd = IntBuffer.wrap(newLinkEnd);
+            rows.edgeCount = edgeCount + addEdges.length;
+            rows.linkCount = links;
+            rows.edgeTail = out;
+            rows.linkTail = k;
+            rows.tail = tail;
+        }
+
+        // nodes that were connected still are, and a book with new members joins them to the others
+        UnionFind sets = new UnionFind(n);
+        int[] firstOf = new int[componentSizes.length];
+        Arrays.fill(firstOf, -1);
+        for (int i = 0; i < names.length; i++) {
+            int c = component.get(i);
+            if (firstOf[c] < 0) {
+                firstOf[c] = i;
+            } else {
+                sets.union(firstOf[c], i);
+            }
+        }
+        for (int t = 0; t < touchedCount; t++) {
+            int b = touched[t];
+            for (int x = afterStarts[b] + 1; x < afterEnds[b]; x++) {
+                sets.union(afterHeroes[afterStarts[b]], afterHeroes[x]);
+            }
+        }
+        return new CsrGraph(after.heroNames(), after.bookNames(), heroOrder, heroRank, rows,
+                IntBuffer.wrap(sets.labels()));
+    }
+
+    // whether this graph's arrays have room for need more edges and linkNeed more links after the part
+    // it uses, and no other graph has appended there yet; the room is then claimed for the caller
+    private boolean claimRoom(int need, int linkNeed) {
+        return need == 0 || (edgeTail + need <= targets.limit() && linkTail + linkNeed < linkTargets.limit()
+                && tail.claim(edgeTail, edgeTail + need));
+    }
+
+    /**
+     * @return the version of this graph, different from that of every other graph built in this process
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return the number of nodes in this graph
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return true iff this graph has no nodes
+     */
+    public boolean isEmpty() {
+        return names.length == 0;
+    }
+
+    /**
+     * @return the number of edges in this graph
+     */
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @param name of the node to look for
+     * @return true iff name is a node in this graph
+     */
+    public boolean containsNode(String name) {
+        return id(name) >= 0;
+    }
+
+    /**
+     * @param name of the node to look for
+     * @return the id of name, or -1 if name is not a node in this graph
+     */
+    public int id(String name) {
+        return BookMembership.idOf(names, order, name);
+    }
+
+    /**
+     * @param id of a node
+     * @spec.requires 0 &lt;= id &lt; size()
+     * @return the name of the node with the given id
+     */
+    public String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * @param node id of a node
+     * @spec.requires 0 &lt;= node &lt; size()
+     * @return the position of the name of node among the names of every node in ascending order
+     */
+    public int rank(int node) {
+        return rank[node];
+    }
+
+    /**
+     * @param rank a position in name order
+     * @spec.requires 0 &lt;= rank &lt; size()
+     * @return the id of the node whose name is at position rank in ascending order
+     */
+    public int nodeAt(int rank) {
+        return order[rank];
+    }
+
+    /**
+     * @return an unmodifiable list of every node in this graph, in ascending order
+     */
+    public List<String> listNodes() {
+        return new NodeList();
+    }
+
+    // the names of the nodes in name order, read through order rather than copied
+    private final class NodeList extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int index) {
+            return names[order[index]];
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+    }
+
+    /**
+     * @return the number of distinct edge labels in this graph
+     */
+    public int labelCount() {
+        return labelNames.length;
+    }
+
+    /**
+     * @param label id of an edge label
+     * @spec.requires 0 &lt;= label &lt; labelCount()
+     * @return the book the label id stands for
+     */
+    public String labelName(int label) {
+        return labelNames[label];
+    }
+
+    /**
+     * The edges leaving node are numbered firstEdge(node) up to, but not including, endEdge(node).
+     * The edges of different nodes are not in the order of the nodes, and there may be unused numbers
+     * between them, so only these ranges are edges.
+     *
+     * @param node id of a node
+     * @spec.requires 0 &lt;= node &lt; size()
+     * @return the index of the first edge leaving node
+     */
+    public int firstEdge(int node) {
+        return linkEdge(firstLink(node));
+    }
+
+    /**
+     * @param node id of a node
+     * @spec.requires 0 &lt;= node &lt; size()
+     * @return one past the index of the last edge leaving node
+     */
+    public int endEdge(int node) {
+        return linkEdge(linkEnd.get(node));
+    }
+
+    /**
+     * @param node id of a node
+     * @spec.requires 0 &lt;= node &lt; size()
+     * @return the number of distinct nodes node has an edge to
+     */
+    public int degree(int node) {
+        return linkEnd.get(node) - firstLink(node);
+    }
+
+    /**
+     * @param edge index of an edge
+     * @spec.requires edge is between firstEdge(node) and endEdge(node) of some node
+     * @return the id of the node the edge points to
+     */
+    public int target(int edge) {
+        return targetArray != null ? targetArray[edge] : targets.get(edge);
+    }
+
+    /**
+     * @param edge index of an edge
+     * @spec.requires edge is between firstEdge(node) and endEdge(node) of some node
+     * @return the label id of the edge
+     */
+    public int label(int edge) {
+        return labelArray != null ? labelArray[edge] : labels.get(edge);
+    }
+
+    /**
+     * @return the number of links in this graph, one for each pair of nodes with an edge between them
+     */
+    public int linkCount() {
+        return linkCount;
+    }
+
+    /**
+     * The links leaving node are numbered firstLink(node) up to, but not including, endLink(node),
+     * in ascending order of the name of the node they go to. Like edges, the links of different nodes
+     * are not in the order of the nodes.
+     *
+     * @param node id of a node
+     * @spec.requires 0 &lt;= node &lt; size()
+     * @return the index of the first link leaving node
+     */
+    public int firstLink(int node) {
+        return linkStartArray != null ? linkStartArray[node] : linkStart.get(node);
+    }
+
+    /**
+     * @param node id of a node
+     * @spec.requires 0 &lt;= node &lt; size()
+     * @return one past the index of the last link leaving node
+     */
+    public int endLink(int node) {
+        return linkEnd.get(node);
+    }
+
+    /**
+     * @param link index of a link
+     * @spec.requires link is between firstLink(node) and endLink(node) of some node
+     * @return the id of the node the link points to
+     */
+    public int linkTarget(int link) {
+        return linkTargetArray != null ? linkTargetArray[link] : linkTargets.get(link);
+    }
+
+    /**
+     * The edges a link stands for are numbered linkEdge(link) up to, but not including,
+     * linkEdge(link + 1), in ascending order of label.
+     *
+     * @param link index of a link, or endLink(node)
+     * @spec.requires link is between firstLink(node) and endLink(node) of some node, or is endLink(node)
+     * @return the index of the first edge of the link, or endEdge(node) for endLink(node)
+     */
+    public int linkEdge(int link) {
+        return linkEdgeArray != null ? linkEdgeArray[link] : linkEdges.get(link);
+    }
+
+    /**
+     * @param link index of a link
+     * @spec.requires link is between firstLink(node) and endLink(node) of some node
+     * @return the least label id of the edges of the link
+     */
+    public int linkLabel(int link) {
+        return label(linkEdge(link));
+    }
+
+    /**
+     * @param link index of a link
+     * @spec.requires link is between firstLink(node) and endLink(node) of some node
+     * @return the number of edges the link stands for, which is the number of books its nodes share
+     */
+    public int linkWeight(int link) {
+        return linkEdge(link + 1) - linkEdge(link);
+    }
+
+    /**
+     * @param node id of a node, or size()
+     * @spec.requires 0 &lt;= node &lt;= size()
+     * @return the number of links of the nodes with ids below node
+     */
+    int linksBefore(int node) {
+        return linksBefore.get(node);
+    }
+
+    /**
+     * @param a name of a node
+     * @param b name of a node
+     * @throws IllegalArgumentException when a or b are not in this graph
+     * @spec.requires a != null and b != null
+     * @return the names of the labels of the edges from a to b in ascending order, empty if there is none
+     */
+    public List<String> sharedLabels(String a, String b) {
+        int from = id(a);
+        int to = id(b);
+        if (from < 0) throw new IllegalArgumentException(a + " is not in the graph.");
+        if (to < 0) throw new IllegalArgumentException(b + " is not in the graph.");
+        // links are sorted by the rank of their target
+        int lo = linkStart.get(from);
+        int hi = linkEnd.get(from);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (rank[linkTargets.get(mid)] < rank[to]) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        List<String> shared = new ArrayList<>();
+        if (lo < linkEnd.get(from) && linkTargets.get(lo) == to) {
+            for (int e = linkEdges.get(lo); e < linkEdges.get(lo + 1); e++) {
+                shared.add(labelNames[labels.get(e)]);
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * @return the number of connected components of this graph
+     */
+    public int componentCount() {
+        return componentSizes.length;
+    }
+
+    /**
+     * @param node id of a node
+     * @spec.requires 0 &lt;= node &lt; size()
+     * @return the number of the connected component of node, between 0 and componentCount() - 1
+     */
+    public int component(int node) {
+        return component.get(node);
+    }
+
+    /**
+     * @param component number of a connected component
+     * @spec.requires 0 &lt;= component &lt; componentCount()
+     * @return the number of nodes in the component
+     */
+    public int componentSize(int component) {
+        return componentSizes[component];
+    }
+
+    /**
+     * @param a id of a node
+     * @param b id of a node
+     * @spec.requires 0 &lt;= a, b &lt; size()
+     * @return true iff there is a path between a and b
+     */
+    public boolean connected(int a, int b) {
+        return component.get(a) == component.get(b);
+    }
+
+    // the arrays and buffers below are handed out, not copied, to GraphSnapshot, which only asks a
+    // graph from inNameOrder for them, and reads each buffer from index 0 to its limit
+
+    String[] names() {
+        return names;
+    }
+
+    String[] labelNames() {
+        return labelNames;
+    }
+
+    IntBuffer linkStarts() {
+        return linkStart.duplicate();
+    }
+
+    IntBuffer linkTargets() {
+        return linkTargets.duplicate();
+    }
+
+    IntBuffer linkEdges() {
+        return linkEdges.duplicate();
+    }
+
+    IntBuffer targets() {
+        return targets.duplicate();
+    }
+
+    IntBuffer labels() {
+        return labels.duplicate();
+    }
+
+    IntBuffer components() {
+        return component.duplicate();
+    }
+
+    /**
+     * Throws an exception if the representation invariant is violated.
+     */
+    private void checkRep() {
+        assert names != null && labelNames != null && order != null && rank != null : "null arrays";
+        assert targets != null && labels != null && linkTargets != null && linkEdges != null : "null arrays";
+        assert order.length == names.length && rank.length == names.length : "bad order";
+        assert linkStart.limit() >= names.length && linkEnd.limit() >= names.length : "bad links";
+        assert edgeTail <= targets.limit() && targets.limit() == labels.limit() : "bad edges";
+        assert linkTail < linkTargets.limit() && linkTargets.limit() == linkEdges.limit() : "bad links";
+        assert linkEdges.get(linkTail) == edgeTail : "bad links";
+        assert component != null && component.limit() == names.length : "bad components";
+        assert linksBefore.limit() >= names.length + 1 && linksBefore.get(names.length) == linkCount : "bad links";
+        if (DEBUG) {
+            for (int r = 1; r < names.length; r++) {
+                assert names[order[r - 1]].compareTo(names[order[r]]) < 0 : "names not sorted";
+            }
+            int edges = 0;
+            for (int i = 0; i < names.length; i++) {
+                assert rank[order[i]] == i : "rank is not the inverse of order";
+                assert linkStart.get(i) <= linkEnd.get(i) && linkEnd.get(i) <= linkTail : "bad links";
+                edges += endEdge(i) - firstEdge(i);
+                for (int e = firstEdge(i); e < endEdge(i); e++) {
+                    int t = targets.get(e);
+                    assert t >= 0 && t < names.length && t != i : "bad target";
+                    assert labels.get(e) >= 0 && labels.get(e) < labelNames.length : "bad label";
+                    assert e == firstEdge(i) || rank[targets.get(e - 1)] < rank[t]
+                            || (targets.get(e - 1) == t
+                                && labelNames[labels.get(e - 1)].compareTo(labelNames[labels.get(e)]) < 0)
+                            : "edges not sorted";
+                    assert component.get(i) == component.get(t) : "edge between components";
+                }
+                for (int k = linkStart.get(i); k < linkEnd.get(i); k++) {
+                    for (int e = linkEdges.get(k); e < linkEdges.get(k + 1); e++) {
+                        assert targets.get(e) == linkTargets.get(k) : "edge of link goes elsewhere";
+                    }
+                }
+            }
+            assert edges == edgeCount : "bad edge count";
+        }
+    }
+}
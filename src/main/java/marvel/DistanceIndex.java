@@ -0,0 +1,396 @@
+package marvel;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+/**
+ * DistanceIndex gives the exact number of steps between two characters of a CsrGraph without a
+ * search, using pruned landmark labeling.
+ * Every character gets a label, a list of (hub, distance) pairs, such that every shortest path
+ * between two characters passes through some hub in both of their labels. The distance between
+ * u and v is then the least d(u, h) + d(h, v) over the hubs h the two labels share, found by
+ * merging the labels, which are kept sorted by hub.
+ *
+ * Hubs are ranked by how many neighbors they have, most first. Building runs a Breadth-First-Search
+ * from every character in rank order, and stops going through any character whose distance the
+ * labels so far already answer; on graphs with a few well connected characters, such as marvel.tsv,
+ * this keeps the labels short.
+ *
+ * An index can be written to a file and mapped back in, in which case queries read the labels
+ * straight from the mapped file. A file is laid out as:
+ *  header:  magic (long), format version (int), node count (int), source stamp (long),
+ *           label entry count (int), edge count of the graph (int), build time in nanoseconds (long),
+ *           CRC-32C of everything after the header (long)
+ *  payload: offsets (node count + 1 ints), hubs (entry count ints), distances (entry count bytes)
+ * Like a GraphSnapshot, the source stamp is whatever the writer was given, and a reader asking
+ * for a different one treats the file as stale.
+ *
+ * Labels are kept by node id, so an index only answers for a graph with the node and edge counts of
+ * the one it was built for. Graphs only grow, and any append that changes a row adds edges, so a
+ * graph a LiveGraph appended to since the index was built is rejected rather than answered wrongly.
+ * Distances are kept in one byte each, so a graph in which two connected characters are more than
+ * 255 steps apart cannot be indexed.
+ *
+ * @spec.specfield labels : node -&gt; sequence of (hub, distance) // sorted by hub rank
+ */
+public final class DistanceIndex {
+
+    /**
+     * Bumped whenever the layout above changes, so older files are rebuilt instead of misread.
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    private static final long MAGIC = 0x4d52564c504c4c31L; // "MRVLPLL1"
+    private static final int HEADER_SIZE = 48;
+    private static final int MAX_DISTANCE = 0xFF;
+
+    // Abstraction Function:
+    //  labels(n) = [(hubs.get(i), distances.get(i) & 0xFF) | offsets.get(n) <= i < offsets.get(n + 1)],
+    //  a hub being the rank of the hub character, 0 for the one with the most neighbors
+    //
+    // Representation Invariant:
+    //  no field is null, offsets has nodeCount + 1 entries, starting at 0 and ending at hubs.limit()
+    //  hubs.limit() == distances.limit(), and the hubs of each node are strictly ascending
+    //  nodeCount and edgeCount are the size and edge count of the graph the labels were built for
+
+    private final int nodeCount;
+    private final int edgeCount;
+    private final IntBuffer offsets;
+    private final IntBuffer hubs;
+    private final ByteBuffer distances;
+    private final long buildNanos;
+
+    private DistanceIndex(int nodeCount, int edgeCount, IntBuffer offsets, IntBuffer hubs, ByteBuffer distances,
+                          long buildNanos) {
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        this.offsets = offsets;
+        this.hubs = hubs;
+        this.distances = distances;
+        this.buildNanos = buildNanos;
+        checkRep();
+    }
+
+    /**
+     * Builds the index of graph.
+     *
+     * @param graph to index
+     * @throws IllegalArgumentException if two connected characters are more than 255 steps apart
+     * @spec.requires graph != null
+     * @return the distance index of graph
+     */
+    public static DistanceIndex build(CsrGraph graph) {
+        long begin = System.nanoTime();
+        int n = graph.size();
+        Integer[] order = new Integer[n];
+        int[] degree = new int[n];
+        for (int v = 0; v < n; v++) {
+            order[v] = v;
+            degree[v] = graph.degree(v);
+        }
+        Arrays.sort(order, Comparator.comparing((Integer v) -> -degree[v]).thenComparing(graph::rank));
+
+        // labels under construction; hubs are appended in rank order, so each label stays sorted
+        int[][] labelHubs = new int[n][];
+        byte[][] labelDistances = new byte[n][];
+        int[] labelSizes = new int[n];
+        for (int v = 0; v < n; v++) {
+            labelHubs[v] = new int[4];
+            labelDistances[v] = new byte[4];
+        }
+
+        // General idea
+        // before the search from root, rootDistance[h] is set to the distance from root to each hub h
+        // in its label, so the labels answer d(root, u) by one pass over the label of u.
+        // a node whose distance the labels already answer needs no entry, and neither do the nodes
+        // past it, since their shortest paths through it are covered too
+        int[] rootDistance = new int[n];
+        Arrays.fill(rootDistance, Integer.MAX_VALUE);
+        long entries = 0;
+        for (int rank = 0; rank < n; rank++) {
+            int root = order[rank];
+            for (int i = 0; i < labelSizes[root]; i++) {
+                rootDistance[labelHubs[root][i]] = labelDistances[root][i] & 0xFF;
+            }
+            BfsWorkspace ws = BfsWorkspace.get(n);
+            int[] seen = ws.seen;
+            int[] level = ws.distance;
+            int[] queue = ws.queue;
+            int epoch = ws.epoch;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = root;
+            seen[root] = epoch;
+            level[root] = 0;
+            while (head < tail) {
+                int u = queue[head++];
+                int d = level[u];
+                if (answered(labelHubs[u], labelDistances[u], labelSizes[u], rootDistance, d)) {
+                    continue;
+                }
+                if (d > MAX_DISTANCE) {
+                    throw new IllegalArgumentException("graph has characters more than " + MAX_DISTANCE
+                            + " steps apart");
+                }
+                if (labelSizes[u] == labelHubs[u].length) {
+                    labelHubs[u] = Arrays.copyOf(labelHubs[u], labelSizes[u] * 2);
+                    labelDistances[u] = Arrays.copyOf(labelDistances[u], labelSizes[u] * 2);
+                }
+                labelHubs[u][labelSizes[u]] = rank;
+                labelDistances[u][labelSizes[u]] = (byte) d;
+                labelSizes[u]++;
+                entries++;
+                for (int k = graph.firstLink(u); k < graph.endLink(u); k++) {
+                    int m = graph.linkTarget(k);
+                    if (seen[m] != epoch) {
+                        seen[m] = epoch;
+                        level[m] = d + 1;
+                        queue[tail++] = m;
+                    }
+                }
+            }
+            for (int i = 0; i < labelSizes[root]; i++) {
+                rootDistance[labelHubs[root][i]] = Integer.MAX_VALUE;
+            }
+        }
+
+        if (entries > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("graph is too large to index");
+        }
+        int[] offsets = new int[n + 1];
+        int[] hubs = new int[(int) entries];
+        byte[] distances = new byte[(int) entries];
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] = offsets[v] + labelSizes[v];
+            System.arraycopy(labelHubs[v], 0, hubs, offsets[v], labelSizes[v]);
+            System.arraycopy(labelDistances[v], 0, distances, offsets[v], labelSizes[v]);
+        }
+        return new DistanceIndex(n, graph.edgeCount(), IntBuffer.wrap(offsets), IntBuffer.wrap(hubs),
+                ByteBuffer.wrap(distances), System.nanoTime() - begin);
+    }
+
+    // true iff some hub in the label is at most d from root through it
+    private static boolean answered(int[] hubs, byte[] distances, int size, int[] rootDistance, int d) {
+        for (int i = 0; i < size; i++) {
+            int viaHub = rootDistance[hubs[i]];
+            if (viaHub != Integer.MAX_VALUE && viaHub + (distances[i] & 0xFF) <= d) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the number of edges on a shortest path from u to v.
+     *
+     * @param graph the graph this index was built for
+     * @param u starting node
+     * @param v destination node
+     * @throws IllegalArgumentException when u or v are not in graph, or when !isFor(graph)
+     * @spec.requires graph != null and u != null and v != null and graph was built from the same data
+     *                as the graph this index was built for
+     * @return the distance from u to v, or -1 if there is no path
+     */
+    public int distance(CsrGraph graph, String u, String v) {
+        if (!isFor(graph)) {
+            throw new IllegalArgumentException("index was built for a different graph");
+        }
+        int start = graph.id(u);
+        int dest = graph.id(v);
+        if (start < 0) throw new IllegalArgumentException(u + " is not in the graph.");
+        if (dest < 0) throw new IllegalArgumentException(v + " is not in the graph.");
+        return distance(start, dest);
+    }
+
+    // merges the two labels, both sorted by hub
+    private int distance(int u, int v) {
+        int i = offsets.get(u);
+        int iEnd = offsets.get(u + 1);
+        int j = offsets.get(v);
+        int jEnd = offsets.get(v + 1);
+        int best = -1;
+        while (i < iEnd && j < jEnd) {
+            int hi = hubs.get(i);
+            int hj = hubs.get(j);
+            if (hi < hj) {
+                i++;
+            } else if (hi > hj) {
+                j++;
+            } else {
+                int d = (distances.get(i) & 0xFF) + (distances.get(j) & 0xFF);
+                if (best < 0 || d < best) {
+                    best = d;
+                }
+                i++;
+                j++;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param graph to check
+     * @spec.requires graph != null
+     * @return true iff graph has the size and edge count of the graph this index was built for
+     */
+    public boolean isFor(CsrGraph graph) {
+        return graph.size() == nodeCount && graph.edgeCount() == edgeCount;
+    }
+
+    /**
+     * @return the number of (hub, distance) entries over all labels
+     */
+    public int entryCount() {
+        return hubs.limit();
+    }
+
+    /**
+     * @return the number of bytes the labels take, as stored in a file without its header
+     */
+    public long sizeInBytes() {
+        return (long) Integer.BYTES * (nodeCount + 1) + (long) (Integer.BYTES + 1) * entryCount();
+    }
+
+    /**
+     * @return how long building the index took, in nanoseconds
+     */
+    public long buildNanos() {
+        return buildNanos;
+    }
+
+    /**
+     * @return a one line summary of the size of the index and how long it took to build
+     */
+    public String report() {
+        return String.format("%d nodes, %d label entries (%.1f per node), %.1f KB, built in %.1f ms",
+                nodeCount, entryCount(), nodeCount == 0 ? 0.0 : (double) entryCount() / nodeCount,
+                sizeInBytes() / 1024.0, buildNanos / 1e6);
+    }
+
+    /**
+     * Writes this index to path, replacing any existing file only once the new one is complete.
+     *
+     * @param path of the index file
+     * @param sourceStamp stamp of the data the graph of this index was built from
+     * @throws IOException if the file cannot be written or the index is too large for one file
+     * @spec.requires path != null
+     */
+    public void write(Path path, long sourceStamp) throws IOException {
+        long size = HEADER_SIZE + sizeInBytes();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("index is too large for a file");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.position(HEADER_SIZE);
+        for (int i = 0; i <= nodeCount; i++) {
+            buffer.putInt(offsets.get(i));
+        }
+        for (int i = 0; i < entryCount(); i++) {
+            buffer.putInt(hubs.get(i));
+        }
+        for (int i = 0; i < entryCount(); i++) {
+            buffer.put(distances.get(i));
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), HEADER_SIZE, buffer.capacity() - HEADER_SIZE);
+        buffer.position(0);
+        buffer.putLong(MAGIC).putInt(FORMAT_VERSION).putInt(nodeCount).putLong(sourceStamp)
+                .putInt(entryCount()).putInt(edgeCount).putLong(buildNanos).putLong(crc.getValue());
+        buffer.position(0);
+
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Maps the index file at path. The labels are not copied; queries read them from the mapping.
+     *
+     * @param path of the index file
+     * @param sourceStamp stamp the index must have been written with
+     * @throws IOException if the file cannot be read, is not an index of the current format,
+     *         was written for a different source stamp, or fails its own checksum
+     * @spec.requires path != null
+     * @return the index stored in the file
+     */
+    public static DistanceIndex read(Path path, long sourceStamp) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("not a distance index: " + path);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getLong() != MAGIC) {
+                throw new IOException("not a distance index: " + path);
+            }
+            if (buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("distance index has an old format: " + path);
+            }
+            int nodeCount = buffer.getInt();
+            if (buffer.getLong() != sourceStamp) {
+                throw new IOException("distance index is stale: " + path);
+            }
+            int entryCount = buffer.getInt();
+            int edgeCount = buffer.getInt();
+            long buildNanos = buffer.getLong();
+            long expectedCrc = buffer.getLong();
+            if (nodeCount < 0 || entryCount < 0 || edgeCount < 0
+                    || size != HEADER_SIZE + 4L * (nodeCount + 1) + 5L * entryCount) {
+                throw new IOException("distance index is corrupt: " + path);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.duplicate());
+            if (crc.getValue() != expectedCrc) {
+                throw new IOException("distance index is corrupt: " + path);
+            }
+            IntBuffer offsets = slice(buffer, Integer.BYTES * (nodeCount + 1)).asIntBuffer();
+            IntBuffer hubs = slice(buffer, Integer.BYTES * entryCount).asIntBuffer();
+            ByteBuffer distances = slice(buffer, entryCount);
+            if (offsets.get(0) != 0 || offsets.get(nodeCount) != entryCount) {
+                throw new IOException("distance index is corrupt: " + path);
+            }
+            return new DistanceIndex(nodeCount, edgeCount, offsets, hubs, distances, buildNanos);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("distance index is corrupt: " + path, e);
+        }
+    }
+
+    // the next length bytes of buffer as a buffer of their own, moving buffer past them
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    /**
+     * Throws an exception if the representation invariant is violated.
+     */
+    private void checkRep() {
+        assert offsets != null && hubs != null && distances != null : "null fields";
+        assert offsets.limit() == nodeCount + 1 : "bad offsets";
+        assert offsets.get(0) == 0 && offsets.get(nodeCount) == hubs.limit() : "bad offsets";
+        assert hubs.limit() == distances.limit() : "hubs and distances differ in length";
+    }
+}
@@ -0,0 +1,245 @@
+package marvel;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Utility class to save a CsrGraph to a binary file and map it back in, so a process can start
+ * without parsing the TSV file and rebuilding the graph.
+ *
+ * A snapshot is laid out as:
+ *  header:  magic (long), format version (int), unused (int), source stamp (long),
+ *           CRC-32C of everything after the header (long)
+ *  payload: node count, label count, edge count, link count (ints),
+ *           link starts (node count + 1 ints), link targets and link edges (link count + 1 ints each),
+ *           targets and labels (edge count ints each), components (node count ints),
+ *           every node name then every label name, each as a byte length (int) and UTF-8 bytes
+ * The int columns come first, so each starts at a multiple of 4 bytes, and hold everything the graph
+ * keeps, links and components included. Reading maps the file and hands the graph IntBuffer views of
+ * the columns, so nothing is copied or computed again and a page of the file is only read when the
+ * graph first touches it; only the names are decoded, since lookups need them as Strings. Numbers
+ * are little-endian, the byte order of most processors, so the views read them without swapping.
+ * The source stamp is whatever the writer was given, normally MarvelParser.stamp of the TSV file the
+ * graph was built from, which changes with the size and modification time of the file without
+ * reading it; a reader asking for a different one treats the snapshot as stale.
+ * Reading checks the CRC of the whole file unless the caller opts out, since a column with a flipped
+ * bit would otherwise only fail, or give wrong paths, when a search reaches it. Without the CRC only
+ * the header, the counts against the size of the file, and the ends of the columns are checked.
+ * Snapshots are limited to 2 GB, the most a single mapping can hold.
+ */
+public final class GraphSnapshot {
+
+    /**
+     * Bumped whenever the layout above changes, so older snapshots are rebuilt instead of misread.
+     */
+    public static final int FORMAT_VERSION = 5;
+
+    private static final long MAGIC = 0x4d52564c534e4150L; // "MRVLSNAP"
+    private static final int HEADER_SIZE = 32;
+
+    private GraphSnapshot() {
+    }
+
+    /**
+     * Writes graph to path, replacing any existing file only once the new one is complete.
+     *
+     * @param graph to save
+     * @param path of the snapshot file
+     * @param sourceStamp stamp of the data graph was built from
+     * @throws IOException if the file cannot be written or the graph is too large for a snapshot
+     * @spec.requires graph != null and path != null
+     */
+    public static void write(CsrGraph graph, Path path, long sourceStamp) throws IOException {
+        // a graph extended with new names has ids out of name order and rows out of place; the snapshot
+        // is of the graph renumbered and packed, as a graph built in one go has it
+        graph = graph.inNameOrder();
+        int nodeCount = graph.size();
+        int edgeCount = graph.edgeCount();
+        int linkCount = graph.linkCount();
+        byte[][] names = encode(graph.names());
+        byte[][] labelNames = encode(graph.labelNames());
+        long ints = 4 + 2L * nodeCount + 1 + 2L * (linkCount + 1) + 2L * edgeCount;
+        long size = HEADER_SIZE + Integer.BYTES * ints + stringsSize(names) + stringsSize(labelNames);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("graph is too large for a snapshot");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(HEADER_SIZE);
+        buffer.putInt(nodeCount).putInt(labelNames.length).putInt(edgeCount).putInt(linkCount);
+        putInts(buffer, graph.linkStarts(), nodeCount + 1);
+        putInts(buffer, graph.linkTargets(), linkCount + 1);
+        putInts(buffer, graph.linkEdges(), linkCount + 1);
+        putInts(buffer, graph.targets(), edgeCount);
+        putInts(buffer, graph.labels(), edgeCount);
+        putInts(buffer, graph.components(), nodeCount);
+        putStrings(buffer, names);
+        putStrings(buffer, labelNames);
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), HEADER_SIZE, buffer.capacity() - HEADER_SIZE);
+        buffer.position(0);
+        buffer.putLong(MAGIC).putInt(FORMAT_VERSION).putInt(0).putLong(sourceStamp).putLong(crc.getValue());
+        buffer.position(0);
+
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Maps the snapshot at path, checks its CRC and returns the graph stored in it.
+     *
+     * @param path of the snapshot file
+     * @param sourceStamp stamp the snapshot must have been written with
+     * @throws IOException if the file cannot be read, is not a snapshot of the current format,
+     *         was written for a different source stamp, or fails its CRC
+     * @spec.requires path != null
+     * @return the graph stored in the snapshot, reading its columns from the mapped file
+     */
+    public static CsrGraph read(Path path, long sourceStamp) throws IOException {
+        return read(path, sourceStamp, true);
+    }
+
+    /**
+     * Maps the snapshot at path and returns the graph stored in it.
+     *
+     * @param path of the snapshot file
+     * @param sourceStamp stamp the snapshot must have been written with
+     * @param verify whether to check the CRC of the whole file; a caller that passes false trusts the
+     *               file not to have been damaged since it was written
+     * @throws IOException if the file cannot be read, is not a snapshot of the current format,
+     *         was written for a different source stamp, its columns do not fit it, or verify is
+     *         true and it fails its CRC
+     * @spec.requires path != null
+     * @return the graph stored in the snapshot, reading its columns from the mapped file
+     */
+    public static CsrGraph read(Path path, long sourceStamp, boolean verify) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("not a graph snapshot: " + path);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getLong() != MAGIC) {
+                throw new IOException("not a graph snapshot: " + path);
+            }
+            if (buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("snapshot has an old format: " + path);
+            }
+            buffer.getInt();
+            if (buffer.getLong() != sourceStamp) {
+                throw new IOException("snapshot is stale: " + path);
+            }
+            long expectedCrc = buffer.getLong();
+            if (verify) {
+                CRC32C crc = new CRC32C();
+                crc.update(buffer.duplicate());
+                if (crc.getValue() != expectedCrc) {
+                    throw new IOException("snapshot is corrupt: " + path);
+                }
+            }
+            return readGraph(buffer, path);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException
+                | NegativeArraySizeException e) {
+            throw new IOException("snapshot is corrupt: " + path, e);
+        }
+    }
+
+    private static CsrGraph readGraph(ByteBuffer buffer, Path path) throws IOException {
+        int nodeCount = buffer.getInt();
+        int labelCount = buffer.getInt();
+        int edgeCount = buffer.getInt();
+        int linkCount = buffer.getInt();
+        if (nodeCount < 0 || labelCount < 0 || edgeCount < 0 || linkCount < 0) {
+            throw new IOException("snapshot is corrupt: " + path);
+        }
+        IntBuffer linkStart = ints(buffer, nodeCount + 1L);
+        IntBuffer linkTargets = ints(buffer, linkCount + 1L);
+        IntBuffer linkEdges = ints(buffer, linkCount + 1L);
+        IntBuffer targets = ints(buffer, edgeCount);
+        IntBuffer labels = ints(buffer, edgeCount);
+        IntBuffer component = ints(buffer, nodeCount);
+        String[] names = getStrings(buffer, nodeCount);
+        String[] labelNames = getStrings(buffer, labelCount);
+        if (buffer.hasRemaining() || linkStart.get(0) != 0 || linkStart.get(nodeCount) != linkCount
+                || linkEdges.get(linkCount) != edgeCount) {
+            throw new IOException("snapshot is corrupt: " + path);
+        }
+        return CsrGraph.fromColumns(names, labelNames, linkStart, linkTargets, linkEdges, targets, labels, component);
+    }
+
+    private static byte[][] encode(String[] strings) {
+        byte[][] bytes = new byte[strings.length][];
+        for (int i = 0; i < strings.length; i++) {
+            bytes[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    private static long stringsSize(byte[][] strings) {
+        long size = (long) Integer.BYTES * strings.length;
+        for (byte[] s : strings) {
+            size += s.length;
+        }
+        return size;
+    }
+
+    private static void putStrings(ByteBuffer buffer, byte[][] strings) {
+        for (byte[] s : strings) {
+            buffer.putInt(s.length).put(s);
+        }
+    }
+
+    private static String[] getStrings(ByteBuffer buffer, int count) {
+        String[] strings = new String[count];
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getInt();
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            buffer.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static void putInts(ByteBuffer buffer, IntBuffer ints, int count) {
+        ints.position(0).limit(count);
+        buffer.asIntBuffer().put(ints);
+        buffer.position(buffer.position() + Integer.BYTES * count);
+    }
+
+    // the next count ints of buffer as a view of their own, moving buffer past them
+    private static IntBuffer ints(ByteBuffer buffer, long count) {
+        if (Integer.BYTES * count > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        ByteBuffer slice = buffer.slice();
+        slice.limit(Integer.BYTES * (int) count);
+        buffer.position(buffer.position() + slice.limit());
+        return slice.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+}
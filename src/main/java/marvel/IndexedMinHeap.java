@@ -0,0 +1,163 @@
+package marvel;
+
+/**
+ * IndexedMinHeap is a binary min-heap of the ints 0 to n - 1, each with a double key, kept in plain
+ * arrays. Since it knows where each int sits in the heap, the key of one already in the heap can be
+ * lowered in place, which is what Dijkstra's algorithm needs.
+ * Ints with equal keys come out in ascending order, so a search using the heap is deterministic.
+ *
+ * The heap does not keep track of which ints are in it; the caller does, which lets clear() empty
+ * it in constant time, so that one heap serves search after search.
+ *
+ * @spec.specfield elements : set of (int, double) // the ints in the heap and their keys
+ */
+final class IndexedMinHeap {
+
+    // Abstraction Function:
+    //  elements = {(heap[i], key[heap[i]]) | 0 <= i < size}
+    //
+    // Representation Invariant:
+    //  0 <= size <= heap.length, the ints in heap[0..size) are distinct, position[heap[i]] == i for
+    //  0 <= i < size, and no element of heap[0..size) comes before its parent heap[(i - 1) / 2] in
+    //  (key, int) order
+
+    private final int[] heap;
+    private final int[] position;
+    private final double[] key;
+    private int size;
+
+    /**
+     * Creates an empty heap for the ints 0 to n - 1.
+     *
+     * @param n number of ints the heap can hold
+     * @spec.requires n &gt;= 0
+     */
+    IndexedMinHeap(int n) {
+        heap = new int[n];
+        position = new int[n];
+        key = new double[n];
+    }
+
+    /**
+     * @return the number of ints this heap can hold
+     */
+    int capacity() {
+        return heap.length;
+    }
+
+    /**
+     * Empties the heap.
+     *
+     * @spec.modifies this
+     * @spec.effects elements is empty
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return true iff the heap is empty
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds x with the given key.
+     *
+     * @param x the int to add
+     * @param k its key
+     * @spec.requires 0 &lt;= x &lt; n and x is not in the heap
+     * @spec.modifies this
+     * @spec.effects elements holds (x, k)
+     */
+    void add(int x, double k) {
+        int i = size++;
+        heap[i] = x;
+        position[x] = i;
+        key[x] = k;
+        siftUp(i);
+    }
+
+    /**
+     * Lowers the key of x.
+     *
+     * @param x an int in the heap
+     * @param k its new key
+     * @spec.requires x is in the heap and k &lt;= key of x
+     * @spec.modifies this
+     * @spec.effects elements holds (x, k) instead of (x, old key of x)
+     */
+    void decrease(int x, double k) {
+        key[x] = k;
+        siftUp(position[x]);
+    }
+
+    /**
+     * Removes the int with the least key, the least int among equal keys.
+     *
+     * @spec.requires the heap is not empty
+     * @spec.modifies this
+     * @spec.effects removes that int from elements
+     * @return the int removed
+     */
+    int poll() {
+        int top = heap[0];
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            position[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * @param x an int that was added to the heap since it was last cleared
+     * @spec.requires 0 &lt;= x &lt; n
+     * @return the last key x had in the heap
+     */
+    double key(int x) {
+        return key[x];
+    }
+
+    private boolean before(int a, int b) {
+        return key[a] < key[b] || (key[a] == key[b] && a < b);
+    }
+
+    private void siftUp(int i) {
+        int x = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(x, heap[parent])) {
+                break;
+            }
+            heap[i] = heap[parent];
+            position[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = x;
+        position[x] = i;
+    }
+
+    private void siftDown(int i) {
+        int x = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], x)) {
+                break;
+            }
+            heap[i] = heap[child];
+            position[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = x;
+        position[x] = i;
+    }
+}
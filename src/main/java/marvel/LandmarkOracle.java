@@ -0,0 +1,323 @@
+package marvel;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * LandmarkOracle answers how many steps apart two characters of a CsrGraph are, mostly without a
+ * search. When it is built, a Breadth-First-Search from each of a few landmark characters records the
+ * distance from that landmark to every character. Since the graph is undirected, for any landmark L
+ *  |d(u, L) - d(L, v)| &lt;= d(u, v) &lt;= d(u, L) + d(L, v)
+ * so the landmarks give a lower and an upper bound on every distance. When the best bounds meet,
+ * that is the distance; otherwise a search bounded by the upper bound finds it.
+ * Landmarks with many neighbors sit on many shortest paths, so by default those are picked.
+ *
+ * Distances are kept in one byte per (character, landmark), so a graph in which two connected
+ * characters are more than 254 steps apart cannot have an oracle.
+ * An oracle can be serialized and read back in place of building it again. It is tied to the graph
+ * it was built from: every query takes that graph, or one built from the same data, as an argument.
+ * Distances are kept by node id, so a query on a graph whose node or edge count differs from that
+ * graph, such as one a LiveGraph has appended to since, is rejected rather than answered wrongly.
+ *
+ * @spec.specfield landmarks : sequence of String // the landmark characters
+ * @spec.specfield distances : (node, landmark) -&gt; int // steps from node to landmark, if connected
+ */
+public final class LandmarkOracle implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    // a distance byte with this value means the landmark cannot be reached
+    private static final int UNREACHED = 0xFF;
+
+    // Abstraction Function:
+    //  landmarks = [landmarkNames[0], ..., landmarkNames[landmarkNames.length - 1]]
+    //  distances(n, i) = distances[n * landmarkNames.length + i] & 0xFF, for node id n and landmark i,
+    //  where UNREACHED means there is no path
+    //
+    // Representation Invariant:
+    //  no field is null, landmarkIds.length == landmarkNames.length
+    //  distances.length == nodeCount * landmarkNames.length
+    //  distances[landmarkIds[i] * landmarkNames.length + i] == 0
+    //  nodeCount and edgeCount are the size and edge count of the graph the distances were found on
+
+    private final int nodeCount;
+    private final int edgeCount;
+    private final int[] landmarkIds;
+    private final String[] landmarkNames;
+    private final byte[] distances;
+
+    private LandmarkOracle(int nodeCount, int edgeCount, int[] landmarkIds, String[] landmarkNames,
+                           byte[] distances) {
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        this.landmarkIds = landmarkIds;
+        this.landmarkNames = landmarkNames;
+        this.distances = distances;
+        checkRep();
+    }
+
+    /**
+     * Builds an oracle with the count characters of graph that have the most neighbors as landmarks,
+     * ties going to the smaller name. The searches from the landmarks run in parallel.
+     *
+     * @param graph to answer distances on
+     * @param count number of landmarks
+     * @throws IllegalArgumentException if two connected characters are more than 254 steps apart
+     * @spec.requires graph != null and count &gt;= 0
+     * @return an oracle for graph with min(count, graph.size()) landmarks
+     */
+    public static LandmarkOracle build(CsrGraph graph, int count) {
+        Integer[] nodes = new Integer[graph.size()];
+        int[] degree = new int[graph.size()];
+        for (int n = 0; n < nodes.length; n++) {
+            nodes[n] = n;
+            degree[n] = graph.degree(n);
+        }
+        Arrays.sort(nodes, Comparator.comparing((Integer n) -> -degree[n]).thenComparing(graph::rank));
+        List<String> landmarks = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, nodes.length); i++) {
+            landmarks.add(graph.name(nodes[i]));
+        }
+        return build(graph, landmarks);
+    }
+
+    /**
+     * Builds an oracle with the given landmarks. The searches from the landmarks run in parallel.
+     *
+     * @param graph to answer distances on
+     * @param landmarks names of the landmark characters
+     * @throws IllegalArgumentException if a landmark is not in graph, or if two connected characters
+     *         are more than 254 steps apart
+     * @spec.requires graph != null and landmarks != null
+     * @return an oracle for graph with the given landmarks
+     */
+    public static LandmarkOracle build(CsrGraph graph, List<String> landmarks) {
+        int k = landmarks.size();
+        int[] ids = new int[k];
+        String[] names = landmarks.toArray(new String[0]);
+        for (int i = 0; i < k; i++) {
+            ids[i] = graph.id(names[i]);
+            if (ids[i] < 0) throw new IllegalArgumentException(names[i] + " is not in the graph.");
+        }
+        byte[] distances = new byte[graph.size() * k];
+        Arrays.fill(distances, (byte) UNREACHED);
+        // each landmark fills its own column, and each search uses the workspace of its own thread
+        IntStream.range(0, k).parallel().forEach(i -> fillDistances(graph, ids[i], i, k, distances));
+        return new LandmarkOracle(graph.size(), graph.edgeCount(), ids, names, distances);
+    }
+
+    // a full BFS from landmark, storing the level of every node it reaches in column i
+    private static void fillDistances(CsrGraph graph, int landmark, int i, int k, byte[] distances) {
+        BfsWorkspace ws = BfsWorkspace.get(graph.size());
+        int[] seen = ws.seen;
+        int[] queue = ws.queue;
+        int epoch = ws.epoch;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = landmark;
+        seen[landmark] = epoch;
+        for (int level = 0; head < tail; level++) {
+            if (level >= UNREACHED) {
+                throw new IllegalArgumentException("graph has characters more than " + (UNREACHED - 1)
+                        + " steps apart");
+            }
+            int end = tail;
+            for (; head < end; head++) {
+                int n = queue[head];
+                distances[n * k + i] = (byte) level;
+                for (int link = graph.firstLink(n); link < graph.endLink(n); link++) {
+                    int m = graph.linkTarget(link);
+                    if (seen[m] != epoch) {
+                        seen[m] = epoch;
+                        queue[tail++] = m;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the names of the landmarks, in the order they were given or picked
+     */
+    public List<String> landmarks() {
+        return Collections.unmodifiableList(Arrays.asList(landmarkNames));
+    }
+
+    /**
+     * @param graph the graph this oracle was built for
+     * @param u starting node
+     * @param v destination node
+     * @throws IllegalArgumentException when u or v are not in graph, or graph differs in node or edge
+     *         count from the graph this oracle was built for
+     * @spec.requires graph != null and u != null and v != null and graph was built from the same data
+     *                as the graph this oracle was built for
+     * @return the least d(u, L) + d(L, v) over the landmarks L, or -1 if u and v are not connected
+     *         or no landmark is connected to them
+     */
+    public int upperBound(CsrGraph graph, String u, String v) {
+        int start = id(graph, u);
+        int dest = id(graph, v);
+        return graph.connected(start, dest) ? upperBound(start, dest) : -1;
+    }
+
+    /**
+     * @param graph the graph this oracle was built for
+     * @param u starting node
+     * @param v destination node
+     * @throws IllegalArgumentException when u or v are not in graph, or graph differs in node or edge
+     *         count from the graph this oracle was built for
+     * @spec.requires graph != null and u != null and v != null and graph was built from the same data
+     *                as the graph this oracle was built for
+     * @return the greatest |d(u, L) - d(L, v)| over the landmarks L connected to them, 0 if there is
+     *         none, or -1 if u and v are not connected
+     */
+    public int lowerBound(CsrGraph graph, String u, String v) {
+        int start = id(graph, u);
+        int dest = id(graph, v);
+        return graph.connected(start, dest) ? lowerBound(start, dest) : -1;
+    }
+
+    /**
+     * Finds the number of edges on a shortest path from u to v. When the landmark bounds meet no search
+     * is run; otherwise a bidirectional Breadth-First-Search between u and v only looks for paths
+     * shorter than the upper bound.
+     *
+     * @param graph the graph this oracle was built for
+     * @param u starting node
+     * @param v destination node
+     * @throws IllegalArgumentException when u or v are not in graph, or graph differs in node or edge
+     *         count from the graph this oracle was built for
+     * @spec.requires graph != null and u != null and v != null and graph was built from the same data
+     *                as the graph this oracle was built for
+     * @return the distance from u to v, or -1 if there is no path
+     */
+    public int distance(CsrGraph graph, String u, String v) {
+        int start = id(graph, u);
+        int dest = id(graph, v);
+        if (!graph.connected(start, dest)) {
+            return -1;
+        }
+        int upper = upperBound(start, dest);
+        if (upper >= 0 && upper == lowerBound(start, dest)) {
+            return upper;
+        }
+        return boundedDistance(graph, start, dest, upper < 0 ? Integer.MAX_VALUE : upper);
+    }
+
+    private int id(CsrGraph graph, String name) {
+        if (graph.size() != nodeCount || graph.edgeCount() != edgeCount) {
+            throw new IllegalArgumentException("oracle was built for a different graph");
+        }
+        int id = graph.id(name);
+        if (id < 0) throw new IllegalArgumentException(name + " is not in the graph.");
+        return id;
+    }
+
+    private int upperBound(int u, int v) {
+        int k = landmarkIds.length;
+        int best = -1;
+        for (int i = 0; i < k; i++) {
+            int du = distances[u * k + i] & 0xFF;
+            int dv = distances[v * k + i] & 0xFF;
+            if (du != UNREACHED && dv != UNREACHED && (best < 0 || du + dv < best)) {
+                best = du + dv;
+            }
+        }
+        return best;
+    }
+
+    private int lowerBound(int u, int v) {
+        int k = landmarkIds.length;
+        int best = 0;
+        for (int i = 0; i < k; i++) {
+            int du = distances[u * k + i] & 0xFF;
+            int dv = distances[v * k + i] & 0xFF;
+            if (du != UNREACHED && dv != UNREACHED) {
+                best = Math.max(best, Math.abs(du - dv));
+            }
+        }
+        return best;
+    }
+
+    // bidirectional BFS between start and dest, a level at a time from whichever side has the smaller
+    // frontier. each level can only find paths one longer than the levels so far add up to, so once
+    // that would reach limit, dest is known to be limit away
+    private static int boundedDistance(CsrGraph graph, int start, int dest, int limit) {
+        if (start == dest) {
+            return 0;
+        }
+        BfsWorkspace ws = BfsWorkspace.get(graph.size());
+        int epoch = ws.epoch;
+        int[] seen = ws.seen;
+        int[] seenBack = ws.seenBack;
+        int[] fromStart = ws.distance;
+        int[] toDest = ws.distanceBack;
+        int[] forward = ws.queue;
+        int[] backward = ws.queueBack;
+        int forwardHead = 0;
+        int forwardTail = 0;
+        int backwardHead = 0;
+        int backwardTail = 0;
+        int forwardLevel = 0;
+        int backwardLevel = 0;
+        forward[forwardTail++] = start;
+        seen[start] = epoch;
+        fromStart[start] = 0;
+        backward[backwardTail++] = dest;
+        seenBack[dest] = epoch;
+        toDest[dest] = 0;
+
+        while (forwardLevel + backwardLevel + 1 < limit && forwardHead < forwardTail && backwardHead < backwardTail) {
+            int best = Integer.MAX_VALUE;
+            if (forwardTail - forwardHead <= backwardTail - backwardHead) {
+                int end = forwardTail;
+                for (; forwardHead < end; forwardHead++) {
+                    int n = forward[forwardHead];
+                    for (int k = graph.firstLink(n); k < graph.endLink(n); k++) {
+                        int m = graph.linkTarget(k);
+                        if (seen[m] != epoch) {
+                            seen[m] = epoch;
+                            fromStart[m] = forwardLevel + 1;
+                            forward[forwardTail++] = m;
+                            if (seenBack[m] == epoch) {
+                                best = Math.min(best, forwardLevel + 1 + toDest[m]);
+                            }
+                        }
+                    }
+                }
+                forwardLevel++;
+            } else {
+                int end = backwardTail;
+                for (; backwardHead < end; backwardHead++) {
+                    int n = backward[backwardHead];
+                    for (int k = graph.firstLink(n); k < graph.endLink(n); k++) {
+                        int m = graph.linkTarget(k);
+                        if (seenBack[m] != epoch) {
+                            seenBack[m] = epoch;
+                            toDest[m] = backwardLevel + 1;
+                            backward[backwardTail++] = m;
+                            if (seen[m] == epoch) {
+                                best = Math.min(best, backwardLevel + 1 + fromStart[m]);
+                            }
+                        }
+                    }
+                }
+                backwardLevel++;
+            }
+            if (best != Integer.MAX_VALUE) {
+                return best;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Throws an exception if the representation invariant is violated.
+     */
+    private void checkRep() {
+        assert landmarkIds != null && landmarkNames != null && distances != null : "null fields";
+        assert landmarkIds.length == landmarkNames.length : "landmarks differ";
+        assert distances.length == nodeCount * landmarkIds.length : "bad distances";
+    }
+}
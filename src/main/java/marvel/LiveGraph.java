@@ -0,0 +1,132 @@
+package marvel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * LiveGraph holds the current CsrGraph of a dataset that grows while the program runs. New (hero, book)
+ * rows are appended from a collection, a stream or a delta TSV file with the same header as the
+ * dataset, and only the characters appearing in a book that gained members have their rows rebuilt.
+ *
+ * Every append makes a new CsrGraph with a new version and leaves the old one as it was, so a thread
+ * that got a graph from graph() keeps a consistent graph for as long as it uses it, and anything
+ * derived from a graph, such as a PathCache or a NameIndex, can tell from the version that it is stale.
+ * Appends are serialized; graph() and membership() never wait.
+ *
+ * @spec.specfield membership : BookMembership // every appearance loaded or appended so far
+ * @spec.specfield graph : CsrGraph // the co-appearance graph of membership
+ */
+public final class LiveGraph {
+
+    // Abstraction Function:
+    //  membership = state.membership, graph = state.graph
+    //
+    // Representation Invariant:
+    //  state != null and state.graph was built from state.membership
+
+    private volatile State state;
+
+    // the membership and its graph, swapped together so readers never see one without the other
+    private static final class State {
+        final BookMembership membership;
+        final CsrGraph graph;
+
+        State(BookMembership membership, CsrGraph graph) {
+            this.membership = membership;
+            this.graph = graph;
+        }
+    }
+
+    /**
+     * Creates a LiveGraph starting from membership.
+     *
+     * @param membership the dataset loaded so far
+     * @spec.requires membership != null
+     */
+    public LiveGraph(BookMembership membership) {
+        this.state = new State(membership, CsrGraph.fromMembership(membership));
+    }
+
+    /**
+     * Loads filename from the resources/data folder into a new LiveGraph.
+     *
+     * @param filename to load
+     * @spec.requires filename is valid and the file exists.
+     * @return a LiveGraph of the data in filename
+     */
+    public static LiveGraph load(String filename) {
+        return new LiveGraph(MarvelParser.parseMembership(filename));
+    }
+
+    /**
+     * @return the current graph
+     */
+    public CsrGraph graph() {
+        return state.graph;
+    }
+
+    /**
+     * @return the membership the current graph was built from
+     */
+    public BookMembership membership() {
+        return state.membership;
+    }
+
+    /**
+     * Appends (hero, book) rows. Rows already loaded are ignored.
+     *
+     * @param rows the rows to add
+     * @spec.requires rows != null and no row, hero or book is null
+     * @spec.modifies this
+     * @spec.effects membership holds the rows, and graph is its graph, with a new version
+     * @return the new graph
+     */
+    public synchronized CsrGraph append(Collection<? extends Map.Entry<String, String>> rows) {
+        State current = state;
+        BookMembership next = current.membership.withRows(rows);
+        state = new State(next, current.graph.extend(current.membership, next));
+        return state.graph;
+    }
+
+    /**
+     * Appends the rows of a TSV stream with a hero and a book column. The stream is not closed.
+     *
+     * @param stream of the delta TSV, starting with its header
+     * @throws IOException if the stream cannot be read
+     * @throws IllegalArgumentException if the header lacks a hero or book column, or a row has a
+     *         missing or extra column
+     * @spec.requires stream != null
+     * @spec.modifies this
+     * @spec.effects membership holds the rows, and graph is its graph, with a new version
+     * @return the new graph
+     */
+    public CsrGraph append(InputStream stream) throws IOException {
+        List<Map.Entry<String, String>> rows = new ArrayList<>();
+        MarvelParser.parseRows(stream, (data, heroStart, heroEnd, bookStart, bookEnd) ->
+                rows.add(new AbstractMap.SimpleEntry<>(MarvelParser.decode(data, heroStart, heroEnd),
+                        MarvelParser.decode(data, bookStart, bookEnd))));
+        return append(rows);
+    }
+
+    /**
+     * Appends the rows of a delta TSV file with a hero and a book column.
+     *
+     * @param delta path of the delta TSV
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the header lacks a hero or book column, or a row has a
+     *         missing or extra column
+     * @spec.requires delta != null
+     * @spec.modifies this
+     * @spec.effects membership holds the rows, and graph is its graph, with a new version
+     * @return the new graph
+     */
+    public CsrGraph append(Path delta) throws IOException {
+        List<Map.Entry<String, String>> rows = new ArrayList<>();
+        MarvelParser.parseRows(delta, (data, heroStart, heroEnd, bookStart, bookEnd) ->
+                rows.add(new AbstractMap.SimpleEntry<>(MarvelParser.decode(data, heroStart, heroEnd),
+                        MarvelParser.decode(data, bookStart, bookEnd))));
+        return append(rows);
+    }
+}
@@ -15,19 +15,40 @@ import com.opencsv.bean.CsvBindByName;
 import com.opencsv.bean.CsvToBeanBuilder;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
 
 /**
  * Parser utility to load the Marvel Comics dataset.
  */
 public class MarvelParser {
 
+    // bytes mapped or buffered at a time; a single line has to fit in one window
+    private static final int WINDOW_SIZE = 1 << 30;
+    private static final int STREAM_BUFFER_SIZE = 1 << 20;
+
     /**
      * Reads the Marvel Universe dataset. Each line of the input file contains a character name and a
      * comic book the character appeared in, separated by a tab character
@@ -37,6 +58,74 @@ public class MarvelParser {
      * @return a HashMap with books as key and a set of characters as values.
      */
     public static HashMap<String, Set<String>> parseData(String filename) {
+        HashMap<String, Set<String>> bookToCharacterMap = new HashMap<>();
+        parseRows(filename, (data, heroStart, heroEnd, bookStart, bookEnd) -> {
+            String hero = decode(data, heroStart, heroEnd);
+            String book = decode(data, bookStart, bookEnd);
+            bookToCharacterMap.computeIfAbsent(book, k -> new HashSet<>()).add(hero);
+        });
+        return bookToCharacterMap;
+    }
+
+    /**
+     * Reads a dataset file on disk like parseData(String), such as one written by SyntheticData.
+     *
+     * @param path of the file that will be read
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the header lacks a hero or book column, or a row has a
+     *         missing or extra column
+     * @spec.requires path != null
+     * @return a HashMap with books as key and a set of characters as values.
+     */
+    public static HashMap<String, Set<String>> parseData(Path path) throws IOException {
+        HashMap<String, Set<String>> bookToCharacterMap = new HashMap<>();
+        parseRows(path, (data, heroStart, heroEnd, bookStart, bookEnd) -> {
+            String hero = decode(data, heroStart, heroEnd);
+            String book = decode(data, bookStart, bookEnd);
+            bookToCharacterMap.computeIfAbsent(book, k -> new HashSet<>()).add(hero);
+        });
+        return bookToCharacterMap;
+    }
+
+    /**
+     * Reads the Marvel Universe dataset like parseData, but codes every character and book
+     * as it arrives, so each distinct name is decoded once and the result is held in int arrays.
+     *
+     * @param filename the file that will be read
+     * @spec.requires filename is a valid file in the resources/data folder.
+     * @return the characters of every book along with the character and book dictionaries
+     */
+    public static BookMembership parseMembership(String filename) {
+        MembershipCollector collector = new MembershipCollector();
+        parseRows(filename, collector);
+        return collector.finish();
+    }
+
+    /**
+     * Reads a dataset file on disk like parseMembership(String), such as one written by SyntheticData.
+     *
+     * @param path of the file that will be read
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the header lacks a hero or book column, or a row has a
+     *         missing or extra column
+     * @spec.requires path != null
+     * @return the characters of every book along with the character and book dictionaries
+     */
+    public static BookMembership parseMembership(Path path) throws IOException {
+        MembershipCollector collector = new MembershipCollector();
+        parseRows(path, collector);
+        return collector.finish();
+    }
+
+    /**
+     * Reads the Marvel Universe dataset the same way as parseData, binding every row to a
+     * CharacterModel with opencsv. Kept as the reference implementation to compare parseData against.
+     *
+     * @param filename the file that will be read
+     * @spec.requires filename is a valid file in the resources/data folder.
+     * @return a HashMap with books as key and a set of characters as values.
+     */
+    public static HashMap<String, Set<String>> parseDataOpenCsv(String filename) {
         // You can use this code as an example for getting a file from the resources folder
         // in a project like this. If you access TSV files elsewhere in your code, you'll need
         // to use similar code. If you use this code elsewhere, don't forget:
@@ -79,6 +168,331 @@ public class MarvelParser {
     }
 
 
+    /**
+     * Scans a TSV file from the resources/data folder and hands every (hero, book) pair to handler
+     * as byte ranges, without building a String or bean per row.
+     * The first line is the header; the "hero" and "book" columns are found by name and every other
+     * line has to have as many columns as the header. Leading spaces of a field are skipped, a
+     * trailing carriage return is dropped and fields are taken verbatim (there is no quoting).
+     * A file on disk is memory-mapped; a resource inside a jar is streamed through a direct buffer.
+     *
+     * @param filename the file that will be read
+     * @param handler receives the rows in file order
+     * @throws IllegalArgumentException if the file does not exist, the header lacks a hero or book
+     *         column, or a row has a missing or extra column
+     * @throws UncheckedIOException if the file cannot be read
+     * @spec.requires filename is a valid file in the resources/data folder and handler != null
+     */
+    public static void parseRows(String filename, RowHandler handler) {
+        URL url = MarvelParser.class.getResource("/data/" + filename);
+        if (url == null) {
+            throw new IllegalArgumentException("provided an invalid file name");
+        }
+        try {
+            if ("file".equals(url.getProtocol())) {
+                parseRows(Paths.get(url.toURI()), handler);
+            } else {
+                try (ReadableByteChannel channel = Channels.newChannel(url.openStream())) {
+                    parseRows(channel, handler);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("provided an invalid file name", e);
+        }
+    }
+
+    /**
+     * Computes a CRC-32C checksum of the raw bytes of a file from the resources/data folder,
+     * so that data derived from the file can tell whether it is still up to date.
+     *
+     * @param filename the file that will be read
+     * @throws IllegalArgumentException if the file does not exist
+     * @throws UncheckedIOException if the file cannot be read
+     * @spec.requires filename is a valid file in the resources/data folder.
+     * @return the checksum of the file contents
+     */
+    public static long checksum(String filename) {
+        URL url = MarvelParser.class.getResource("/data/" + filename);
+        if (url == null) {
+            throw new IllegalArgumentException("provided an invalid file name");
+        }
+        CRC32C crc = new CRC32C();
+        try (InputStream stream = url.openStream()) {
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            while ((n = stream.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Computes a stamp of a file from the resources/data folder from its size and last modification
+     * time, without reading it, so that data derived from the file can tell cheaply whether it is
+     * still up to date. A resource inside a jar is stamped by its checksum instead.
+     *
+     * @param filename the file to stamp
+     * @throws IllegalArgumentException if the file does not exist
+     * @throws UncheckedIOException if the attributes of the file cannot be read
+     * @spec.requires filename is a valid file in the resources/data folder.
+     * @return a stamp that changes whenever the size or the modification time of the file does
+     */
+    public static long stamp(String filename) {
+        URL url = MarvelParser.class.getResource("/data/" + filename);
+        if (url == null) {
+            throw new IllegalArgumentException("provided an invalid file name");
+        }
+        if (!"file".equals(url.getProtocol())) {
+            return checksum(filename);
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(Paths.get(url.toURI()), BasicFileAttributes.class);
+            return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) * 31 + attributes.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("provided an invalid file name", e);
+        }
+    }
+
+    /**
+     * Memory-maps the TSV file at path and scans it like parseRows(String, RowHandler).
+     *
+     * @param path of the file that will be read
+     * @param handler receives the rows in file order
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the header lacks a hero or book column, or a row has a
+     *         missing or extra column
+     * @spec.requires path != null and handler != null
+     */
+    public static void parseRows(Path path, RowHandler handler) throws IOException {
+        long began = Metrics.ENABLED ? System.nanoTime() : 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            TsvScanner scanner = new TsvScanner(handler);
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(size - position, WINDOW_SIZE);
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean last = position + length == size;
+                int consumed = scanner.scan(window, last);
+                if (consumed == 0 && !last) {
+                    throw new IllegalArgumentException("line too long at line " + scanner.line);
+                }
+                position += consumed;
+            }
+            if (Metrics.ENABLED) {
+                scanner.record(size, began);
+            }
+        }
+    }
+
+    /**
+     * Scans a TSV stream like parseRows(String, RowHandler), reading it to the end. The stream is not closed.
+     *
+     * @param stream of the TSV data, starting with its header
+     * @param handler receives the rows in stream order
+     * @throws IOException if the stream cannot be read
+     * @throws IllegalArgumentException if the header lacks a hero or book column, or a row has a
+     *         missing or extra column
+     * @spec.requires stream != null and handler != null
+     */
+    public static void parseRows(InputStream stream, RowHandler handler) throws IOException {
+        parseRows(Channels.newChannel(stream), handler);
+    }
+
+    // streams the channel through a direct buffer, keeping a partial last line for the next read
+    private static void parseRows(ReadableByteChannel channel, RowHandler handler) throws IOException {
+        long began = Metrics.ENABLED ? System.nanoTime() : 0;
+        TsvScanner scanner = new TsvScanner(handler);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE);
+        long bytes = 0;
+        boolean last = false;
+        while (!last) {
+            int read = channel.read(buffer);
+            last = read < 0;
+            bytes += Math.max(0, read);
+            if (!last && buffer.hasRemaining()) {
+                continue;
+            }
+            buffer.flip();
+            int consumed = scanner.scan(buffer.slice(), last);
+            buffer.position(consumed);
+            buffer.compact();
+            if (!last && consumed == 0) {
+                // one line fills the whole buffer, so give it twice the room
+                ByteBuffer bigger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+        }
+        if (Metrics.ENABLED) {
+            scanner.record(bytes, began);
+        }
+    }
+
+    /**
+     * Decodes the UTF-8 bytes data[start, end) into a String.
+     *
+     * @param data buffer holding the bytes
+     * @param start index of the first byte
+     * @param end index one past the last byte
+     * @spec.requires 0 &lt;= start &lt;= end &lt;= data.limit()
+     * @return the decoded String
+     */
+    public static String decode(ByteBuffer data, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Receives the rows scanned by parseRows. The byte ranges are only valid during the call.
+     */
+    public interface RowHandler {
+
+        /**
+         * Handles one row of the file.
+         *
+         * @param data buffer holding the row
+         * @param heroStart index of the first byte of the hero
+         * @param heroEnd index one past the last byte of the hero
+         * @param bookStart index of the first byte of the book
+         * @param bookEnd index one past the last byte of the book
+         */
+        void row(ByteBuffer data, int heroStart, int heroEnd, int bookStart, int bookEnd);
+    }
+
+    /**
+     * Interns the rows it is handed and remembers them as pairs of codes.
+     */
+    private static class MembershipCollector implements RowHandler {
+        private final SymbolTable heroes = new SymbolTable();
+        private final SymbolTable books = new SymbolTable();
+        private int[] rowHeroes = new int[1024];
+        private int[] rowBooks = new int[1024];
+        private int rows = 0;
+
+        @Override
+        public void row(ByteBuffer data, int heroStart, int heroEnd, int bookStart, int bookEnd) {
+            if (rows == rowHeroes.length) {
+                rowHeroes = Arrays.copyOf(rowHeroes, rows * 2);
+                rowBooks = Arrays.copyOf(rowBooks, rows * 2);
+            }
+            rowHeroes[rows] = heroes.intern(data, heroStart, heroEnd);
+            rowBooks[rows] = books.intern(data, bookStart, bookEnd);
+            rows++;
+        }
+
+        BookMembership finish() {
+            return BookMembership.fromRows(heroes, books, rowHeroes, rowBooks, rows);
+        }
+    }
+
+    /**
+     * Splits windows of a TSV file into lines and columns, remembering the header between windows.
+     */
+    private static class TsvScanner {
+        private final RowHandler handler;
+        private int columns = -1;
+        private int heroColumn = -1;
+        private int bookColumn = -1;
+        private int line = 0;
+
+        TsvScanner(RowHandler handler) {
+            this.handler = handler;
+        }
+
+        /**
+         * Scans every complete line in data, plus the unterminated last line if last is true.
+         *
+         * @return the number of bytes consumed, which is the start of the first unscanned line
+         */
+        int scan(ByteBuffer data, boolean last) {
+            int limit = data.limit();
+            int lineStart = 0;
+            int fieldStart = 0;
+            int column = 0;
+            int heroStart = 0;
+            int heroEnd = 0;
+            int bookStart = 0;
+            int bookEnd = 0;
+            for (int i = 0; i <= limit; i++) {
+                byte b = i < limit ? data.get(i) : (byte) '\n';
+                if (b != '\t' && b != '\n') {
+                    continue;
+                }
+                if (i == limit && (!last || lineStart == limit)) {
+                    break;
+                }
+                int fieldEnd = i;
+                if (b == '\n' && fieldEnd > fieldStart && data.get(fieldEnd - 1) == '\r') {
+                    fieldEnd--;
+                }
+                while (fieldStart < fieldEnd && data.get(fieldStart) == ' ') {
+                    fieldStart++;
+                }
+                if (column == heroColumn) {
+                    heroStart = fieldStart;
+                    heroEnd = fieldEnd;
+                } else if (column == bookColumn) {
+                    bookStart = fieldStart;
+                    bookEnd = fieldEnd;
+                }
+                if (columns < 0) {
+                    readHeader(data, column, fieldStart, fieldEnd);
+                }
+                column++;
+                fieldStart = i + 1;
+                if (b == '\n') {
+                    line++;
+                    if (columns < 0) {
+                        finishHeader(column);
+                    } else if (column != columns) {
+                        throw new IllegalArgumentException("line " + line + " has " + column
+                                + " columns, expected " + columns);
+                    } else {
+                        handler.row(data, heroStart, heroEnd, bookStart, bookEnd);
+                    }
+                    column = 0;
+                    lineStart = i + 1;
+                }
+            }
+            return Math.min(lineStart, limit);
+        }
+
+        private void readHeader(ByteBuffer data, int column, int start, int end) {
+            String name = decode(data, start, end).trim();
+            if (name.equalsIgnoreCase("hero")) {
+                heroColumn = column;
+            } else if (name.equalsIgnoreCase("book")) {
+                bookColumn = column;
+            }
+        }
+
+        // adds a finished scan of the given bytes, started at began, to the metrics
+        void record(long bytes, long began) {
+            Metrics.PARSE_ROWS.add(Math.max(0, line - 1));
+            Metrics.PARSE_BYTES.add(bytes);
+            Metrics.PARSE_TIME.record(System.nanoTime() - began);
+        }
+
+        private void finishHeader(int column) {
+            if (heroColumn < 0 || bookColumn < 0) {
+                throw new IllegalArgumentException("header must have a hero and a book column");
+            }
+            columns = column;
+        }
+    }
+
     /**
      * An inner (javabean) class that models a line from tsv file
      *
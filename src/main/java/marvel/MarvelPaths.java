@@ -1,7 +1,20 @@
 package marvel;
 
 import graph.*;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Utility class to load graph from a file and find a shortest path between 2 nodes.
@@ -10,14 +23,45 @@ import java.util.*;
 public class MarvelPaths {
     // If MarvelPaths is an ADT, AF and RI would normally go here
 
+    // where main keeps its snapshot of marvel.tsv, overridable with -Dmarvel.snapshot=...
+    private static final String SNAPSHOT_PROPERTY = "marvel.snapshot";
+    private static final String DEFAULT_SNAPSHOT = "build/marvel.snapshot";
+    // -Dmarvel.snapshot.verify=false makes main trust the snapshot without checking its CRC
+    private static final String VERIFY_PROPERTY = "marvel.snapshot.verify";
+    // turns off Nagle's algorithm in the JDK HTTP server, see PathServer; only read when its classes load
+    private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    // how far a name the prompt offers for a typo may be from the input, and how many it offers
+    static final int FUZZY_DISTANCE = 3;
+    static final int FUZZY_MATCHES = 10;
+
+    // port of the server mode when none is given
+    private static final int DEFAULT_PORT = 8331;
+
     /**
      * Main function. Interactive Program that allows user to search through Marvel database and find
      * connection between 2 characters.
+     * Started with "--serve [port]", it answers queries over HTTP instead (see PathServer) until the
+     * process is stopped. Started with "--batch [--json] [file]", it answers one "A\tB" pair per line
+     * of file, or of standard input if there is no file or it is "-", writing the answers to standard
+     * output as TSV or JSON lines (see BatchQueries).
      *
      * @param args passed in command line
      */
     public static void main(String[] args) {
-        DiGraph<String, String> graph = loadGraph("marvel.tsv");
+        Metrics.start();
+        Path snapshot = Paths.get(System.getProperty(SNAPSHOT_PROPERTY, DEFAULT_SNAPSHOT));
+        CsrGraph graph = loadCompactGraph("marvel.tsv", snapshot,
+                !"false".equals(System.getProperty(VERIFY_PROPERTY)));
+        if (args.length > 0 && args[0].equals("--serve")) {
+            serve(graph, args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--batch")) {
+            batch(graph, Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        NameIndex names = NameIndex.fromGraph(graph);
         Scanner input = new Scanner(System.in);
         String ans = "";
         System.out.println("Welcome to Marvel Character Connector");
@@ -25,13 +69,13 @@ public class MarvelPaths {
             String char1, char2;
             System.out.println("Enter 2 characters to discover the connection between them!");
             System.out.print("Character 1: ");
-            char1 = getInput(input.nextLine(), graph, input);
+            char1 = getInput(input.nextLine(), names, input);
             System.out.print("Character 2: ");
-            char2 = getInput(input.nextLine(), graph, input);
+            char2 = getInput(input.nextLine(), names, input);
 
             // find and display path
             if (!char1.isEmpty() && !char2.isEmpty()) {
-                List<DiGraph.LabeledEdge<String, String>> path = findPath(graph, char1, char2);
+                List<DiGraph.LabeledEdge<String, String>> path = findBidirectionalPath(graph, char1, char2);
                 if (path == null) {
                     System.out.println("Sorry! " + char1 + " and " + char2 + " don't seem to be connected.");
                 } else if (path.size() == 0) {
@@ -53,44 +97,78 @@ public class MarvelPaths {
         input.close();
     }
 
-    private static String getInput(String n, DiGraph<String, String> g, Scanner input) {
-        Set<String> res = new HashSet<>();
+    // starts a PathServer; its dispatcher thread keeps the process running after main returns
+    private static void serve(CsrGraph graph, int port) {
+        // nothing has loaded the server classes yet, so this still takes effect; -D on the command
+        // line wins
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+        try {
+            PathServer server = PathServer.start(graph, port);
+            System.out.println("Answering queries on http://localhost:" + server.port() + "/");
+        } catch (IOException e) {
+            System.err.println("unable to start the server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // answers the pairs in the file named by args, or standard input, on every processor
+    private static void batch(CsrGraph graph, String[] args) {
+        BatchQueries.Format format = BatchQueries.Format.TSV;
+        String file = "-";
+        for (String arg : args) {
+            if (arg.equals("--json")) {
+                format = BatchQueries.Format.JSON;
+            } else if (arg.equals("--tsv")) {
+                format = BatchQueries.Format.TSV;
+            } else {
+                file = arg;
+            }
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = PathQueryService.newBoundedExecutor(threads);
+        try (BufferedReader in = file.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+            BatchQueries.run(graph, in, out, format, executor, BatchQueries.WINDOW_PER_THREAD * threads);
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("unable to answer the queries: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static String getInput(String n, NameIndex names, Scanner input) {
         // General Idea
-        // if the user input is exactly like how the character is written in the graph, add to the set
-        // otherwise, search any matches for the user input using regex. Add any match to the set
-        // when done searching the whole graph,
+        // if the user input is exactly like how the character is written in the graph, that is the only match
+        // otherwise, every character whose name contains the input, ignoring case, is a match, and so is
+        // every character with a "/"-separated alias the input starts with. The index answers both
+        // without going through the whole graph, and the input is never read as a pattern.
+        // matches are listed with the most connected characters first. if nothing matches, the input
+        // may have a typo, so the characters closest to it are offered instead.
         // - display to the user all matches to user input
         // - prompts user to select the character
         // - return the selected character
-        if (g.containsNode(n)) {
-            res.add(n);
-        } else {
-            String regex = "(?i)(.*)" + n + "(.*)";
-            for (String s : g.listNodes()) {
-                if (s.matches("(?i)^" + n + "($)")) res.add(s);
-                if (s.contains("/")) {
-                    String[] split = s.split("/");
-                    for (String ss : split) {
-                        if (ss.length() == 1) continue;
-                        if (n.toLowerCase().startsWith(ss.toLowerCase())) res.add(s);
-                        if (s.matches(regex)) res.add(s);
-                    }
-                }
-                if (s.contains(",")) {
-                    String[] split = s.split(",");
-                    for (String ss : split) {
-                        if (s.matches(regex)) res.add(s);
-                    }
-                }
-                if (s.matches(regex)) res.add(s);
-            }
+        List<String> res = new ArrayList<>(names.lookup(n));
+        res.sort(Comparator.comparingInt(names::degree).reversed());
+        String shown = "all matches";
+        if (res.isEmpty()) {
+            res = names.fuzzyMatches(n, FUZZY_DISTANCE, FUZZY_MATCHES);
+            shown = "closest matches";
+        }
+        if (Metrics.ENABLED) {
+            Metrics.INPUT_MATCHES.record(res.size());
         }
         if (res.isEmpty() || res.size() == 0) {
             System.out.println("Sorry! it seems that " + n + " is not a marvel character.");
             return "";
         }
         int i = 1;
-        System.out.println("Showing all matches for " + n);
+        System.out.println("Showing " + shown + " for " + n);
         for (String s : res) {
             System.out.println(i + " " + s);
             i++;
@@ -114,32 +192,191 @@ public class MarvelPaths {
      */
     public static DiGraph<String, String> loadGraph(String filename) {
         assert (filename != null) && (!filename.isEmpty()) : "unable to load graph from invalid filename";
-        HashMap<String, Set<String>>  characterMap = MarvelParser.parseData(filename);
+        return toDiGraph(loadCompactGraph(filename));
+    }
+
+    /**
+     * Copies a CsrGraph into a DiGraph, such as one loaded with loadCompactGraph(Path).
+     *
+     * @param compact the graph to copy
+     * @spec.requires compact != null
+     * @return a DiGraph with the nodes and edges of compact
+     */
+    public static DiGraph<String, String> toDiGraph(CsrGraph compact) {
+        long began = Metrics.ENABLED ? System.nanoTime() : 0;
         DiGraph<String, String> graph = new DiGraph<>();
-        Set<String> bookSet = characterMap.keySet();
 
         // General idea
-        // for each book int the character map, get the set of heroes that appear in that book
-        // for each hero, add to the graph if graph doesn't already have it
-        // iterate through the same hero set, and add an edge to each other heroes
-        for (String book : bookSet) {
-            Set<String> heroSet = characterMap.get(book);
-            for (String hero: heroSet) {
-                if (!graph.containsNode(hero)) {
-                    graph.addNode(hero);
-                }
-                Iterator<String> it = heroSet.iterator();
-                while (it.hasNext()) {
-                    String heroTo = it.next();
-                    if (!hero.equalsIgnoreCase(heroTo)) {
-                        graph.addEdge(hero, heroTo, book);
-                    }
+        // the compact graph already has every edge, with the children of each node sorted by
+        // (name, book); copy the nodes, then the edges in that order, so the children of every
+        // node are added in the order findPath walks them.
+        // names come from the parser dictionaries, so every node and label is a shared instance
+        for (String hero : compact.listNodes()) {
+            graph.addNode(hero);
+        }
+        for (int n = 0; n < compact.size(); n++) {
+            String hero = compact.name(n);
+            for (int e = compact.firstEdge(n); e < compact.endEdge(n); e++) {
+                String heroTo = compact.name(compact.target(e));
+                if (!hero.equalsIgnoreCase(heroTo)) {
+                    graph.addEdge(hero, heroTo, compact.labelName(compact.label(e)));
                 }
             }
         }
+        if (Metrics.ENABLED) {
+            Metrics.graphBuilt(compact.size(), compact.edgeCount(), Metrics.GRAPH_COPY_TIME, began);
+        }
+        return graph;
+    }
+
+    /**
+     * Loads the data from filename and builds a CsrGraph, using one thread per available processor.
+     * The result has the same nodes and edges as loadGraph(filename), packed into int arrays.
+     *
+     * @param filename to load
+     *
+     * @spec.requires filename is valid and the file exists.
+     * @return a CsrGraph with characters as nodes and books as edges
+     */
+    public static CsrGraph loadCompactGraph(String filename) {
+        return loadCompactGraph(filename, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Loads the data from filename and builds a CsrGraph with the given number of threads.
+     * The graph is the same for every number of threads.
+     *
+     * @param filename to load
+     * @param threads number of threads to build the graph with
+     *
+     * @spec.requires filename is valid and the file exists and threads &gt; 0
+     * @return a CsrGraph with characters as nodes and books as edges
+     */
+    public static CsrGraph loadCompactGraph(String filename, int threads) {
+        assert (filename != null) && (!filename.isEmpty()) : "unable to load graph from invalid filename";
+        return CsrGraph.fromMembership(MarvelParser.parseMembership(filename), threads);
+    }
+
+    /**
+     * Loads the data from a file on disk, such as one written by SyntheticData, and builds a CsrGraph,
+     * using one thread per available processor.
+     *
+     * @param file to load
+     * @throws IOException if the file cannot be read
+     * @spec.requires file != null
+     * @return a CsrGraph with characters as nodes and books as edges
+     */
+    public static CsrGraph loadCompactGraph(Path file) throws IOException {
+        return loadCompactGraph(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Loads the data from a file on disk and builds a CsrGraph with the given number of threads.
+     *
+     * @param file to load
+     * @param threads number of threads to build the graph with
+     * @throws IOException if the file cannot be read
+     * @spec.requires file != null and threads &gt; 0
+     * @return a CsrGraph with characters as nodes and books as edges
+     */
+    public static CsrGraph loadCompactGraph(Path file, int threads) throws IOException {
+        return CsrGraph.fromMembership(MarvelParser.parseMembership(file), threads);
+    }
+
+    /**
+     * Loads the CsrGraph of filename from a snapshot file, falling back to loadCompactGraph(filename)
+     * when the snapshot is missing, was made from a different version of filename, or is corrupt.
+     * After a fallback the snapshot is rewritten so the next load can use it.
+     * filename is not read: it is compared by MarvelParser.stamp. The snapshot is mapped and its CRC
+     * checked before it is used.
+     *
+     * @param filename to load
+     * @param snapshot path of the snapshot file for filename
+     *
+     * @spec.requires filename is valid and the file exists, snapshot != null
+     * @return a CsrGraph with characters as nodes and books as edges
+     */
+    public static CsrGraph loadCompactGraph(String filename, Path snapshot) {
+        return loadCompactGraph(filename, snapshot, true);
+    }
+
+    /**
+     * Loads the CsrGraph of filename from a snapshot file like loadCompactGraph(filename, snapshot),
+     * but only checking the CRC of the snapshot if verify is true. A caller passing false trusts the
+     * snapshot not to have been damaged since it was written.
+     *
+     * @param filename to load
+     * @param snapshot path of the snapshot file for filename
+     * @param verify whether to check the CRC of the snapshot, falling back when it fails
+     *
+     * @spec.requires filename is valid and the file exists, snapshot != null
+     * @return a CsrGraph with characters as nodes and books as edges
+     */
+    public static CsrGraph loadCompactGraph(String filename, Path snapshot, boolean verify) {
+        assert (filename != null) && (!filename.isEmpty()) : "unable to load graph from invalid filename";
+        long stamp = MarvelParser.stamp(filename);
+        try {
+            return GraphSnapshot.read(snapshot, stamp, verify);
+        } catch (IOException e) {
+            // missing, stale or corrupt: rebuild from the TSV file below
+        }
+        CsrGraph graph = loadCompactGraph(filename);
+        try {
+            GraphSnapshot.write(graph, snapshot, stamp);
+        } catch (IOException e) {
+            // the snapshot only speeds up the next start, so a failed write is not an error here
+        }
         return graph;
     }
 
+    /**
+     * Loads the DistanceIndex of graph from an index file, falling back to building it when the file
+     * is missing, was made from a different version of filename, is corrupt, or was built for a graph
+     * other than graph, such as one that has been appended to since.
+     * After a fallback the file is rewritten so the next load can use it.
+     *
+     * @param filename the graph was loaded from
+     * @param graph the graph to index, as loadCompactGraph(filename) returns it
+     * @param indexFile path of the index file for filename
+     *
+     * @spec.requires filename is valid and the file exists, graph != null, indexFile != null
+     * @return the DistanceIndex of graph
+     */
+    public static DistanceIndex loadDistanceIndex(String filename, CsrGraph graph, Path indexFile) {
+        assert (filename != null) && (!filename.isEmpty()) : "unable to load index from invalid filename";
+        long stamp = MarvelParser.stamp(filename);
+        try {
+            DistanceIndex index = DistanceIndex.read(indexFile, stamp);
+            if (index.isFor(graph)) {
+                return index;
+            }
+        } catch (IOException e) {
+            // missing, stale or corrupt: build it again below
+        }
+        DistanceIndex index = DistanceIndex.build(graph);
+        try {
+            index.write(indexFile, stamp);
+        } catch (IOException e) {
+            // the file only speeds up the next start, so a failed write is not an error here
+        }
+        return index;
+    }
+
+    /**
+     * Loads the data from filename and builds a BipartiteGraph.
+     * Characters are only linked to books, so a book with k characters costs k links instead of
+     * the k * (k - 1) edges loadGraph(filename) creates for it.
+     *
+     * @param filename to load
+     *
+     * @spec.requires filename is valid and the file exists.
+     * @return a BipartiteGraph linking characters and the books they appear in
+     */
+    public static BipartiteGraph loadBipartiteGraph(String filename) {
+        assert (filename != null) && (!filename.isEmpty()) : "unable to load graph from invalid filename";
+        return BipartiteGraph.fromMembership(MarvelParser.parseMembership(filename));
+    }
+
     /**
      * Finds the shortest path with Breadth-First-Search in the graph
      * from node u to node v.
@@ -163,42 +400,720 @@ public class MarvelPaths {
         // followed the given pseudo code for BFS
         String start = u;
         String dest = v;
-        Queue<String> queue = new LinkedList<>();
-        // key : visited node, value = path from start to that node
-        HashMap<String, LinkedList<DiGraph.LabeledEdge<String, String>>> map = new HashMap<>();
+        Queue<String> queue = new ArrayDeque<>();
+        // key : visited node, value = edge the node was reached by (null for start)
+        HashMap<String, DiGraph.LabeledEdge<String, String>> parentEdge = new HashMap<>();
 
         queue.add(start);
-        map.put(start, new LinkedList<>());
+        parentEdge.put(start, null);
+        // for the metrics: when levelLeft runs out, the queue holds exactly the next level
+        long began = Metrics.ENABLED ? System.nanoTime() : 0;
+        long dequeued = 0;
+        long scanned = 0;
+        int levelLeft = 0;
 
         while(!queue.isEmpty()) {
+            if (Metrics.ENABLED) {
+                if (levelLeft-- == 0) {
+                    Metrics.SEARCH_FRONTIER.record(queue.size());
+                    levelLeft = queue.size() - 1;
+                }
+                dequeued++;
+            }
             String n = queue.remove();
             if (n.equalsIgnoreCase(dest)) {
-                LinkedList<DiGraph.LabeledEdge<String, String>> p = map.get(n);
-                for (DiGraph.LabeledEdge pEdge : p) {
+                // walk the parent edges back to start once, at the end
+                LinkedList<DiGraph.LabeledEdge<String, String>> p = new LinkedList<>();
+                for (DiGraph.LabeledEdge<String, String> e = parentEdge.get(n); e != null;
+                     e = parentEdge.get(e.getFrom())) {
+                    p.addFirst(e);
+                }
+                if (Metrics.ENABLED) {
+                    Metrics.searched(began, dequeued, scanned);
                 }
                 return p;
             }
-            List<DiGraph.LabeledEdge<String, String>> edgeList = graph.listChildren(n);
+            // sort a copy, so the search never writes to anything the graph handed out
+            List<DiGraph.LabeledEdge<String, String>> edgeList = new ArrayList<>(graph.listChildren(n));
 
-            edgeList.sort(Comparator.comparing(DiGraph.LabeledEdge::getFrom));
+            // every edge in the list has the same source, so order by destination, then label.
+            // on a graph from loadGraph the list is already in this order and the sort is one pass
+            edgeList.sort(Comparator.comparing((DiGraph.LabeledEdge<String, String> e) -> e.getTo())
+                    .thenComparing(DiGraph.LabeledEdge::getLabel));
 
+            if (Metrics.ENABLED) {
+                scanned += edgeList.size();
+            }
             for (DiGraph.LabeledEdge<String, String> edge : edgeList) {
                 String m = edge.getTo();
-                if (!map.containsKey(m)) {
-                    LinkedList<DiGraph.LabeledEdge<String, String>> p = new LinkedList<>();
-                    LinkedList<DiGraph.LabeledEdge<String, String>> pTest = map.get(n);
-                    for (int i = 0; i < pTest.size(); i++) {
-                        p.add(pTest.get(i));
-                    }
-                    p.add(edge);
-                    map.put(m, p);
+                if (!parentEdge.containsKey(m)) {
+                    parentEdge.put(m, edge);
                     queue.add(m);
                 }
             }
         }
+        if (Metrics.ENABLED) {
+            Metrics.searched(began, dequeued, scanned);
+        }
         return null;
     }
 
+    /**
+     * Finds the shortest path with Breadth-First-Search in the compact graph
+     * from node u to node v.
+     * null is returned if no path is found.
+     *
+     * @param graph on which a path from u to v is searched
+     * @param u starting node
+     * @param v destination node
+     * @throws IllegalArgumentException when u or v are not in graph
+     *
+     * @spec.requires graph != null and u != null and v != null and graph is not empty
+     * @return a LinkedList of Labeled Edges representing a path from u to v of least lexicographical order
+     */
+    public static LinkedList<DiGraph.LabeledEdge<String, String>> findCompactPath(CsrGraph graph, String u, String v) {
+        return findCompactPath(graph, u, v, null);
+    }
+
+    /**
+     * Same as findCompactPath(graph, u, v), also recording the work done in stats.
+     *
+     * @param graph on which a path from u to v is searched
+     * @param u starting node
+     * @param v destination node
+     * @param stats where the search is recorded, or null
+     * @throws IllegalArgumentException when u or v are not in graph
+     *
+     * @spec.requires graph != null and u != null and v != null and graph is not empty
+     * @spec.modifies stats
+     * @spec.effects records the nodes visited and edges scanned by this search in stats
+     * @return a LinkedList of Labeled Edges representing a path from u to v of least lexicographical order
+     */
+    public static LinkedList<DiGraph.LabeledEdge<String, String>> findCompactPath(CsrGraph graph, String u, String v,
+                                                                                SearchStats stats) {
+        assert (graph != null) : "unable to find path between " + u + " and " + v + " in an empty graph.";
+        assert (!graph.isEmpty()) : "unable to find path between " + u + " and " + v + " in an empty graph.";
+        assert (u != null) && (v != null) : "unable to find path between empty nodes";
+        int start = graph.id(u);
+        int dest = graph.id(v);
+        if (start < 0) throw new IllegalArgumentException(u + " is not in the graph.");
+        if (dest < 0) throw new IllegalArgumentException(v + " is not in the graph.");
+        long began = Metrics.ENABLED ? System.nanoTime() : 0;
+        if (!graph.connected(start, dest)) {
+            // searching would only go through the whole component of u to find nothing
+            if (stats != null) {
+                stats.record(0, 0);
+            }
+            if (Metrics.ENABLED) {
+                Metrics.searched(began, 0, 0);
+            }
+            return null;
+        }
+
+        // same BFS as above, but a node only remembers the node and book it was reached from,
+        // all in the arrays of this thread's workspace.
+        // the edges of a node are stored sorted by (target, label), so they are walked in place
+        BfsWorkspace ws = BfsWorkspace.get(graph.size());
+        int[] seen = ws.seen;
+        int[] parent = ws.parent;
+        int[] parentLabel = ws.parentLabel;
+        int[] queue = ws.queue;
+        int epoch = ws.epoch;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        seen[start] = epoch;
+        long scanned = 0;
+        int levelEnd = 0;
+
+        while (head < tail) {
+            if (Metrics.ENABLED && head == levelEnd) {
+                // every node of the level above is dequeued, so the rest of the queue is the next level
+                Metrics.SEARCH_FRONTIER.record(tail - head);
+                levelEnd = tail;
+            }
+            int n = queue[head++];
+            if (n == dest) {
+                break;
+            }
+            scanned += graph.endLink(n) - graph.firstLink(n);
+            for (int k = graph.firstLink(n); k < graph.endLink(n); k++) {
+                int m = graph.linkTarget(k);
+                if (seen[m] != epoch) {
+                    seen[m] = epoch;
+                    parent[m] = n;
+                    parentLabel[m] = graph.linkLabel(k);
+                    queue[tail++] = m;
+                }
+            }
+        }
+        if (stats != null) {
+            stats.record(tail, scanned);
+        }
+        LinkedList<DiGraph.LabeledEdge<String, String>> path =
+                seen[dest] != epoch ? null : buildPath(graph, parent, parentLabel, start, dest);
+        if (Metrics.ENABLED) {
+            Metrics.searched(began, head, scanned);
+        }
+        return path;
+    }
+
+    /**
+     * Finds the same path as findCompactPath(graph, u, v) with a level-synchronous Breadth-First-Search
+     * that expands each level on pool, switching between expanding the frontier top-down and looking
+     * for the frontier bottom-up from the unvisited nodes as the levels grow and shrink.
+     * Meant for long-range queries on large graphs, where most of the graph is visited; on near pairs
+     * the sequential searches are faster. On a small graph, or a pool of one thread, this runs
+     * findCompactPath instead.
+     *
+     * @param graph on which a path from u to v is searched
+     * @param u starting node
+     * @param v destination node
+     * @param pool to run the search on
+     * @throws IllegalArgumentException when u or v are not in graph
+     *
+     * @spec.requires graph != null and u != null and v != null and graph is not empty and pool != null
+     *                and every edge of graph has a reverse edge, as in every graph loadCompactGraph builds
+     * @return a LinkedList of Labeled Edges representing a path from u to v of least lexicographical order
+     */
+    public static LinkedList<DiGraph.LabeledEdge<String, String>> findParallelPath(CsrGraph graph, String u,
+                                                                                 String v, ForkJoinPool pool) {
+        return findParallelPath(graph, u, v, pool, null);
+    }
+
+    /**
+     * Same as findParallelPath(graph, u, v, pool), also recording the work done in stats.
+     *
+     * @param graph on which a path from u to v is searched
+     * @param u starting node
+     * @param v destination node
+     * @param pool to run the search on
+     * @param stats where the search is recorded, or null
+     * @throws IllegalArgumentException when u or v are not in graph
+     *
+     * @spec.requires graph != null and u != null and v != null and graph is not empty and pool != null
+     *                and every edge of graph has a reverse edge, as in every graph loadCompactGraph builds
+     * @spec.modifies stats
+     * @spec.effects records the nodes visited and edges scanned by this search in stats
+     * @return a LinkedList of Labeled Edges representing a path from u to v of least lexicographical order
+     */
+    public static LinkedList<DiGraph.LabeledEdge<String, String>> findParallelPath(CsrGraph graph, String u,
+                                                                                 String v, ForkJoinPool pool,
+                                                                                 SearchStats stats) {
+        assert (graph != null) : "unable to find path between " + u + " and " + v + " in an empty graph.";
+        assert (!graph.isEmpty()) : "unable to find path between " + u + " and " + v + " in an empty graph.";
+        assert (u != null) && (v != null) : "unable to find path between empty nodes";
+        assert (pool != null) : "unable to search without a pool";
+        if (!ParallelBfs.worthwhile(graph, pool)) {
+            return findCompactPath(graph, u, v, stats);
+        }
+        int start = graph.id(u);
+        int dest = graph.id(v);
+        if (start < 0) throw new IllegalArgumentException(u + " is not in the graph.");
+        if (dest < 0) throw new IllegalArgumentException(v + " is not in the graph.");
+        if (!graph.connected(start, dest)) {
+            if (stats != null) {
+                stats.record(0, 0);
+            }
+            return null;
+        }
+        BfsWorkspace ws = BfsWorkspace.get(graph.size());
+        if (!ParallelBfs.search(graph, start, dest, pool, ws, stats)) {
+            return null;
+        }
+        return buildPath(graph, ws.parent, ws.parentLabel, start, dest);
+    }
+
+    /**
+     * Finds the shortest path from node u to node v in the compact graph with a bidirectional
+     * Breadth-First-Search: one search grows from u and one from v, a level at a time, always
+     * growing the side with the smaller frontier, until they meet.
+     * The result is the same path findCompactPath returns.
+     * null is returned if no path is found.
+     *
+     * @param graph on which a path from u to v is searched
+     * @param u starting node
+     * @param v destination node
+     * @throws IllegalArgumentException when u or v are not in graph
+     *
+     * @spec.requires graph != null and u != null and v != null and graph is not empty and
+     *                every edge of graph has a reverse edge, as in every graph loadCompactGraph builds
+     * @return a LinkedList of Labeled Edges representing a path from u to v of least lexicographical order
+     */
+    public static LinkedList<DiGraph.LabeledEdge<String, String>> findBidirectionalPath(CsrGraph graph,
+                                                                                      String u, String v) {
+        return findBidirectionalPath(graph, u, v, null);
+    }
+
+    /**
+     * Same as findBidirectionalPath(graph, u, v), also recording the work done in stats.
+     *
+     * @param graph on which a path from u to v is searched
+     * @param u starting node
+     * @param v destination node
+     * @param stats where the search is recorded, or null
+     * @throws IllegalArgumentException when u or v are not in graph
+     *
+     * @spec.requires graph != null and u != null and v != null and graph is not empty and
+     *                every edge of graph has a reverse edge, as in every graph loadCompactGraph builds
+     * @spec.modifies stats
+     * @spec.effects records the nodes visited and edges scanned by this search in stats
+     * @return a LinkedList of Labeled Edges representing a path from u to v of least lexicographical order
+     */
+    public static LinkedList<DiGraph.LabeledEdge<String, String>> findBidirectionalPath(CsrGraph graph,
+                                                                                      String u, String v,
+                                                                                      SearchStats stats) {
+        assert (graph != null) : "unable to find path between " + u + " and " + v + " in an empty graph.";
+        assert (!graph.isEmpty()) : "unable to find path between " + u + " and " + v + " in an empty graph.";
+        assert (u != null) && (v != null) : "unable to find path between empty nodes";
+        int start = graph.id(u);
+        int dest = graph.id(v);
+        if (start < 0) throw new IllegalArgumentException(u + " is not in the graph.");
+        if (dest < 0) throw new IllegalArgumentException(v + " is not in the graph.");
+        long began = Metrics.ENABLED ? System.nanoTime() : 0;
+        if (!graph.connected(start, dest)) {
+            if (stats != null) {
+                stats.record(0, 0);
+            }
+            if (Metrics.ENABLED) {
+                Metrics.searched(began, 0, 0);
+            }
+            return null;
+        }
+
+        // General idea
+        // fromStart[n] / toDest[n] are the distances from u / to v of the nodes each side has seen.
+        // each side keeps its nodes in discovery order, so its current frontier is the tail of that list.
+        // once a whole level is grown and some node has both distances, the distance d from u to v
+        // is known. the search only tells us the distance, so the path is picked afterwards:
+        // walking from u, take the least (node, book) edge that stays on some shortest path,
+        // which is the same choice the one-sided BFS makes.
+        BfsWorkspace ws = BfsWorkspace.get(graph.size());
+        int epoch = ws.epoch;
+        int[] seen = ws.seen;
+        int[] seenBack = ws.seenBack;
+        int[] fromStart = ws.distance;
+        int[] toDest = ws.distanceBack;
+        int[] forward = ws.queue;
+        int[] backward = ws.queueBack;
+        int[] forwardLevels = ws.levels;
+        int forwardTail = 0;
+        int backwardTail = 0;
+        int forwardLevel = 0;
+        int backwardLevel = 0;
+        int backwardStart = 0;
+        seen[start] = epoch;
+        fromStart[start] = 0;
+        forward[forwardTail++] = start;
+        forwardLevels[0] = 0;
+        forwardLevels[1] = forwardTail;
+        seenBack[dest] = epoch;
+        toDest[dest] = 0;
+        backward[backwardTail++] = dest;
+        boolean met = start == dest;
+        long scanned = 0;
+        long expanded = 0;
+
+        while (!met && forwardLevels[forwardLevel] < forwardTail && backwardStart < backwardTail) {
+            if (Metrics.ENABLED) {
+                int frontier = Math.min(forwardTail - forwardLevels[forwardLevel], backwardTail - backwardStart);
+                Metrics.SEARCH_FRONTIER.record(frontier);
+                expanded += frontier;
+            }
+            if (forwardTail - forwardLevels[forwardLevel] <= backwardTail - backwardStart) {
+                for (int i = forwardLevels[forwardLevel]; i < forwardLevels[forwardLevel + 1]; i++) {
+                    int n = forward[i];
+                    scanned += graph.endLink(n) - graph.firstLink(n);
+                    for (int k = graph.firstLink(n); k < graph.endLink(n); k++) {
+                        int m = graph.linkTarget(k);
+                        if (seen[m] != epoch) {
+                            seen[m] = epoch;
+                            fromStart[m] = forwardLevel + 1;
+                            forward[forwardTail++] = m;
+                            met |= seenBack[m] == epoch;
+                        }
+                    }
+                }
+                forwardLevel++;
+                forwardLevels[forwardLevel + 1] = forwardTail;
+            } else {
+                int end = backwardTail;
+                for (int i = backwardStart; i < end; i++) {
+                    int n = backward[i];
+                    scanned += graph.endLink(n) - graph.firstLink(n);
+                    for (int k = graph.firstLink(n); k < graph.endLink(n); k++) {
+                        int m = graph.linkTarget(k);
+                        if (seenBack[m] != epoch) {
+                            seenBack[m] = epoch;
+                            toDest[m] = backwardLevel + 1;
+                            backward[backwardTail++] = m;
+                            met |= seen[m] == epoch;
+                        }
+                    }
+                }
+                backwardStart = end;
+                backwardLevel++;
+            }
+        }
+        if (stats != null) {
+            stats.record(forwardTail + backwardTail, scanned);
+        }
+        if (!met) {
+            if (Metrics.ENABLED) {
+                Metrics.searched(began, expanded, scanned);
+            }
+            return null;
+        }
+
+        // a node reached from u is marked if it starts a shortest path to v.
+        // on the last forward level that means the backward search reached it; below that,
+        // it means some edge leads to a marked node one level up
+        int distance = forwardLevel + backwardLevel;
+        int[] marked = ws.marked;
+        for (int i = forwardLevels[forwardLevel]; i < forwardTail; i++) {
+            if (seenBack[forward[i]] == epoch) {
+                marked[forward[i]] = epoch;
+            }
+        }
+        for (int level = forwardLevel - 1; level >= 0; level--) {
+            for (int i = forwardLevels[level]; i < forwardLevels[level + 1]; i++) {
+                int n = forward[i];
+                for (int k = graph.firstLink(n); k < graph.endLink(n); k++) {
+                    int m = graph.linkTarget(k);
+                    if (marked[m] == epoch && fromStart[m] == level + 1) {
+                        marked[n] = epoch;
+                        break;
+                    }
+                }
+            }
+        }
+
+        LinkedList<DiGraph.LabeledEdge<String, String>> path = new LinkedList<>();
+        int n = start;
+        for (int step = 1; step <= distance; step++) {
+            // links are sorted by target and start with their least label, so the first one that
+            // qualifies is the least edge
+            int k = graph.firstLink(n);
+            for (; k < graph.endLink(n); k++) {
+                int m = graph.linkTarget(k);
+                if (step <= forwardLevel ? marked[m] == epoch && fromStart[m] == step
+                                         : seenBack[m] == epoch && toDest[m] == distance - step) {
+                    break;
+                }
+            }
+            int next = graph.linkTarget(k);
+            path.add(new DiGraph.LabeledEdge<>(graph.name(n), graph.name(next), graph.labelName(graph.linkLabel(k))));
+            n = next;
+        }
+        if (Metrics.ENABLED) {
+            Metrics.searched(began, expanded, scanned);
+        }
+        return path;
+    }
+
+    /**
+     * Finds the strongest connection from u to v: the path whose edges are between characters sharing
+     * the most books, found with Dijkstra's algorithm over the links of graph, where a link between two
+     * characters sharing c books costs 1 / c and a path costs the sum of its links.
+     * Among paths of equal cost the one found first is returned, nodes with equal cost being settled in
+     * order of name.
+     * null is returned if no path is found.
+     *
+     * @param graph on which a path from u to v is searched
+     * @param u starting node
+     * @param v destination node
+     * @throws IllegalArgumentException when u or v are not in graph
+     *
+     * @spec.requires graph != null and u != null and v != null and graph is not empty
+     * @return a LinkedList of Labeled Edges representing a path from u to v of least cost, each labeled with
+     *         the number of books its two characters share
+     */
+    public static LinkedList<DiGraph.LabeledEdge<String, Integer>> findStrongestPath(CsrGraph graph, String u,
+                                                                                   String v) {
+        assert (graph != null) : "unable to find path between " + u + " and " + v + " in an empty graph.";
+        assert (!graph.isEmpty()) : "unable to find path between " + u + " and " + v + " in an empty graph.";
+        assert (u != null) && (v != null) : "unable to find path between empty nodes";
+        int start = graph.id(u);
+        int dest = graph.id(v);
+        if (start < 0) throw new IllegalArgumentException(u + " is not in the graph.");
+        if (dest < 0) throw new IllegalArgumentException(v + " is not in the graph.");
+        if (!graph.connected(start, dest)) {
+            return null;
+        }
+
+        // General idea
+        // the heap holds the nodes reached but not finished, keyed by the least cost found to them so far.
+        // the node of least cost is finished next: no path through the others can get to it for less.
+        // a node keeps the link it was last lowered by, so the path is walked back from v when it is finished.
+        // a node is in the heap iff it is seen but not finished, so the heap of the workspace, and the
+        // costs it keeps, need no clearing between searches. the heap holds the rank of each node rather
+        // than its id, so nodes of equal cost come out in name order
+        BfsWorkspace ws = BfsWorkspace.get(graph.size());
+        int epoch = ws.epoch;
+        int[] seen = ws.seen;
+        int[] finished = ws.marked;
+        int[] parent = ws.parent;
+        int[] parentLink = ws.parentLabel;
+        IndexedMinHeap heap = ws.heap(graph.size());
+        seen[start] = epoch;
+        heap.add(graph.rank(start), 0);
+        while (!heap.isEmpty()) {
+            int r = heap.poll();
+            int n = graph.nodeAt(r);
+            finished[n] = epoch;
+            if (n == dest) {
+                break;
+            }
+            double cost = heap.key(r);
+            for (int k = graph.firstLink(n); k < graph.endLink(n); k++) {
+                int m = graph.linkTarget(k);
+                if (finished[m] == epoch) {
+                    continue;
+                }
+                double through = cost + 1.0 / graph.linkWeight(k);
+                if (seen[m] != epoch) {
+                    seen[m] = epoch;
+                    parent[m] = n;
+                    parentLink[m] = k;
+                    heap.add(graph.rank(m), through);
+                } else if (through < heap.key(graph.rank(m))) {
+                    parent[m] = n;
+                    parentLink[m] = k;
+                    heap.decrease(graph.rank(m), through);
+                }
+            }
+        }
+
+        LinkedList<DiGraph.LabeledEdge<String, Integer>> path = new LinkedList<>();
+        for (int m = dest; m != start; m = parent[m]) {
+            path.addFirst(new DiGraph.LabeledEdge<>(graph.name(parent[m]), graph.name(m),
+                    graph.linkWeight(parentLink[m])));
+        }
+        return path;
+    }
+
+    /**
+     * Finds the shortest path with Breadth-First-Search in the bipartite graph
+     * from character u to character v.
+     * The path goes character to character, labeled with the book they share,
+     * and is the same path findPath returns on the graph built by loadGraph.
+     * null is returned if no path is found.
+     *
+     * @param graph on which a path from u to v is searched
+     * @param u starting character
+     * @param v destination character
+     * @throws IllegalArgumentException when u or v are not in graph
+     *
+     * @spec.requires graph != null and u != null and v != null and graph is not empty
+     * @return a LinkedList of Labeled Edges representing a path from u to v of least lexicographical order
+     */
+    public static LinkedList<DiGraph.LabeledEdge<String, String>> findBipartitePath(BipartiteGraph graph,
+                                                                                  String u, String v) {
+        assert (graph != null) : "unable to find path between " + u + " and " + v + " in an empty graph.";
+        assert (!graph.isEmpty()) : "unable to find path between " + u + " and " + v + " in an empty graph.";
+        assert (u != null) && (v != null) : "unable to find path between empty nodes";
+        int start = graph.heroId(u);
+        int dest = graph.heroId(v);
+        if (start < 0) throw new IllegalArgumentException(u + " is not in the graph.");
+        if (dest < 0) throw new IllegalArgumentException(v + " is not in the graph.");
+
+        // General idea
+        // a book is expanded only the first time one of its characters is dequeued; every character
+        // in it is discovered right then, so a later character can never reach anyone new through it.
+        // books are walked in ascending order, so a character is labeled with the least book it shares
+        // with its parent, and the newly discovered characters are sorted before they are queued,
+        // which is the order the hero to hero BFS would have queued them in.
+        BfsWorkspace ws = BfsWorkspace.get(graph.heroCount());
+        ws.ensureBooks(graph.bookCount());
+        int epoch = ws.epoch;
+        int[] seen = ws.seen;
+        int[] expanded = ws.bookSeen;
+        int[] parent = ws.parent;
+        int[] parentLabel = ws.parentLabel;
+        int[] queue = ws.queue;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        seen[start] = epoch;
+
+        while (head < tail && seen[dest] != epoch) {
+            int n = queue[head++];
+            int discovered = tail;
+            for (int i = graph.heroFirst(n); i < graph.heroEnd(n); i++) {
+                int book = graph.bookOf(i);
+                if (expanded[book] == epoch) {
+                    continue;
+                }
+                expanded[book] = epoch;
+                for (int j = graph.bookFirst(book); j < graph.bookEnd(book); j++) {
+                    int m = graph.heroOf(j);
+                    if (seen[m] != epoch) {
+                        seen[m] = epoch;
+                        parent[m] = n;
+                        parentLabel[m] = book;
+                        queue[tail++] = m;
+                    }
+                }
+            }
+            Arrays.sort(queue, discovered, tail);
+        }
+        if (seen[dest] != epoch) {
+            return null;
+        }
+        LinkedList<DiGraph.LabeledEdge<String, String>> path = new LinkedList<>();
+        for (int m = dest; m != start; m = parent[m]) {
+            path.addFirst(new DiGraph.LabeledEdge<>(graph.heroName(parent[m]), graph.heroName(m),
+                    graph.bookName(parentLabel[m])));
+        }
+        return path;
+    }
+
+    /**
+     * Finds the shortest path from node u to every node in targets with a single Breadth-First-Search
+     * in the compact graph, which stops once every target has been reached.
+     * The i-th path returned is the one findCompactPath(graph, u, t) returns for the i-th target t,
+     * null if there is none.
+     *
+     * @param graph on which the paths are searched
+     * @param u starting node
+     * @param targets destination nodes, in the order their paths are wanted; may repeat
+     * @throws IllegalArgumentException when u or any target is not in graph
+     *
+     * @spec.requires graph != null and u != null and targets != null and graph is not empty
+     *                and targets contains no null
+     * @return a list holding, for each target in order, its path from u or null
+     */
+    public static List<LinkedList<DiGraph.LabeledEdge<String, String>>> findPaths(CsrGraph graph, String u,
+                                                                                 Collection<String> targets) {
+        assert (graph != null) : "unable to find paths from " + u + " in an empty graph.";
+        assert (!graph.isEmpty()) : "unable to find paths from " + u + " in an empty graph.";
+        assert (u != null) && (targets != null) : "unable to find path between empty nodes";
+        int start = graph.id(u);
+        if (start < 0) throw new IllegalArgumentException(u + " is not in the graph.");
+        int[] dests = new int[targets.size()];
+        int i = 0;
+        for (String v : targets) {
+            dests[i] = graph.id(v);
+            if (dests[i] < 0) throw new IllegalArgumentException(v + " is not in the graph.");
+            i++;
+        }
+        return findPathsFrom(graph, start, dests);
+    }
+
+    /**
+     * Finds the shortest path of every (u, v) pair in the compact graph.
+     * Pairs are grouped by u and every distinct u costs one Breadth-First-Search, which stops once
+     * the v of every pair in its group has been reached.
+     * The i-th path returned is the one findCompactPath(graph, u, v) returns for the i-th pair,
+     * null if there is none.
+     *
+     * @param graph on which the paths are searched
+     * @param pairs (starting node, destination node) of each path, in the order the paths are wanted
+     * @throws IllegalArgumentException when a node of some pair is not in graph
+     *
+     * @spec.requires graph != null and pairs != null and graph is not empty
+     *                and no pair, key or value of pairs is null
+     * @return a list holding, for each pair in order, its path or null
+     */
+    public static List<LinkedList<DiGraph.LabeledEdge<String, String>>> findPaths(
+            CsrGraph graph, List<? extends Map.Entry<String, String>> pairs) {
+        assert (graph != null) : "unable to find paths in an empty graph.";
+        assert (!graph.isEmpty()) : "unable to find paths in an empty graph.";
+        assert (pairs != null) : "unable to find paths between empty nodes";
+
+        // General idea
+        // turn every pair into ids first, so a bad name fails before any search is run,
+        // and collect the pair indices of each source in the order the sources first show up.
+        // then one search per source fills in the results of all of its pairs
+        int[] starts = new int[pairs.size()];
+        int[] dests = new int[pairs.size()];
+        Map<Integer, List<Integer>> bySource = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.size(); i++) {
+            Map.Entry<String, String> pair = pairs.get(i);
+            starts[i] = graph.id(pair.getKey());
+            dests[i] = graph.id(pair.getValue());
+            if (starts[i] < 0) throw new IllegalArgumentException(pair.getKey() + " is not in the graph.");
+            if (dests[i] < 0) throw new IllegalArgumentException(pair.getValue() + " is not in the graph.");
+            bySource.computeIfAbsent(starts[i], k -> new ArrayList<>()).add(i);
+        }
+
+        List<LinkedList<DiGraph.LabeledEdge<String, String>>> result = new ArrayList<>(pairs.size());
+        for (int i = 0; i < pairs.size(); i++) {
+            result.add(null);
+        }
+        for (Map.Entry<Integer, List<Integer>> group : bySource.entrySet()) {
+            List<Integer> indices = group.getValue();
+            int[] groupDests = new int[indices.size()];
+            for (int i = 0; i < groupDests.length; i++) {
+                groupDests[i] = dests[indices.get(i)];
+            }
+            List<LinkedList<DiGraph.LabeledEdge<String, String>>> paths = findPathsFrom(graph, group.getKey(), groupDests);
+            for (int i = 0; i < groupDests.length; i++) {
+                result.set(indices.get(i), paths.get(i));
+            }
+        }
+        return result;
+    }
+
+    // one BFS from start, the same one findCompactPath runs, stopped once every node in dests is seen.
+    // a node's parent is fixed when it is seen, so a path is final as soon as its end is seen
+    private static List<LinkedList<DiGraph.LabeledEdge<String, String>>> findPathsFrom(CsrGraph graph, int start,
+                                                                                     int[] dests) {
+        BfsWorkspace ws = BfsWorkspace.get(graph.size());
+        int[] seen = ws.seen;
+        int[] wanted = ws.marked;
+        int[] parent = ws.parent;
+        int[] parentLabel = ws.parentLabel;
+        int[] queue = ws.queue;
+        int epoch = ws.epoch;
+
+        // remaining counts the distinct targets not seen yet; those in another component never will be
+        int remaining = 0;
+        for (int dest : dests) {
+            if (wanted[dest] != epoch && dest != start && graph.connected(start, dest)) {
+                wanted[dest] = epoch;
+                remaining++;
+            }
+        }
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        seen[start] = epoch;
+
+        while (head < tail && remaining > 0) {
+            int n = queue[head++];
+            for (int k = graph.firstLink(n); k < graph.endLink(n); k++) {
+                int m = graph.linkTarget(k);
+                if (seen[m] != epoch) {
+                    seen[m] = epoch;
+                    parent[m] = n;
+                    parentLabel[m] = graph.linkLabel(k);
+                    queue[tail++] = m;
+                    if (wanted[m] == epoch) {
+                        remaining--;
+                    }
+                }
+            }
+        }
+
+        List<LinkedList<DiGraph.LabeledEdge<String, String>>> paths = new ArrayList<>(dests.length);
+        for (int dest : dests) {
+            paths.add(seen[dest] == epoch ? buildPath(graph, parent, parentLabel, start, dest) : null);
+        }
+        return paths;
+    }
+
+    // walks the parent pointers back from dest and returns the edges in order from start
+    private static LinkedList<DiGraph.LabeledEdge<String, String>> buildPath(CsrGraph graph, int[] parent,
+                                                                           int[] parentLabel, int start, int dest) {
+        LinkedList<DiGraph.LabeledEdge<String, String>> path = new LinkedList<>();
+        for (int m = dest; m != start; m = parent[m]) {
+            path.addFirst(new DiGraph.LabeledEdge<>(graph.name(parent[m]), graph.name(m),
+                    graph.labelName(parentLabel[m])));
+        }
+        return path;
+    }
+
     class comparatorName implements Comparator {
 
         @Override
@@ -0,0 +1,376 @@
+package marvel;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics holds the counters and histograms recorded while loading data, building graphs, searching
+ * and matching names, so a slow answer can be traced to the phase it came from.
+ *
+ * Recording is off unless the JVM is started with -Dmarvel.metrics=true. Every place that records
+ * checks ENABLED first; since it is a static final field, the JIT drops those checks and everything
+ * behind them when metrics are off. When they are on, counters and histograms add to LongAdders,
+ * which spread concurrent updates over cells instead of contending on one value.
+ *
+ * The metrics can be read with snapshot() or report(), over JMX as the MetricsMXBean named
+ * OBJECT_NAME, and printed every few seconds (see start()). Times are in nanoseconds.
+ */
+public final class Metrics {
+
+    /**
+     * Set to "true" to record metrics.
+     */
+    public static final String PROPERTY = "marvel.metrics";
+
+    /**
+     * Set to a number of seconds to have start() print a report that often.
+     */
+    public static final String DUMP_PROPERTY = "marvel.metrics.dump";
+
+    /**
+     * Name the MXBean is registered under.
+     */
+    public static final String OBJECT_NAME = "marvel:type=Metrics";
+
+    /**
+     * Whether metrics are recorded, fixed when the class is loaded.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+
+    // every built-in metric by name, added to by the field initializers below
+    private static final Map<String, Object> REGISTRY = new TreeMap<>();
+
+    // MarvelParser.parseRows: rows and bytes read, and the time each parse took
+    static final Counter PARSE_ROWS = register("parse.rows", new Counter());
+    static final Counter PARSE_BYTES = register("parse.bytes", new Counter());
+    static final Histogram PARSE_TIME = register("parse.time", new Histogram());
+
+    // CsrGraph.fromMembership and MarvelPaths.toDiGraph: size of the last graph built and build times
+    static final Gauge GRAPH_NODES = register("graph.nodes", new Gauge());
+    static final Gauge GRAPH_EDGES = register("graph.edges", new Gauge());
+    static final Histogram GRAPH_BUILD_TIME = register("graph.buildTime", new Histogram());
+    static final Histogram GRAPH_COPY_TIME = register("graph.copyTime", new Histogram());
+
+    // path searches: per search the time, nodes dequeued and edges (links) scanned, per level its size
+    static final Histogram SEARCH_TIME = register("search.time", new Histogram());
+    static final Histogram SEARCH_DEQUEUED = register("search.dequeued", new Histogram());
+    static final Histogram SEARCH_SCANNED = register("search.scanned", new Histogram());
+    static final Histogram SEARCH_FRONTIER = register("search.frontier", new Histogram());
+
+    // NameIndex: per lookup the names checked, and the matches offered at the prompt
+    static final Histogram LOOKUP_CANDIDATES = register("lookup.candidates", new Histogram());
+    static final Histogram FUZZY_CANDIDATES = register("fuzzy.candidates", new Histogram());
+    static final Histogram INPUT_MATCHES = register("input.matches", new Histogram());
+
+    private static ScheduledExecutorService dumper;
+
+    private Metrics() {
+    }
+
+    private static <T> T register(String name, T metric) {
+        REGISTRY.put(name, metric);
+        return metric;
+    }
+
+    // records a graph of the given size, built in the time since began
+    static void graphBuilt(int nodes, long edges, Histogram time, long began) {
+        time.record(System.nanoTime() - began);
+        GRAPH_NODES.set(nodes);
+        GRAPH_EDGES.set(edges);
+    }
+
+    // records a search started at began that dequeued (or expanded) and scanned the given counts
+    static void searched(long began, long dequeued, long scanned) {
+        SEARCH_TIME.record(System.nanoTime() - began);
+        SEARCH_DEQUEUED.record(dequeued);
+        SEARCH_SCANNED.record(scanned);
+    }
+
+    /**
+     * Reads every metric. A counter or gauge gives one value under its name; a histogram gives its
+     * count, sum, max, p50 and p99 under its name followed by ".count", ".sum" and so on.
+     * Values recorded while the snapshot is taken may or may not be in it.
+     *
+     * @return the values by name, in name order
+     */
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, Object> entry : REGISTRY.entrySet()) {
+            String name = entry.getKey();
+            Object metric = entry.getValue();
+            if (metric instanceof Counter) {
+                values.put(name, ((Counter) metric).sum());
+            } else if (metric instanceof Gauge) {
+                values.put(name, ((Gauge) metric).get());
+            } else {
+                Histogram histogram = (Histogram) metric;
+                values.put(name + ".count", histogram.count());
+                values.put(name + ".sum", histogram.sum());
+                values.put(name + ".max", histogram.max());
+                values.put(name + ".p50", histogram.percentile(0.5));
+                values.put(name + ".p99", histogram.percentile(0.99));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return the snapshot as one "name value" line per value, followed by the rate rows were parsed at
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Long> entry : snapshot().entrySet()) {
+            report.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        long time = PARSE_TIME.sum();
+        long rate = time == 0 ? 0 : (long) (PARSE_ROWS.sum() * 1e9 / time);
+        report.append("parse.rowsPerSecond ").append(rate).append('\n');
+        return report.toString();
+    }
+
+    /**
+     * Sets every metric back to zero.
+     */
+    public static void reset() {
+        for (Object metric : REGISTRY.values()) {
+            if (metric instanceof Counter) {
+                ((Counter) metric).reset();
+            } else if (metric instanceof Gauge) {
+                ((Gauge) metric).set(0);
+            } else {
+                ((Histogram) metric).reset();
+            }
+        }
+    }
+
+    /**
+     * Registers the MetricsMXBean with the platform MBean server, unless it already is.
+     *
+     * @throws IllegalStateException if the MBean server refuses it
+     */
+    public static synchronized void registerMBean() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMXBeanImpl(), name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("unable to register " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Prints report() to out every period, on a daemon thread, until the returned future is cancelled.
+     *
+     * @param out to print to
+     * @param period time between reports
+     * @param unit of period
+     * @spec.requires out != null and period &gt; 0 and unit != null
+     * @return the scheduled printing
+     */
+    public static synchronized ScheduledFuture<?> startDump(PrintStream out, long period, TimeUnit unit) {
+        if (dumper == null) {
+            dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "marvel-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return dumper.scheduleAtFixedRate(() -> out.print(report()), period, period, unit);
+    }
+
+    /**
+     * If metrics are enabled, registers the MXBean and, when DUMP_PROPERTY is set, prints a report to
+     * standard error that many seconds apart. Does nothing when metrics are off.
+     */
+    public static void start() {
+        if (!ENABLED) {
+            return;
+        }
+        registerMBean();
+        long seconds = Long.getLong(DUMP_PROPERTY, 0);
+        if (seconds > 0) {
+            startDump(System.err, seconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * A Counter is a sum that many threads add to.
+     */
+    public static final class Counter {
+        private final LongAdder sum = new LongAdder();
+
+        /**
+         * @param n amount to add
+         * @spec.modifies this
+         * @spec.effects adds n to the sum
+         */
+        public void add(long n) {
+            sum.add(n);
+        }
+
+        /**
+         * @return the sum of everything added since the last reset
+         */
+        public long sum() {
+            return sum.sum();
+        }
+
+        /**
+         * @spec.modifies this
+         * @spec.effects sets the sum to 0
+         */
+        public void reset() {
+            sum.reset();
+        }
+    }
+
+    /**
+     * A Gauge holds the last value it was set to.
+     */
+    public static final class Gauge {
+        private final AtomicLong value = new AtomicLong();
+
+        /**
+         * @param n the new value
+         * @spec.modifies this
+         */
+        public void set(long n) {
+            value.set(n);
+        }
+
+        /**
+         * @return the last value set, 0 if none was
+         */
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * A Histogram counts values in buckets of powers of two, so it takes the same small space for any
+     * number of values and gives percentiles to within a factor of two. Bucket 0 holds 0 and bucket b
+     * holds 2^(b - 1) to 2^b - 1; negative values are counted as 0.
+     */
+    public static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[Long.SIZE];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        /**
+         * Creates an empty histogram.
+         */
+        public Histogram() {
+            for (int b = 0; b < buckets.length; b++) {
+                buckets[b] = new LongAdder();
+            }
+        }
+
+        /**
+         * @param value to count
+         * @spec.modifies this
+         * @spec.effects counts value
+         */
+        public void record(long value) {
+            long v = Math.max(0, value);
+            buckets[Long.SIZE - Long.numberOfLeadingZeros(v)].increment();
+            count.increment();
+            sum.add(v);
+            max.accumulate(v);
+        }
+
+        /**
+         * @return the number of values counted
+         */
+        public long count() {
+            return count.sum();
+        }
+
+        /**
+         * @return the sum of the values counted
+         */
+        public long sum() {
+            return sum.sum();
+        }
+
+        /**
+         * @return the greatest value counted, 0 if none was
+         */
+        public long max() {
+            return max.get();
+        }
+
+        /**
+         * @param p fraction of the values
+         * @spec.requires 0 &lt;= p &lt;= 1
+         * @return a value at least as great as the smallest value that is at least as great as a
+         *         fraction p of the values counted, and at most twice it; 0 if none was counted
+         */
+        public long percentile(double p) {
+            long[] counts = new long[buckets.length];
+            long total = 0;
+            for (int b = 0; b < buckets.length; b++) {
+                counts[b] = buckets[b].sum();
+                total += counts[b];
+            }
+            long rank = Math.max(1, (long) Math.ceil(p * total));
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= rank) {
+                    long upper = b == 0 ? 0 : b == Long.SIZE - 1 ? Long.MAX_VALUE : (1L << b) - 1;
+                    return Math.min(upper, max());
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @spec.modifies this
+         * @spec.effects forgets every value counted
+         */
+        public void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            count.reset();
+            sum.reset();
+            max.reset();
+        }
+    }
+
+    // reads the metrics for JMX
+    private static final class MetricsMXBeanImpl implements MetricsMXBean {
+        @Override
+        public boolean isEnabled() {
+            return ENABLED;
+        }
+
+        @Override
+        public Map<String, Long> getValues() {
+            return snapshot();
+        }
+
+        @Override
+        public String getReport() {
+            return report();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+}
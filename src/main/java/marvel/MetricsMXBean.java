@@ -0,0 +1,29 @@
+package marvel;
+
+import java.util.Map;
+
+/**
+ * The JMX view of Metrics, registered by Metrics.registerMBean.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * @return true iff metrics are being recorded
+     */
+    boolean isEnabled();
+
+    /**
+     * @return every metric value by name, as Metrics.snapshot() gives them
+     */
+    Map<String, Long> getValues();
+
+    /**
+     * @return the values as text, as Metrics.report() gives them
+     */
+    String getReport();
+
+    /**
+     * Sets every metric back to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,580 @@
+package marvel;
+
+import java.util.*;
+
+/**
+ * NameIndex answers the name lookups of the interactive prompt without looking at every character:
+ * which characters have a name containing some text, which have a name or alias starting with it,
+ * and which have a "/"-separated alias the text starts with.
+ * All lookups ignore case and treat the text as a literal; no character is special.
+ * For text with typos, fuzzyMatches ranks the names and aliases within a small edit distance of it.
+ *
+ * The aliases of a name are the parts between its "/" and "," separators, so
+ * "SPIDER-MAN/PETER PARKER" has the aliases "SPIDER-MAN" and "PETER PARKER".
+ *
+ * @spec.specfield names : sequence of String // the character names, in ascending order
+ */
+public final class NameIndex {
+
+    // Abstraction Function: names = [names[0], ..., names[names.length - 1]]
+    //
+    // Representation Invariant:
+    //  no field is null and names is sorted in strictly ascending order
+    //  folded[i] == fold(names[i])
+    //  trigrams maps every trigram of every folded name to the ascending ids of the names that have it
+    //  keys is sorted and keyNodes[i] is the id of a name of which keys[i] is the folded name or an alias
+    //  slashAliases is sorted and slashAliasNodes[i] is the id of a name with the "/"-separated part
+    //  slashAliases[i], folded; parts of one character are left out
+    //  bigrams maps every bigram of every key, padded at both ends, to the ascending indices of
+    //  the keys that have it
+    //  degree[i] is the number of distinct neighbors of names[i] in the graph the index was built from
+
+    private static final int GRAM = 3;
+
+    // stands for the positions before the start and after the end of a padded string; it is
+    // outside the range of char, so it never equals a real character
+    private static final int PAD = 0x10000;
+
+    private final String[] names;
+    private final String[] folded;
+    private final GramTable trigrams;
+    private final String[] keys;
+    private final int[] keyNodes;
+    private final String[] slashAliases;
+    private final int[] slashAliasNodes;
+    private final GramTable bigrams;
+    private final int[] degree;
+
+    private NameIndex(String[] names, String[] folded, GramTable trigrams, String[] keys, int[] keyNodes,
+                      String[] slashAliases, int[] slashAliasNodes, GramTable bigrams, int[] degree) {
+        this.names = names;
+        this.folded = folded;
+        this.trigrams = trigrams;
+        this.keys = keys;
+        this.keyNodes = keyNodes;
+        this.slashAliases = slashAliases;
+        this.slashAliasNodes = slashAliasNodes;
+        this.bigrams = bigrams;
+        this.degree = degree;
+        checkRep();
+    }
+
+    /**
+     * Builds the index of the node names of graph.
+     *
+     * @param graph whose nodes are indexed
+     * @spec.requires graph != null
+     * @return an index over the names of the nodes of graph
+     */
+    public static NameIndex fromGraph(CsrGraph graph) {
+        // ids in the index are positions in name order, not the node ids of graph
+        String[] names = graph.listNodes().toArray(new String[0]);
+        String[] folded = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            folded[i] = fold(names[i]);
+        }
+
+        GramTable trigrams = new GramTable(postings(folded, GRAM, false));
+
+        List<String> keyList = new ArrayList<>();
+        List<Integer> keyNodeList = new ArrayList<>();
+        List<String> slashList = new ArrayList<>();
+        List<Integer> slashNodeList = new ArrayList<>();
+        for (int i = 0; i < folded.length; i++) {
+            keyList.add(folded[i]);
+            keyNodeList.add(i);
+            String name = folded[i];
+            int start = 0;
+            for (int end = 0; end <= name.length(); end++) {
+                if (end == name.length() || name.charAt(end) == '/' || name.charAt(end) == ',') {
+                    String alias = name.substring(start, end).trim();
+                    if (!alias.isEmpty() && alias.length() < name.length()) {
+                        keyList.add(alias);
+                        keyNodeList.add(i);
+                    }
+                    start = end + 1;
+                }
+            }
+            if (folded[i].contains("/")) {
+                for (String alias : folded[i].split("/")) {
+                    if (alias.length() > 1) {
+                        slashList.add(alias);
+                        slashNodeList.add(i);
+                    }
+                }
+            }
+        }
+        Integer[] keyOrder = sortedOrder(keyList);
+        Integer[] slashOrder = sortedOrder(slashList);
+        String[] keys = new String[keyOrder.length];
+        int[] keyNodes = new int[keyOrder.length];
+        for (int i = 0; i < keyOrder.length; i++) {
+            keys[i] = keyList.get(keyOrder[i]);
+            keyNodes[i] = keyNodeList.get(keyOrder[i]);
+        }
+        String[] slashAliases = new String[slashOrder.length];
+        int[] slashAliasNodes = new int[slashOrder.length];
+        for (int i = 0; i < slashOrder.length; i++) {
+            slashAliases[i] = slashList.get(slashOrder[i]);
+            slashAliasNodes[i] = slashNodeList.get(slashOrder[i]);
+        }
+        GramTable bigrams = new GramTable(postings(keys, 2, true));
+
+        int[] degree = new int[names.length];
+        for (int n = 0; n < names.length; n++) {
+            degree[n] = graph.degree(graph.nodeAt(n));
+        }
+        return new NameIndex(names, folded, trigrams, keys, keyNodes, slashAliases, slashAliasNodes, bigrams,
+                degree);
+    }
+
+    // maps every q-gram of every string, padded at both ends if padded is true, to the ascending
+    // indices of the strings that have it
+    private static Map<Long, int[]> postings(String[] strings, int q, boolean padded) {
+        // General idea
+        // count the strings of every gram first, so each posting list is allocated once at its
+        // final size. strings are visited in order, so a string only has to be compared with the
+        // last index added to a list to skip a gram it has twice
+        int pad = padded ? q - 1 : 0;
+        Map<Long, int[]> counts = new HashMap<>();  // gram -> {strings with it, last index counted}
+        for (int i = 0; i < strings.length; i++) {
+            String s = strings[i];
+            for (int j = -pad; j + q <= s.length() + pad; j++) {
+                int[] count = counts.computeIfAbsent(gram(s, j, q), k -> new int[] {0, -1});
+                if (count[1] != i) {
+                    count[0]++;
+                    count[1] = i;
+                }
+            }
+        }
+        Map<Long, int[]> postings = new HashMap<>(counts.size() * 2);
+        for (Map.Entry<Long, int[]> entry : counts.entrySet()) {
+            postings.put(entry.getKey(), new int[entry.getValue()[0]]);
+            entry.getValue()[0] = 0;
+        }
+        for (int i = 0; i < strings.length; i++) {
+            String s = strings[i];
+            for (int j = -pad; j + q <= s.length() + pad; j++) {
+                Long g = gram(s, j, q);
+                int[] list = postings.get(g);
+                int[] count = counts.get(g);
+                if (count[0] == 0 || list[count[0] - 1] != i) {
+                    list[count[0]++] = i;
+                }
+            }
+        }
+        return postings;
+    }
+
+    /**
+     * @return the number of names in this index
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Finds the names to offer for what the user typed at the prompt: the name itself if it is
+     * spelled exactly like a character, otherwise every name containing it and every name with a
+     * "/"-separated alias of more than one letter that it starts with.
+     *
+     * @param input what the user typed
+     * @spec.requires input != null
+     * @return the matching names in ascending order
+     */
+    public List<String> lookup(String input) {
+        int exact = Arrays.binarySearch(names, input);
+        if (exact >= 0) {
+            return Collections.singletonList(names[exact]);
+        }
+        BitSet ids = substringIds(input);
+        ids.or(aliasIds(input));
+        return toNames(ids);
+    }
+
+    /**
+     * @param text to look for
+     * @spec.requires text != null
+     * @return every name containing text, ignoring case, in ascending order
+     */
+    public List<String> substringMatches(String text) {
+        return toNames(substringIds(text));
+    }
+
+    /**
+     * @param text to look for
+     * @spec.requires text != null
+     * @return every name that starts with text, or has an alias that does, ignoring case, in ascending order
+     */
+    public List<String> prefixMatches(String text) {
+        String key = fold(text);
+        BitSet ids = new BitSet(names.length);
+        for (int i = lowerBound(keys, key); i < keys.length && keys[i].startsWith(key); i++) {
+            ids.set(keyNodes[i]);
+        }
+        return toNames(ids);
+    }
+
+    /**
+     * @param text to look for
+     * @spec.requires text != null
+     * @return every name with a "/"-separated alias of more than one letter that text starts with,
+     *         ignoring case, in ascending order
+     */
+    public List<String> aliasMatches(String text) {
+        return toNames(aliasIds(text));
+    }
+
+    /**
+     * Finds the names closest to text, for input with typos such as "Spiderman" or "Capt America".
+     * A name is a candidate if the name itself or one of its aliases is within maxDistance edits
+     * (insertions, deletions or substitutions of one character) of text, ignoring case.
+     * Candidates are ranked by their fewest edits, then by how many characters they are connected to,
+     * most first, then by name. Short text is held to fewer edits, at most (length - 1) / 2 for text
+     * of that length, since a few edits turn a short word into almost anything.
+     *
+     * @param text to look for
+     * @param maxDistance most edits a match may need
+     * @param k most names to return
+     * @spec.requires text != null and maxDistance &gt;= 0 and k &gt;= 0
+     * @return at most k of the best ranked candidates, best first
+     */
+    public List<String> fuzzyMatches(String text, int maxDistance, int k) {
+        String key = fold(text);
+        FuzzyWorkspace ws = FuzzyWorkspace.get(keys.length, names.length);
+        int epoch = ws.epoch;
+
+        // General idea
+        // an edit changes at most 2 of the padded bigrams of a string, so a key within d edits of
+        // text shares at least (distinct bigrams of text) - 2 * d of them. counting shared bigrams
+        // over the posting lists finds those keys, and only they get a real edit distance.
+        long[] grams = new long[key.length() + 1];
+        for (int j = -1; j + 2 <= key.length() + 1; j++) {
+            grams[j + 1] = gram(key, j, 2);
+        }
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int j = 0; j < grams.length; j++) {
+            if (j == 0 || grams[j] != grams[j - 1]) {
+                grams[distinct++] = grams[j];
+            }
+        }
+        int limit = Math.min(maxDistance, (distinct - 1) / 2);
+        int threshold = distinct - 2 * limit;
+        int[] keyStamp = ws.keyStamp;
+        int[] shared = ws.shared;
+        int[] touched = ws.touched;
+        int touchedCount = 0;
+        for (int j = 0; j < distinct; j++) {
+            int[] list = bigrams.get(grams[j]);
+            if (list == null) {
+                continue;
+            }
+            for (int i : list) {
+                if (keyStamp[i] != epoch) {
+                    keyStamp[i] = epoch;
+                    shared[i] = 1;
+                    touched[touchedCount++] = i;
+                } else {
+                    shared[i]++;
+                }
+            }
+        }
+
+        if (Metrics.ENABLED) {
+            Metrics.FUZZY_CANDIDATES.record(touchedCount);
+        }
+        // best[n] is the fewest edits of any key of name n
+        int[] nameStamp = ws.nameStamp;
+        int[] best = ws.best;
+        int[] candidates = ws.candidates;
+        int candidateCount = 0;
+        for (int t = 0; t < touchedCount; t++) {
+            int i = touched[t];
+            if (shared[i] >= threshold && Math.abs(keys[i].length() - key.length()) <= limit) {
+                int distance = editDistance(key, keys[i], limit, ws);
+                if (distance > limit) {
+                    continue;
+                }
+                int n = keyNodes[i];
+                if (nameStamp[n] != epoch) {
+                    nameStamp[n] = epoch;
+                    best[n] = distance;
+                    candidates[candidateCount++] = n;
+                } else if (distance < best[n]) {
+                    best[n] = distance;
+                }
+            }
+        }
+
+        // ids are in name order, so sorting (fewer neighbors, id) packed into one long ranks by
+        // most neighbors, then name; a pass per distance then takes the fewest edits first
+        long[] order = ws.order;
+        for (int c = 0; c < candidateCount; c++) {
+            int n = candidates[c];
+            order[c] = ((long) (names.length - degree[n]) << 32) | n;
+        }
+        Arrays.sort(order, 0, candidateCount);
+        List<String> result = new ArrayList<>(Math.min(k, candidateCount));
+        for (int d = 0; d <= limit && result.size() < k; d++) {
+            for (int c = 0; c < candidateCount && result.size() < k; c++) {
+                int n = (int) order[c];
+                if (best[n] == d) {
+                    result.add(names[n]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param name of a character
+     * @spec.requires name != null
+     * @return the number of distinct characters name shares a book with, or -1 if name is not in this index
+     */
+    public int degree(String name) {
+        int i = Arrays.binarySearch(names, name);
+        return i >= 0 ? degree[i] : -1;
+    }
+
+    // Levenshtein distance of a and b, or limit + 1 once it is sure to be more than limit.
+    // only cells within limit of the diagonal can stay within limit, so only those are filled.
+    // the two rows are those of ws
+    private static int editDistance(String a, String b, int limit, FuzzyWorkspace ws) {
+        int over = limit + 1;
+        ws.ensureRows(b.length() + 1);
+        int[] previous = ws.previousRow;
+        int[] current = ws.currentRow;
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = Math.min(j, over);
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int from = Math.max(1, i - limit);
+            int to = Math.min(b.length(), i + limit);
+            current[0] = Math.min(i, over);
+            if (from > 1) {
+                current[from - 1] = over;
+            }
+            int rowMin = current[0];
+            for (int j = from; j <= to; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                current[j] = Math.min(d, over);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (to < b.length()) {
+                current[to + 1] = over;
+            }
+            if (rowMin > limit) {
+                return over;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    // candidates are the names on the shortest posting list of the trigrams of text,
+    // each then checked directly; text shorter than a trigram is checked against every name
+    private BitSet substringIds(String text) {
+        String key = fold(text);
+        BitSet ids = new BitSet(names.length);
+        if (key.length() < GRAM) {
+            for (int i = 0; i < folded.length; i++) {
+                if (folded[i].contains(key)) {
+                    ids.set(i);
+                }
+            }
+            if (Metrics.ENABLED) {
+                Metrics.LOOKUP_CANDIDATES.record(folded.length);
+            }
+            return ids;
+        }
+        int[] candidates = null;
+        for (int j = 0; j + GRAM <= key.length(); j++) {
+            int[] postings = trigrams.get(gram(key, j, GRAM));
+            if (postings == null) {
+                if (Metrics.ENABLED) {
+                    Metrics.LOOKUP_CANDIDATES.record(0);
+                }
+                return ids;
+            }
+            if (candidates == null || postings.length < candidates.length) {
+                candidates = postings;
+            }
+        }
+        for (int i : candidates) {
+            if (folded[i].contains(key)) {
+                ids.set(i);
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.LOOKUP_CANDIDATES.record(candidates.length);
+        }
+        return ids;
+    }
+
+    // every prefix of text is looked up as a whole alias
+    private BitSet aliasIds(String text) {
+        String key = fold(text);
+        BitSet ids = new BitSet(names.length);
+        for (int end = 2; end <= key.length(); end++) {
+            String prefix = key.substring(0, end);
+            for (int i = lowerBound(slashAliases, prefix); i < slashAliases.length && slashAliases[i].equals(prefix); i++) {
+                ids.set(slashAliasNodes[i]);
+            }
+        }
+        return ids;
+    }
+
+    private List<String> toNames(BitSet ids) {
+        List<String> result = new ArrayList<>(ids.cardinality());
+        for (int i = ids.nextSetBit(0); i >= 0; i = ids.nextSetBit(i + 1)) {
+            result.add(names[i]);
+        }
+        return result;
+    }
+
+    // index of the first element of sorted that is not less than key
+    private static int lowerBound(String[] sorted, String key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static Integer[] sortedOrder(List<String> strings) {
+        Integer[] order = new Integer[strings.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(strings::get));
+        return order;
+    }
+
+    static String fold(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    // the q chars of s starting at i, packed into one key, with PAD for positions outside s.
+    // they are spread 21 bits apart rather than 16, which leaves room for PAD and keeps
+    // Long.hashCode, which folds the high half onto the low half, from cancelling them out
+    private static long gram(String s, int i, int q) {
+        long gram = 0;
+        for (int j = i; j < i + q; j++) {
+            gram = (gram << 21) | (j < 0 || j >= s.length() ? PAD : s.charAt(j));
+        }
+        return gram;
+    }
+
+    // an open-addressing map from gram to posting list, so that looking up a gram does not box it
+    private static final class GramTable {
+        private final long[] grams;
+        private final int[][] lists;  // null where a slot is free
+        private final int mask;
+
+        GramTable(Map<Long, int[]> postings) {
+            // at most half full, so probes stay short and a free slot always ends them
+            int capacity = Integer.highestOneBit(Math.max(2, postings.size() * 2 - 1)) << 1;
+            grams = new long[capacity];
+            lists = new int[capacity][];
+            mask = capacity - 1;
+            for (Map.Entry<Long, int[]> entry : postings.entrySet()) {
+                long gram = entry.getKey();
+                int i = slot(gram);
+                while (lists[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                grams[i] = gram;
+                lists[i] = entry.getValue();
+            }
+        }
+
+        // the posting list of gram, or null if no string has it
+        int[] get(long gram) {
+            for (int i = slot(gram); lists[i] != null; i = (i + 1) & mask) {
+                if (grams[i] == gram) {
+                    return lists[i];
+                }
+            }
+            return null;
+        }
+
+        private int slot(long gram) {
+            return (int) ((gram * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+    }
+
+    // the arrays fuzzyMatches needs, one set per thread. like BfsWorkspace, a per-key or per-name
+    // value counts only if its stamp equals the epoch of the current query, so nothing is cleared
+    // between queries, and arrays only grow, to fit the largest index queried on the thread
+    private static final class FuzzyWorkspace {
+
+        private static final ThreadLocal<FuzzyWorkspace> LOCAL = ThreadLocal.withInitial(FuzzyWorkspace::new);
+
+        // per key: shared[i] is the number of bigrams key i shares with the text
+        int[] keyStamp = new int[0];
+        int[] shared = new int[0];
+        int[] touched = new int[0];
+
+        // per name: best[n] is the fewest edits of any key of name n
+        int[] nameStamp = new int[0];
+        int[] best = new int[0];
+        int[] candidates = new int[0];
+        long[] order = new long[0];
+
+        int[] previousRow = new int[0];
+        int[] currentRow = new int[0];
+
+        int epoch = 0;
+
+        static FuzzyWorkspace get(int keys, int names) {
+            FuzzyWorkspace workspace = LOCAL.get();
+            if (workspace.keyStamp.length < keys) {
+                workspace.keyStamp = new int[keys];
+                workspace.shared = new int[keys];
+                workspace.touched = new int[keys];
+            }
+            if (workspace.nameStamp.length < names) {
+                workspace.nameStamp = new int[names];
+                workspace.best = new int[names];
+                workspace.candidates = new int[names];
+                workspace.order = new long[names];
+            }
+            // new stamps start at zero, so an epoch of zero would mark everything; skip it when wrapping
+            workspace.epoch++;
+            if (workspace.epoch == 0) {
+                Arrays.fill(workspace.keyStamp, 0);
+                Arrays.fill(workspace.nameStamp, 0);
+                workspace.epoch = 1;
+            }
+            return workspace;
+        }
+
+        void ensureRows(int length) {
+            if (previousRow.length < length) {
+                previousRow = new int[length];
+                currentRow = new int[length];
+            }
+        }
+    }
+
+    /**
+     * Throws an exception if the representation invariant is violated.
+     */
+    private void checkRep() {
+        assert names != null && folded != null && trigrams != null : "null fields";
+        assert keys != null && keyNodes != null && slashAliases != null && slashAliasNodes != null : "null fields";
+        assert folded.length == names.length : "folded names differ";
+        assert keys.length == keyNodes.length && slashAliases.length == slashAliasNodes.length : "keys differ";
+        assert bigrams != null && degree != null && degree.length == names.length : "bad degrees";
+    }
+}
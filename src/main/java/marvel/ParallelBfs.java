@@ -0,0 +1,378 @@
+package marvel;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntToLongFunction;
+
+/**
+ * ParallelBfs is a level-synchronous Breadth-First-Search over a CsrGraph that expands each level
+ * on a fork/join pool. A level is expanded either top-down, each frontier node claiming its
+ * unvisited neighbors, or bottom-up, each unvisited node looking for a neighbor in the frontier,
+ * whichever is expected to look at fewer links. Bottom-up pays off on the levels where the frontier
+ * has reached the characters with the most neighbors and covers much of the graph.
+ *
+ * The search finds the same path as the sequential one of MarvelPaths.findCompactPath. There, a node
+ * is reached from the first node of the level above, in queue order, that has it as a neighbor, and
+ * the nodes of a level are queued in order of (rank of that parent, name). Here every node of a new
+ * level keeps the least rank among its neighbors in the level above, whichever thread sees it first,
+ * and once the level is done its nodes are sorted by (parent rank, name) to give them their ranks.
+ * Everything, sorting included, runs on the pool given to search: each run of a level sorts its own
+ * nodes, and the sorted runs are merged in pairs.
+ *
+ * Bottom-up, a node looks for the neighbor of least rank in the frontier. Rows are sorted by name,
+ * not rank, so the first frontier neighbor in a row need not be that one; but once the row is past
+ * the names of every frontier node ranked below the best found so far, none of them can come later,
+ * and the rest of the row is skipped.
+ */
+final class ParallelBfs {
+
+    // switch to bottom-up once the links out of the frontier are more than 1 / ALPHA of the links of
+    // the unvisited nodes, and back to top-down once the frontier has fewer than 1 / BETA of the nodes
+    private static final int ALPHA = 14;
+    private static final int BETA = 24;
+
+    // a top-down level with fewer links than this is expanded on the calling thread
+    private static final long SEQUENTIAL_LINKS = 4096;
+
+    // a new level with fewer nodes than this is sorted on the calling thread
+    private static final int SEQUENTIAL_KEYS = 4096;
+
+    // on a graph with fewer links than this, a whole search takes about as long as handing a few levels
+    // to the pool, so the sequential search is used instead
+    private static final long PARALLEL_GRAPH_LINKS = 1 << 16;
+
+    // each thread gets about this many runs of a level, so runs that happen to be slow can be balanced
+    private static final int RUNS_PER_THREAD = 4;
+
+    private ParallelBfs() {
+    }
+
+    /**
+     * @param graph to search
+     * @param pool to expand levels on
+     * @spec.requires graph != null and pool != null
+     * @return true iff a search of graph is expected to finish sooner on pool than on one thread: the
+     *         pool has more than one thread and graph has enough links to keep them busy
+     */
+    static boolean worthwhile(CsrGraph graph, ForkJoinPool pool) {
+        return pool.getParallelism() > 1 && graph.linkCount() >= PARALLEL_GRAPH_LINKS;
+    }
+
+    /**
+     * Searches from start until dest is reached or every node connected to start was visited.
+     *
+     * @param graph to search
+     * @param start id of the starting node
+     * @param dest id of the destination node
+     * @param pool to expand levels on
+     * @param ws the workspace of the calling thread, from BfsWorkspace.get(graph.size())
+     * @param stats where the search is recorded, or null
+     * @spec.requires graph != null and pool != null and start, dest are nodes of graph and
+     *                ws != null and every edge of graph has a reverse edge with the same label
+     * @spec.modifies ws, stats
+     * @spec.effects for every node m != start on the least shortest path from start to dest, sets
+     *               ws.parent[m] and ws.parentLabel[m] as MarvelPaths.findCompactPath would; records
+     *               the nodes visited and links scanned in stats
+     * @return true iff dest can be reached from start
+     */
+    static boolean search(CsrGraph graph, int start, int dest, ForkJoinPool pool, BfsWorkspace ws,
+                          SearchStats stats) {
+        int n = graph.size();
+        ws.ensureParallel(n);
+        // order[r] is the node of rank r, its position in the queue of the sequential search, and
+        // linksBefore[r] the number of links of the nodes of rank below r
+        int[] order = ws.queue;
+        int[] rank = ws.rank;
+        long[] linksBefore = ws.linksBefore;
+        // the rank of the parent of each node plus one, 0 while the node has not been reached.
+        // parentRank, visited and frontier are all clear here, and are left that way
+        AtomicIntegerArray parentRank = ws.parentRank;
+        long[] visited = ws.visited;
+        long[] frontier = ws.frontier;
+        long[] keys = ws.levelKeys;
+        long[] merged = ws.mergedKeys;
+        int[] namesBelow = ws.namesBelow;
+        int threads = pool.getParallelism();
+
+        // a search that threw leaves this false, and the next one starts by clearing everything
+        ws.parallelClean = false;
+        int tail = expand(graph, start, dest, pool, threads, order, rank, linksBefore, parentRank, visited,
+                frontier, keys, merged, namesBelow, stats);
+        boolean reached = get(visited, dest);
+        if (reached) {
+            // the least label of the edges between a node and its parent is that of the link from the
+            // node, since every edge has a reverse edge with the same label
+            for (int m = dest; m != start; m = ws.parent[m]) {
+                int p = order[parentRank.get(m) - 1];
+                ws.parent[m] = p;
+                ws.parentLabel[m] = graph.linkLabel(linkTo(graph, m, p));
+            }
+        }
+        // every node reached was ranked, so clearing the ranked ones leaves both clear
+        for (int r = 0; r < tail; r++) {
+            parentRank.set(order[r], 0);
+            clear(visited, order[r]);
+        }
+        ws.parallelClean = true;
+        return reached;
+    }
+
+    // runs the levels of the search and returns the number of nodes visited, ranks 0 to that
+    private static int expand(CsrGraph graph, int start, int dest, ForkJoinPool pool, int threads, int[] order,
+                              int[] rank, long[] linksBefore, AtomicIntegerArray parentRank, long[] visited,
+                              long[] frontier, long[] keys, long[] merged, int[] namesBelow,
+                              SearchStats stats) {
+        int n = graph.size();
+
+        order[0] = start;
+        rank[start] = 0;
+        linksBefore[1] = linkCount(graph, start);
+        set(visited, start);
+        int head = 0;
+        int tail = 1;
+        long unvisitedLinks = graph.linkCount() - linksBefore[1];
+        long scanned = 0;
+        boolean bottomUp = false;
+
+        while (head < tail && !get(visited, dest)) {
+            int lo = head;
+            int hi = tail;
+            long frontierLinks = linksBefore[hi] - linksBefore[lo];
+            if (!bottomUp && frontierLinks > unvisitedLinks / ALPHA) {
+                bottomUp = true;
+            } else if (bottomUp && hi - lo < n / BETA) {
+                bottomUp = false;
+            }
+
+            int[][] found;
+            int[] foundCount;
+            long[] runScanned;
+            if (bottomUp) {
+                // namesBelow[i] is the last name, by rank in name order, of the frontier nodes ranked
+                // below lo + i, or -1 if there are none
+                namesBelow[0] = -1;
+                for (int r = lo; r < hi; r++) {
+                    set(frontier, order[r]);
+                    namesBelow[r - lo + 1] = Math.max(namesBelow[r - lo], graph.rank(order[r]));
+                }
+                // runs of node ids with about the same number of links
+                int[] runs = split(0, n, threads * RUNS_PER_THREAD, graph::linksBefore);
+                found = new int[runs.length - 1][];
+                foundCount = new int[runs.length - 1];
+                runScanned = new long[runs.length - 1];
+                CsrGraph.forEachRun(pool, runs.length - 1, p -> {
+                    int[] list = new int[16];
+                    int count = 0;
+                    long links = 0;
+                    for (int m = runs[p]; m < runs[p + 1]; m++) {
+                        if (get(visited, m)) {
+                            continue;
+                        }
+                        // the least rank among the neighbors in the frontier. rows are sorted by name,
+                        // so a frontier node ranked below best can only come later while its name does
+                        int best = Integer.MAX_VALUE;
+                        int end = graph.endLink(m);
+                        int k = graph.firstLink(m);
+                        while (k < end) {
+                            int t = graph.linkTarget(k);
+                            if (best != Integer.MAX_VALUE && graph.rank(t) > namesBelow[best - lo]) {
+                                break;
+                            }
+                            if (get(frontier, t) && rank[t] < best) {
+                                best = rank[t];
+                            }
+                            k++;
+                        }
+                        links += k - graph.firstLink(m);
+                        if (best != Integer.MAX_VALUE) {
+                            parentRank.set(m, best + 1);
+                            if (count == list.length) {
+                                list = Arrays.copyOf(list, count * 2);
+                            }
+                            list[count++] = m;
+                        }
+                    }
+                    found[p] = list;
+                    foundCount[p] = count;
+                    runScanned[p] = links;
+                });
+                for (int r = lo; r < hi; r++) {
+                    clear(frontier, order[r]);
+                }
+            } else {
+                // runs of ranks of the frontier with about the same number of links
+                int parts = frontierLinks < SEQUENTIAL_LINKS ? 1 : threads * RUNS_PER_THREAD;
+                int[] runs = split(lo, hi, parts, r -> linksBefore[r]);
+                found = new int[runs.length - 1][];
+                foundCount = new int[runs.length - 1];
+                runScanned = new long[runs.length - 1];
+                CsrGraph.forEachRun(parts == 1 ? null : pool, runs.length - 1, p -> {
+                    int[] list = new int[16];
+                    int count = 0;
+                    for (int r = runs[p]; r < runs[p + 1]; r++) {
+                        int from = order[r];
+                        for (int k = graph.firstLink(from); k < graph.endLink(from); k++) {
+                            int m = graph.linkTarget(k);
+                            if (!get(visited, m) && claim(parentRank, m, r + 1)) {
+                                // only the one thread that first reaches m lists it
+                                if (count == list.length) {
+                                    list = Arrays.copyOf(list, count * 2);
+                                }
+                                list[count++] = m;
+                            }
+                        }
+                    }
+                    found[p] = list;
+                    foundCount[p] = count;
+                    runScanned[p] = linksBefore[runs[p + 1]] - linksBefore[runs[p]];
+                });
+            }
+
+            // rank the new level in the order the sequential search would have queued it. the parent
+            // ranks are final once every run is done, so each run then sorts the keys of its nodes
+            int[] sorted = new int[found.length + 1];
+            for (int p = 0; p < found.length; p++) {
+                sorted[p + 1] = sorted[p] + foundCount[p];
+                scanned += runScanned[p];
+            }
+            int total = sorted[found.length];
+            ForkJoinPool sortPool = total < SEQUENTIAL_KEYS ? null : pool;
+            CsrGraph.forEachRun(sortPool, found.length, p -> {
+                int at = sorted[p];
+                for (int i = 0; i < foundCount[p]; i++) {
+                    int m = found[p][i];
+                    keys[at + i] = ((long) (parentRank.get(m) - 1) << 32) | graph.rank(m);
+                }
+                Arrays.sort(keys, at, at + foundCount[p]);
+            });
+            long[] level = mergeRuns(sortPool, keys, merged, sorted);
+            for (int i = 0; i < total; i++) {
+                int m = graph.nodeAt((int) level[i]);
+                order[tail] = m;
+                rank[m] = tail;
+                linksBefore[tail + 1] = linksBefore[tail] + linkCount(graph, m);
+                set(visited, m);
+                tail++;
+            }
+            unvisitedLinks -= linksBefore[tail] - linksBefore[hi];
+            head = hi;
+        }
+        if (stats != null) {
+            stats.record(tail, scanned);
+        }
+        return tail;
+    }
+
+    // merges the sorted runs of keys, run p from bounds[p] to bounds[p + 1], in pairs until one is left,
+    // each round on pool. returns keys or merged, whichever holds the result
+    private static long[] mergeRuns(ForkJoinPool pool, long[] keys, long[] merged, int[] bounds) {
+        long[] from = keys;
+        long[] to = merged;
+        while (bounds.length > 2) {
+            int[] runs = bounds;
+            long[] a = from;
+            long[] b = to;
+            int pairs = runs.length / 2;
+            CsrGraph.forEachRun(pool, pairs, p -> {
+                int lo = runs[2 * p];
+                int mid = runs[Math.min(2 * p + 1, runs.length - 1)];
+                int hi = runs[Math.min(2 * p + 2, runs.length - 1)];
+                merge(a, lo, mid, hi, b);
+            });
+            bounds = new int[pairs + 1];
+            for (int p = 0; p <= pairs; p++) {
+                bounds[p] = runs[Math.min(2 * p, runs.length - 1)];
+            }
+            from = b;
+            to = a;
+        }
+        return from;
+    }
+
+    // merges the sorted from[lo, mid) and from[mid, hi) into to[lo, hi)
+    private static void merge(long[] from, int lo, int mid, int hi, long[] to) {
+        int i = lo;
+        int j = mid;
+        for (int k = lo; k < hi; k++) {
+            if (j == hi || (i < mid && from[i] <= from[j])) {
+                to[k] = from[i++];
+            } else {
+                to[k] = from[j++];
+            }
+        }
+    }
+
+    // lowers the parent rank of m to rank if that is smaller. true iff m had not been reached before
+    private static boolean claim(AtomicIntegerArray parentRank, int m, int rank) {
+        while (true) {
+            int current = parentRank.get(m);
+            if (current != 0 && current <= rank) {
+                return false;
+            }
+            if (parentRank.compareAndSet(m, current, rank)) {
+                return current == 0;
+            }
+        }
+    }
+
+    // the link from from to to, which exists. links are sorted by the name of their target
+    private static int linkTo(CsrGraph graph, int from, int to) {
+        int lo = graph.firstLink(from);
+        int hi = graph.endLink(from);
+        int goal = graph.rank(to);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (graph.rank(graph.linkTarget(mid)) < goal) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static long linkCount(CsrGraph graph, int node) {
+        return graph.endLink(node) - graph.firstLink(node);
+    }
+
+    // splits lo to hi into at most parts runs of about the same weight, where prefix(i) is the weight
+    // of the items before i and does not decrease. returns the first item of each run followed by hi
+    private static int[] split(int lo, int hi, int parts, IntToLongFunction prefix) {
+        long base = prefix.applyAsLong(lo);
+        long total = prefix.applyAsLong(hi) - base;
+        int[] bounds = new int[parts + 1];
+        bounds[0] = lo;
+        int runs = 0;
+        for (int p = 1; p < parts; p++) {
+            long goal = base + total / parts * p + total % parts * p / parts;
+            int a = bounds[runs];
+            int b = hi;
+            while (a < b) {
+                int mid = (a + b) >>> 1;
+                if (prefix.applyAsLong(mid) < goal) {
+                    a = mid + 1;
+                } else {
+                    b = mid;
+                }
+            }
+            if (a > bounds[runs] && a < hi) {
+                bounds[++runs] = a;
+            }
+        }
+        bounds[++runs] = hi;
+        return Arrays.copyOf(bounds, runs + 1);
+    }
+
+    private static boolean get(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    private static void clear(long[] bits, int i) {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+}
@@ -0,0 +1,262 @@
+package marvel;
+
+import graph.*;
+
+import java.util.*;
+
+/**
+ * PathCache remembers the most recently used shortest paths of a CsrGraph, so a pair that is asked
+ * for again is answered without a search. It holds at most a fixed number of paths and drops the
+ * least recently used one to make room for a new one.
+ *
+ * A path found for (u, v) also answers (v, u) when it is the only shortest path between them:
+ * every edge has a reverse edge, so walking it backwards is then the only, and so the least,
+ * shortest path from v to u. When there are several, the least one from v is not in general the
+ * reverse of the least one from u, and (v, u) is searched for like any other pair.
+ *
+ * The cache is tied to one graph version at a time. Asking it about a graph with a different
+ * version than the paths it holds drops all of them first.
+ * All methods can be called from any number of threads; searches on a miss run outside the lock,
+ * so concurrent misses do not wait for each other.
+ *
+ * @spec.specfield capacity : int // most paths held at once
+ * @spec.specfield paths : sequence of ((u, v), path) // held paths, least recently used first
+ * @spec.specfield hits : long // lookups answered from paths, directly or reversed
+ * @spec.specfield misses : long // lookups that needed a search
+ * @spec.specfield evictions : long // paths dropped to make room
+ * @spec.specfield invalidations : long // times paths was emptied because the graph changed
+ */
+public final class PathCache {
+
+    // Abstraction Function:
+    //  capacity = this.capacity, paths = entries in access order, each key (u << 32 | v) standing for
+    //  the pair of node ids (u, v) of the graph with version this.version
+    //  hits, misses, evictions and invalidations are the fields of the same name
+    //
+    // Representation Invariant:
+    //  capacity > 0, entries != null and entries.size() <= capacity
+    //  every counter is >= 0
+
+    private final int capacity;
+    private final LinkedHashMap<Long, Entry> entries;
+    private long version;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    // a cached search result: path is null if v cannot be reached from u
+    private static final class Entry {
+        final LinkedList<DiGraph.LabeledEdge<String, String>> path;
+        final boolean unique;
+
+        Entry(LinkedList<DiGraph.LabeledEdge<String, String>> path, boolean unique) {
+            this.path = path;
+            this.unique = unique;
+        }
+    }
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity most paths held at once
+     * @spec.requires capacity &gt; 0
+     */
+    public PathCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > PathCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        checkRep();
+    }
+
+    /**
+     * Returns the path MarvelPaths.findCompactPath(graph, u, v) returns, from the cache if it holds it.
+     *
+     * @param graph on which a path from u to v is searched
+     * @param u starting node
+     * @param v destination node
+     * @throws IllegalArgumentException when u or v are not in graph
+     *
+     * @spec.requires graph != null and u != null and v != null and graph is not empty and
+     *                every edge of graph has a reverse edge, as in every graph loadCompactGraph builds
+     * @spec.modifies this
+     * @spec.effects counts a hit or a miss; on a miss, adds the path, evicting the least recently used
+     *               one if full; if graph has a different version than the paths held, drops them first
+     * @return a new LinkedList of Labeled Edges representing a path from u to v of least lexicographical
+     *         order, or null if there is none
+     */
+    public LinkedList<DiGraph.LabeledEdge<String, String>> findPath(CsrGraph graph, String u, String v) {
+        assert (graph != null) : "unable to find path between " + u + " and " + v + " in an empty graph.";
+        assert (u != null) && (v != null) : "unable to find path between empty nodes";
+        int start = graph.id(u);
+        int dest = graph.id(v);
+        if (start < 0) throw new IllegalArgumentException(u + " is not in the graph.");
+        if (dest < 0) throw new IllegalArgumentException(v + " is not in the graph.");
+
+        synchronized (this) {
+            if (version != graph.version()) {
+                if (!entries.isEmpty()) {
+                    entries.clear();
+                    invalidations++;
+                }
+                version = graph.version();
+            }
+            Entry entry = entries.get(key(start, dest));
+            if (entry != null) {
+                hits++;
+                return copy(entry.path);
+            }
+            Entry reverse = entries.get(key(dest, start));
+            if (reverse != null && reverse.unique) {
+                hits++;
+                return reversed(reverse.path);
+            }
+            misses++;
+        }
+
+        Entry entry = search(graph, start, dest);
+        synchronized (this) {
+            if (version == graph.version()) {
+                entries.put(key(start, dest), entry);
+            }
+        }
+        checkRep();
+        return copy(entry.path);
+    }
+
+    /**
+     * @return the number of paths held
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that needed a search
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of paths dropped to make room for others
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of times every path was dropped because a different graph was asked about
+     */
+    public synchronized long invalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Drops every path held. Counters are kept.
+     *
+     * @spec.modifies this
+     * @spec.effects paths is empty
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static long key(int u, int v) {
+        return ((long) u << 32) | v;
+    }
+
+    // the BFS of findCompactPath, also counting the shortest paths to each node, up to 2.
+    // every node one level below dest is expanded before dest comes off the queue, so its count is
+    // complete by then
+    private static Entry search(CsrGraph graph, int start, int dest) {
+        if (!graph.connected(start, dest)) {
+            return new Entry(null, true);
+        }
+        BfsWorkspace ws = BfsWorkspace.get(graph.size());
+        int[] seen = ws.seen;
+        int[] distance = ws.distance;
+        int[] paths = ws.distanceBack;
+        int[] parent = ws.parent;
+        int[] parentLabel = ws.parentLabel;
+        int[] queue = ws.queue;
+        int epoch = ws.epoch;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        seen[start] = epoch;
+        distance[start] = 0;
+        paths[start] = 1;
+
+        while (head < tail) {
+            int n = queue[head++];
+            if (n == dest) {
+                break;
+            }
+            // each book of a link is a different edge, so a link carries as many paths as it has books
+            for (int k = graph.firstLink(n); k < graph.endLink(n); k++) {
+                int m = graph.linkTarget(k);
+                if (seen[m] != epoch) {
+                    seen[m] = epoch;
+                    distance[m] = distance[n] + 1;
+                    paths[m] = Math.min(2, paths[n] * graph.linkWeight(k));
+                    parent[m] = n;
+                    parentLabel[m] = graph.linkLabel(k);
+                    queue[tail++] = m;
+                } else if (distance[m] == distance[n] + 1) {
+                    paths[m] = Math.min(2, paths[m] + paths[n] * graph.linkWeight(k));
+                }
+            }
+        }
+        if (seen[dest] != epoch) {
+            return new Entry(null, true);
+        }
+        LinkedList<DiGraph.LabeledEdge<String, String>> path = new LinkedList<>();
+        for (int m = dest; m != start; m = parent[m]) {
+            path.addFirst(new DiGraph.LabeledEdge<>(graph.name(parent[m]), graph.name(m),
+                    graph.labelName(parentLabel[m])));
+        }
+        return new Entry(path, paths[dest] == 1);
+    }
+
+    private static LinkedList<DiGraph.LabeledEdge<String, String>> copy(
+            LinkedList<DiGraph.LabeledEdge<String, String>> path) {
+        return path == null ? null : new LinkedList<>(path);
+    }
+
+    private static LinkedList<DiGraph.LabeledEdge<String, String>> reversed(
+            LinkedList<DiGraph.LabeledEdge<String, String>> path) {
+        if (path == null) {
+            return null;
+        }
+        LinkedList<DiGraph.LabeledEdge<String, String>> result = new LinkedList<>();
+        for (DiGraph.LabeledEdge<String, String> e : path) {
+            result.addFirst(new DiGraph.LabeledEdge<>(e.getTo(), e.getFrom(), e.getLabel()));
+        }
+        return result;
+    }
+
+    /**
+     * Throws an exception if the representation invariant is violated.
+     */
+    private synchronized void checkRep() {
+        assert capacity > 0 : "capacity must be positive";
+        assert entries != null && entries.size() <= capacity : "too many entries";
+        assert hits >= 0 && misses >= 0 && evictions >= 0 && invalidations >= 0 : "negative counter";
+    }
+}
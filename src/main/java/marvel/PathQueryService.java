@@ -0,0 +1,152 @@
+package marvel;
+
+import graph.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PathQueryService answers path queries on one CsrGraph concurrently, running each query as a task
+ * on an executor and handing back a CompletableFuture of its result.
+ * The graph is immutable and every search keeps its state in its own thread's BfsWorkspace,
+ * so any number of queries can run at once without locking.
+ *
+ * By default queries run on a fixed pool with one thread per available processor: a search is
+ * pure CPU work, and a long-lived thread reuses its workspace from one query to the next.
+ * newVirtualThreadExecutor() gives an executor that starts a virtual thread per query instead,
+ * on Java versions that have them; each of those threads allocates a fresh workspace.
+ *
+ * @spec.specfield graph : CsrGraph // the graph every query runs on
+ */
+public final class PathQueryService implements AutoCloseable {
+
+    // Abstraction Function: graph = this.graph
+    //
+    // Representation Invariant: graph != null and executor != null
+
+    private final CsrGraph graph;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+
+    /**
+     * Creates a service running queries on graph with a fixed pool of one thread per available
+     * processor, shut down by close().
+     *
+     * @param graph the graph to query
+     * @spec.requires graph != null and graph is not empty
+     */
+    public PathQueryService(CsrGraph graph) {
+        this(graph, newBoundedExecutor(Runtime.getRuntime().availableProcessors()), true);
+    }
+
+    /**
+     * Creates a service running queries on graph with the given executor.
+     * The executor stays owned by the caller; close() does not shut it down.
+     *
+     * @param graph the graph to query
+     * @param executor runs the queries
+     * @spec.requires graph != null and graph is not empty and executor != null
+     */
+    public PathQueryService(CsrGraph graph, ExecutorService executor) {
+        this(graph, executor, false);
+    }
+
+    private PathQueryService(CsrGraph graph, ExecutorService executor, boolean ownsExecutor) {
+        this.graph = graph;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        checkRep();
+    }
+
+    /**
+     * Returns a fixed pool of daemon threads, so a pool that is never shut down does not keep the
+     * JVM alive.
+     *
+     * @param threads number of threads in the pool
+     * @spec.requires threads &gt; 0
+     * @return a new executor with the given number of threads
+     */
+    public static ExecutorService newBoundedExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "path-query-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        return Executors.newFixedThreadPool(threads, factory);
+    }
+
+    /**
+     * Returns an executor that runs every task on a new virtual thread, if this Java version has
+     * virtual threads. It is looked up reflectively, so this class still builds and runs on
+     * versions without them.
+     *
+     * @return a new virtual thread per task executor, or null if virtual threads are not available
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the graph queries run on
+     */
+    public CsrGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Finds the path MarvelPaths.findBidirectionalPath(graph, u, v) finds, on the executor.
+     * If u or v is not in the graph, the future completes with an IllegalArgumentException.
+     *
+     * @param u starting node
+     * @param v destination node
+     * @spec.requires u != null and v != null and close() has not been called
+     * @return a future of the path from u to v of least lexicographical order, or of null if there is none
+     */
+    public CompletableFuture<LinkedList<DiGraph.LabeledEdge<String, String>>> findPath(String u, String v) {
+        return CompletableFuture.supplyAsync(() -> MarvelPaths.findBidirectionalPath(graph, u, v), executor);
+    }
+
+    /**
+     * Finds the paths MarvelPaths.findPaths(graph, u, targets) finds, on the executor.
+     * If u or some target is not in the graph, the future completes with an IllegalArgumentException.
+     *
+     * @param u starting node
+     * @param targets destination nodes, in the order their paths are wanted
+     * @spec.requires u != null and targets != null and close() has not been called
+     * @return a future of the paths from u to each target in order, null for any that cannot be reached
+     */
+    public CompletableFuture<List<LinkedList<DiGraph.LabeledEdge<String, String>>>> findPaths(
+            String u, Collection<String> targets) {
+        List<String> copy = new ArrayList<>(targets);
+        return CompletableFuture.supplyAsync(() -> MarvelPaths.findPaths(graph, u, copy), executor);
+    }
+
+    /**
+     * Shuts down the executor if this service created it; queries already submitted still complete.
+     * An executor given by the caller is left running.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Throws an exception if the representation invariant is violated.
+     */
+    private void checkRep() {
+        assert graph != null : "null graph";
+        assert executor != null : "null executor";
+    }
+}
@@ -0,0 +1,397 @@
+package marvel;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import graph.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * PathServer answers queries on one CsrGraph over HTTP, using the HTTP server built into the JDK.
+ * The graph, its NameIndex and a LandmarkOracle are set up once, when the server starts. Every
+ * answer is a JSON object.
+ *
+ *  GET  /path?from=A&amp;to=B      the path findBidirectionalPath finds: from, to, length (-1 if
+ *                                 there is no path) and path, a list of {from, to, book}, or null
+ *  GET  /distance?from=A&amp;to=B  from, to and distance, the number of steps (-1 if not connected)
+ *  GET  /lookup?q=text[&amp;limit=k] the names offered at the prompt for text: query, fuzzy (true when
+ *                                 nothing matched and the closest names are given) and matches
+ *  POST /batch                    one "A\tB" pair per line of the body, at most MAX_BATCH; results,
+ *                                 the answer /path gives for each pair, or {from, to, error}
+ *  GET  /metrics                  Metrics.snapshot()
+ *
+ * A name that is not in the graph gets status 404 and {"error": message}, a missing parameter or
+ * bad line 400, and the wrong method 405.
+ *
+ * Requests are handled on a bounded pool of long-lived threads. The graph is immutable and every
+ * search keeps its state in its own thread's workspace, so requests need no locking, and a thread
+ * reuses its graph-sized workspaces from one request to the next; a virtual thread per request would
+ * allocate them again for every request.
+ *
+ * The JDK server writes the headers and the body of an answer separately, so a client that keeps its
+ * connection alive waits out a delayed ack (about 40ms) on every request unless Nagle's algorithm is
+ * turned off with -Dsun.net.httpserver.nodelay=true. That property is only read when the server
+ * classes are first loaded, so it must be set on the command line or before the first server starts;
+ * MarvelPaths.main sets it for --serve.
+ *
+ * @spec.specfield graph : CsrGraph // the graph every query runs on
+ * @spec.specfield port : int // the port the server listens on
+ */
+public final class PathServer implements AutoCloseable {
+
+    /**
+     * Most pairs one /batch request may ask for.
+     */
+    public static final int MAX_BATCH = 1000;
+
+    // landmarks of the oracle /distance uses, and most names /lookup gives unless asked for more
+    private static final int LANDMARKS = 16;
+    private static final int DEFAULT_LIMIT = 20;
+
+    // threads of the pool, per processor; a request spends some of its time on the connection, so
+    // there are more threads than processors
+    private static final int THREADS_PER_PROCESSOR = 4;
+
+    // Abstraction Function: graph = this.graph, port = server.getAddress().getPort()
+    //
+    // Representation Invariant: no field is null, names and oracle were built from graph
+
+    private final CsrGraph graph;
+    private final NameIndex names;
+    private final LandmarkOracle oracle;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private PathServer(CsrGraph graph, HttpServer server, ExecutorService executor) {
+        this.graph = graph;
+        this.names = NameIndex.fromGraph(graph);
+        this.oracle = LandmarkOracle.build(graph, LANDMARKS);
+        this.server = server;
+        this.executor = executor;
+        checkRep();
+    }
+
+    /**
+     * Starts a server for graph on the given port of every local address.
+     *
+     * @param graph the graph to answer queries on
+     * @param port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     * @spec.requires graph != null and graph is not empty and 0 &lt;= port &lt;= 65535
+     * @return the running server
+     */
+    public static PathServer start(CsrGraph graph, int port) throws IOException {
+        ExecutorService executor = PathQueryService.newBoundedExecutor(
+                THREADS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors());
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        PathServer paths = new PathServer(graph, server, executor);
+        server.createContext("/path", exchange -> paths.handle(exchange, "GET", paths::path));
+        server.createContext("/distance", exchange -> paths.handle(exchange, "GET", paths::distance));
+        server.createContext("/lookup", exchange -> paths.handle(exchange, "GET", paths::lookup));
+        server.createContext("/batch", exchange -> paths.handle(exchange, "POST", paths::batch));
+        server.createContext("/metrics", exchange -> paths.handle(exchange, "GET", paths::metrics));
+        server.setExecutor(executor);
+        server.start();
+        return paths;
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the graph queries run on
+     */
+    public CsrGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Stops the server, closing open connections, and shuts down its executor.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    // an endpoint writes its JSON answer to out, throwing HttpError to fail
+    private interface Endpoint {
+        void answer(HttpExchange exchange, Map<String, String> query, StringBuilder out) throws IOException;
+    }
+
+    // an answer with a status other than 200
+    private static final class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private void handle(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+        int status = 200;
+        StringBuilder out = new StringBuilder();
+        try {
+            if (!exchange.getRequestMethod().equals(method)) {
+                exchange.getResponseHeaders().set("Allow", method);
+                throw new HttpError(405, "use " + method);
+            }
+            endpoint.answer(exchange, query(exchange), out);
+        } catch (HttpError e) {
+            status = e.status;
+            error(out, e.getMessage());
+        } catch (RuntimeException e) {
+            // a bug, not a bad request; answer anyway so the client is not left waiting
+            status = 500;
+            error(out, "internal error: " + e);
+        }
+        byte[] body = out.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream stream = exchange.getResponseBody()) {
+            stream.write(body);
+        }
+    }
+
+    private void path(HttpExchange exchange, Map<String, String> query, StringBuilder out) {
+        path(required(query, "from"), required(query, "to"), out);
+    }
+
+    private void path(String from, String to, StringBuilder out) {
+        known(from);
+        known(to);
+        pathJson(out, from, to, MarvelPaths.findBidirectionalPath(graph, from, to));
+    }
+
+    // appends the answer /path gives: from, to, length (-1 if path is null) and path
+    static void pathJson(StringBuilder out, String from, String to,
+                         List<DiGraph.LabeledEdge<String, String>> path) {
+        out.append("{\"from\":");
+        quote(out, from);
+        out.append(",\"to\":");
+        quote(out, to);
+        out.append(",\"length\":").append(path == null ? -1 : path.size());
+        out.append(",\"path\":");
+        if (path == null) {
+            out.append("null");
+        } else {
+            out.append('[');
+            for (DiGraph.LabeledEdge<String, String> edge : path) {
+                if (out.charAt(out.length() - 1) != '[') {
+                    out.append(',');
+                }
+                out.append("{\"from\":");
+                quote(out, edge.getFrom());
+                out.append(",\"to\":");
+                quote(out, edge.getTo());
+                out.append(",\"book\":");
+                quote(out, edge.getLabel());
+                out.append('}');
+            }
+            out.append(']');
+        }
+        out.append('}');
+    }
+
+    // appends the answer for a pair that failed: from, to and error
+    static void pairErrorJson(StringBuilder out, String from, String to, String message) {
+        out.append("{\"from\":");
+        quote(out, from);
+        out.append(",\"to\":");
+        quote(out, to);
+        out.append(",\"error\":");
+        quote(out, message);
+        out.append('}');
+    }
+
+    private void distance(HttpExchange exchange, Map<String, String> query, StringBuilder out) {
+        String from = required(query, "from");
+        String to = required(query, "to");
+        known(from);
+        known(to);
+        int distance = oracle.distance(graph, from, to);
+        out.append("{\"from\":");
+        quote(out, from);
+        out.append(",\"to\":");
+        quote(out, to);
+        out.append(",\"distance\":").append(distance).append('}');
+    }
+
+    // the same matches getInput offers at the prompt, most connected first, or the closest names
+    private void lookup(HttpExchange exchange, Map<String, String> query, StringBuilder out) {
+        String text = required(query, "q");
+        int limit = DEFAULT_LIMIT;
+        if (query.containsKey("limit")) {
+            try {
+                limit = Integer.parseInt(query.get("limit"));
+            } catch (NumberFormatException e) {
+                throw new HttpError(400, "limit must be a number");
+            }
+            if (limit < 0) {
+                throw new HttpError(400, "limit must not be negative");
+            }
+        }
+        List<String> matches = new ArrayList<>(names.lookup(text));
+        matches.sort(Comparator.comparingInt(names::degree).reversed());
+        boolean fuzzy = matches.isEmpty();
+        if (fuzzy) {
+            matches = names.fuzzyMatches(text, MarvelPaths.FUZZY_DISTANCE, MarvelPaths.FUZZY_MATCHES);
+        }
+        out.append("{\"query\":");
+        quote(out, text);
+        out.append(",\"fuzzy\":").append(fuzzy).append(",\"matches\":[");
+        for (int i = 0; i < Math.min(limit, matches.size()); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            quote(out, matches.get(i));
+        }
+        out.append("]}");
+    }
+
+    private void batch(HttpExchange exchange, Map<String, String> query, StringBuilder out) throws IOException {
+        List<String[]> pairs = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+        int lines = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lines++;
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] pair = line.split("\t", -1);
+            if (pair.length != 2) {
+                throw new HttpError(400, "line " + lines + " is not two names separated by a tab");
+            }
+            if (pairs.size() == MAX_BATCH) {
+                throw new HttpError(413, "at most " + MAX_BATCH + " pairs per batch");
+            }
+            pairs.add(pair);
+        }
+        out.append("{\"results\":[");
+        for (int i = 0; i < pairs.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            int start = out.length();
+            try {
+                path(pairs.get(i)[0], pairs.get(i)[1], out);
+            } catch (HttpError e) {
+                // one unknown name fails only its own pair
+                out.setLength(start);
+                pairErrorJson(out, pairs.get(i)[0], pairs.get(i)[1], e.getMessage());
+            }
+        }
+        out.append("]}");
+    }
+
+    private void metrics(HttpExchange exchange, Map<String, String> query, StringBuilder out) {
+        out.append('{');
+        for (Map.Entry<String, Long> entry : Metrics.snapshot().entrySet()) {
+            if (out.length() > 1) {
+                out.append(',');
+            }
+            quote(out, entry.getKey());
+            out.append(':').append(entry.getValue());
+        }
+        out.append('}');
+    }
+
+    // the decoded parameters of the query string, the last one winning when a name repeats
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return query;
+        }
+        for (String parameter : raw.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            String value = equals < 0 ? "" : parameter.substring(equals + 1);
+            try {
+                query.put(URLDecoder.decode(name, StandardCharsets.UTF_8.name()),
+                        URLDecoder.decode(value, StandardCharsets.UTF_8.name()));
+            } catch (IOException | IllegalArgumentException e) {
+                throw new HttpError(400, "bad query string");
+            }
+        }
+        return query;
+    }
+
+    // the searches would throw IllegalArgumentException for an unknown name, but so might a bug
+    private void known(String name) {
+        if (graph.id(name) < 0) {
+            throw new HttpError(404, name + " is not in the graph.");
+        }
+    }
+
+    private static String required(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null) {
+            throw new HttpError(400, "missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static void error(StringBuilder out, String message) {
+        out.setLength(0);
+        out.append("{\"error\":");
+        quote(out, message);
+        out.append('}');
+    }
+
+    // appends s as a JSON string
+    static void quote(StringBuilder out, String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Throws an exception if the representation invariant is violated.
+     */
+    private void checkRep() {
+        assert graph != null && names != null && oracle != null : "null fields";
+        assert server != null && executor != null : "null server";
+    }
+}
@@ -0,0 +1,61 @@
+package marvel;
+
+/**
+ * SearchStats collects counters from path searches, so different search strategies can be
+ * compared on the same queries. A search adds to the counters once, when it finishes.
+ * Searches of a CsrGraph walk its links, so there each link looked at counts as one edge.
+ *
+ * @spec.specfield searches : int // number of searches recorded
+ * @spec.specfield nodesVisited : long // total nodes discovered by those searches
+ * @spec.specfield edgesScanned : long // total edges looked at by those searches
+ */
+public final class SearchStats {
+
+    // Abstraction Function: each specfield is the field of the same name
+    //
+    // Representation Invariant: searches >= 0, nodesVisited >= 0, edgesScanned >= 0
+
+    private int searches;
+    private long nodesVisited;
+    private long edgesScanned;
+
+    /**
+     * @return the number of searches recorded
+     */
+    public int searches() {
+        return searches;
+    }
+
+    /**
+     * @return the total number of nodes discovered by the recorded searches
+     */
+    public long nodesVisited() {
+        return nodesVisited;
+    }
+
+    /**
+     * @return the total number of edges looked at by the recorded searches
+     */
+    public long edgesScanned() {
+        return edgesScanned;
+    }
+
+    /**
+     * Records one finished search.
+     *
+     * @param visited number of nodes the search discovered
+     * @param scanned number of edges the search looked at
+     * @spec.modifies this
+     * @spec.effects adds one search and its counts to this
+     */
+    void record(long visited, long scanned) {
+        searches++;
+        nodesVisited += visited;
+        edgesScanned += scanned;
+    }
+
+    @Override
+    public String toString() {
+        return searches + " searches, " + nodesVisited + " nodes visited, " + edgesScanned + " edges scanned";
+    }
+}
@@ -0,0 +1,67 @@
+package marvel;
+
+/**
+ * SharedTail keeps track of how much of some append-only arrays has been handed out, when the arrays
+ * are shared by a line of immutable versions of a structure, each of which only ever looks at the part
+ * that was in use when it was made.
+ * A version may append to the arrays in place, without copying them, only if nothing was appended past
+ * its own part yet: it claims the slots after its part, and the claim fails if some other version got
+ * there first, in which case it has to copy its part into new arrays instead.
+ *
+ * @spec.specfield used : int // the number of slots of the arrays claimed so far
+ */
+final class SharedTail {
+
+    // Abstraction Function: used = used
+    //
+    // Representation Invariant: used >= 0
+
+    private int used;
+
+    /**
+     * Creates a tail for arrays of which the first used slots are in use.
+     *
+     * @param used number of slots in use
+     * @spec.requires used &gt;= 0
+     */
+    SharedTail(int used) {
+        this.used = used;
+        checkRep();
+    }
+
+    /**
+     * Claims the slots from to to, if nothing past from was claimed yet.
+     *
+     * @param from one past the last slot the caller looks at
+     * @param to one past the last slot the caller is going to write
+     * @spec.requires from &lt;= to
+     * @spec.modifies this
+     * @spec.effects sets used to to if it was from
+     * @return true iff used was from, so the slots from to to are the caller's alone to write
+     */
+    synchronized boolean claim(int from, int to) {
+        if (used != from) {
+            return false;
+        }
+        used = to;
+        checkRep();
+        return true;
+    }
+
+    /**
+     * @param size number of slots that new arrays must hold
+     * @spec.requires size &gt;= 0
+     * @return the length to give the new arrays: half as much again as size, so that the copies made
+     *         whenever the arrays fill up cost a constant amount per slot appended
+     */
+    static int capacity(int size) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, size + (size >> 1) + 16L);
+    }
+
+    /**
+     * Throws an exception if the representation invariant is violated.
+     */
+    private void checkRep() {
+        assert used >= 0 : "negative tail";
+    }
+}
@@ -0,0 +1,132 @@
+package marvel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * SymbolTable hands out a dense int code for every distinct name it is given, decoding each
+ * name to a String only the first time it is seen. Names can be interned straight from the
+ * byte ranges MarvelParser.parseRows produces, so repeated names cost a hash lookup and nothing else.
+ *
+ * @spec.specfield names : sequence of String // names in the order they were first interned
+ *
+ * Abstract Invariant:
+ *  names contains no duplicates
+ */
+final class SymbolTable {
+
+    // Abstraction Function:
+    //  names = [names[0], ..., names[size - 1]]
+    //
+    // Representation Invariant:
+    //  slots.length is a power of two and size < slots.length / 2
+    //  each slot is 0 (empty) or id + 1 for a distinct 0 <= id < size
+    //  keys[id] is the UTF-8 encoding of names[id] and hashes[id] == hash(keys[id])
+    //  every id can be found by probing from slot hashes[id] & (slots.length - 1)
+
+    private int[] slots = new int[1024];
+    private int[] hashes = new int[256];
+    private byte[][] keys = new byte[256][];
+    private String[] names = new String[256];
+    private int size = 0;
+
+    /**
+     * @return the number of distinct names interned so far
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param id code of a name
+     * @spec.requires 0 &lt;= id &lt; size()
+     * @return the name with the given code
+     */
+    String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return a new array holding the names, indexed by code
+     */
+    String[] names() {
+        return Arrays.copyOf(names, size);
+    }
+
+    /**
+     * Interns the UTF-8 name held in data[start, end).
+     *
+     * @param data buffer holding the name
+     * @param start index of the first byte
+     * @param end index one past the last byte
+     * @spec.requires 0 &lt;= start &lt;= end &lt;= data.limit()
+     * @spec.modifies this
+     * @spec.effects adds the name to this if it is not already here
+     * @return the code of the name
+     */
+    int intern(ByteBuffer data, int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + data.get(i);
+        }
+        hash = mix(hash);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                byte[] key = new byte[end - start];
+                for (int i = 0; i < key.length; i++) {
+                    key[i] = data.get(start + i);
+                }
+                return add(slot, hash, key);
+            }
+            if (hashes[id] == hash && matches(keys[id], data, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    private static boolean matches(byte[] key, ByteBuffer data, int start, int end) {
+        if (key.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != data.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // stores key under the next code at slot, growing the table when it gets half full
+    private int add(int slot, int hash, byte[] key) {
+        if (size == names.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+            names = Arrays.copyOf(names, size * 2);
+        }
+        int id = size++;
+        hashes[id] = hash;
+        keys[id] = key;
+        names[id] = new String(key, StandardCharsets.UTF_8);
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for (int i = 0; i < size; i++) {
+                int s = hashes[i] & mask;
+                while (slots[s] != 0) {
+                    s = (s + 1) & mask;
+                }
+                slots[s] = i + 1;
+            }
+        }
+        return id;
+    }
+
+    // spreads the high bits down so that masking keeps them, as HashMap does
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
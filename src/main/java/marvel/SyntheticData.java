@@ -0,0 +1,177 @@
+package marvel;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Utility class to write synthetic datasets shaped like marvel.tsv, in the same "hero\tbook" TSV
+ * format MarvelParser reads, for measuring how loading and searching scale with the size of the data.
+ *
+ * A dataset is fixed by its number of rows and a seed. It has one character per ROWS_PER_HERO rows
+ * and as many books as it takes to fill the rows. Book sizes have a power-law tail, as in marvel.tsv:
+ * most books have a handful of characters and a few have a hundred or more.
+ * Characters are grouped into series, teams that keep appearing together, so like in marvel.tsv many
+ * books are shared by the same pairs. A book belongs to one series and draws most of its characters
+ * from it; the rest are crossovers drawn from all characters. Both the series and the characters are
+ * drawn with power laws, so a few series have most of the books and a few hub characters appear in a
+ * large share of them.
+ * Rows are written a book at a time as they are drawn, so a dataset of any size takes constant memory
+ * besides one int per character.
+ */
+public final class SyntheticData {
+
+    /**
+     * Rows per character, about that of marvel.tsv (96662 rows, 6445 characters).
+     */
+    public static final int ROWS_PER_HERO = 15;
+
+    // book sizes are ceil(BOOK_SCALE * ((1 - u)^(-1 / BOOK_TAIL) - 1)) for uniform u, a Pareto
+    // distribution shifted to start at 1, with a mean of about BOOK_SCALE / (BOOK_TAIL - 1) + 1/2
+    private static final double BOOK_TAIL = 6.0;
+    private static final double BOOK_SCALE = 35.0;
+    private static final int MAX_BOOK_SIZE = 150;
+
+    // characters per series, and the share of the characters of a book drawn from all characters
+    private static final int SERIES_SIZE = 30;
+    private static final double CROSSOVER = 0.08;
+
+    // the series or character of rank r (0 the most popular) is drawn with weight about (r + 1)^-skew
+    private static final double SERIES_SKEW = 0.9;
+    private static final double HERO_SKEW = 0.9;
+
+    // redraws of a character already in the book before falling back to a uniform draw
+    private static final int REDRAWS = 16;
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Writes the dataset with the given rows and seed to file, replacing it if it exists.
+     *
+     * @param file to write
+     * @param rows number of rows after the header
+     * @param seed of the random choices
+     * @throws IOException if the file cannot be written
+     * @spec.requires file != null and rows &gt;= 0
+     */
+    public static void write(Path file, long rows, long seed) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            write(out, rows, seed);
+        }
+    }
+
+    /**
+     * Writes the dataset with the given rows and seed to out. The same rows and seed always give the
+     * same text. out is not closed.
+     *
+     * @param out to write to
+     * @param rows number of rows after the header
+     * @param seed of the random choices
+     * @throws IOException if out cannot be written
+     * @spec.requires out != null and rows &gt;= 0
+     */
+    public static void write(Writer out, long rows, long seed) throws IOException {
+        Writer writer = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 16);
+        writer.write("hero\tbook\n");
+        int heroes = (int) Math.min(Integer.MAX_VALUE, Math.max(1, rows / ROWS_PER_HERO));
+        Random random = new Random(seed);
+
+        // General idea
+        // draw a book size and a series, then that many distinct characters by popularity rank, from
+        // the series or as crossovers, and write a row for each. series are runs of ranks, so the most
+        // popular series holds the hubs. ranks are mapped to characters through a seeded shuffle, so
+        // the hubs are spread over the names instead of all sorting first
+        int[] heroOfRank = new int[heroes];
+        for (int i = 0; i < heroes; i++) {
+            int j = random.nextInt(i + 1);
+            heroOfRank[i] = heroOfRank[j];
+            heroOfRank[j] = i;
+        }
+        int[] cast = new int[Math.min(MAX_BOOK_SIZE, heroes)];
+        StringBuilder line = new StringBuilder();
+        long written = 0;
+        for (int book = 0; written < rows; book++) {
+            int size = (int) Math.min(Math.min(bookSize(random), cast.length), rows - written);
+            int series = powerLaw(random, (heroes + SERIES_SIZE - 1) / SERIES_SIZE, SERIES_SKEW);
+            int first = series * SERIES_SIZE;
+            int members = Math.min(SERIES_SIZE, heroes - first);
+            for (int i = 0; i < size; i++) {
+                // a repeat is drawn again, and after REDRAWS tries drawn uniformly, which ends soon
+                // since a book holds at most a small share of the characters or all of them
+                int hero = -1;
+                for (int attempt = 0; hero < 0 || contains(cast, i, hero); attempt++) {
+                    if (attempt >= REDRAWS) {
+                        hero = random.nextInt(heroes);
+                    } else if (i >= members || random.nextDouble() < CROSSOVER) {
+                        hero = heroOfRank[powerLaw(random, heroes, HERO_SKEW)];
+                    } else {
+                        hero = heroOfRank[first + powerLaw(random, members, HERO_SKEW)];
+                    }
+                }
+                cast[i] = hero;
+                line.setLength(0);
+                line.append("HERO ");
+                pad(line, hero);
+                line.append("\tBOOK ");
+                pad(line, book);
+                line.append('\n');
+                writer.append(line);
+            }
+            written += size;
+        }
+        writer.flush();
+    }
+
+    private static int bookSize(Random random) {
+        double u = random.nextDouble();
+        double size = Math.ceil(BOOK_SCALE * (Math.pow(1 - u, -1 / BOOK_TAIL) - 1));
+        return (int) Math.max(1, Math.min(size, MAX_BOOK_SIZE));
+    }
+
+    // a rank from 0 to n - 1: the inverse of the distribution function of a continuous power law with
+    // density x^-skew on [1, n + 1), rounded down and shifted to start at 0
+    private static int powerLaw(Random random, int n, double skew) {
+        double top = Math.pow(n + 1, 1 - skew) - 1;
+        double x = Math.pow(1 + random.nextDouble() * top, 1 / (1 - skew));
+        return Math.min(n - 1, (int) x - 1);
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // zero-pads to 8 digits, so names sort in numeric order
+    private static void pad(StringBuilder line, int value) {
+        String digits = Integer.toString(value);
+        for (int i = digits.length(); i < 8; i++) {
+            line.append('0');
+        }
+        line.append(digits);
+    }
+
+    /**
+     * Writes a dataset from the command line: the file, the number of rows and an optional seed.
+     *
+     * @param args file, rows and seed (0 if left out)
+     * @throws IOException if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("usage: SyntheticData <file> <rows> [seed]");
+            System.exit(2);
+        }
+        long seed = args.length == 3 ? Long.parseLong(args[2]) : 0;
+        write(Paths.get(args[0]), Long.parseLong(args[1]), seed);
+    }
+}
@@ -0,0 +1,84 @@
+package marvel;
+
+/**
+ * UnionFind is a disjoint-set forest over the ints 0 to n - 1, used to find the connected
+ * components of a graph in one pass over its books or edges.
+ * Unions are by size and finds halve the path they walk, so any sequence of operations runs in
+ * nearly linear time.
+ */
+final class UnionFind {
+
+    // parent[i] == i for the root of a set; size[r] is only meaningful for a root r
+    private final int[] parent;
+    private final int[] size;
+
+    /**
+     * Creates n sets of one element each.
+     *
+     * @param n number of elements
+     * @spec.requires n &gt;= 0
+     */
+    UnionFind(int n) {
+        parent = new int[n];
+        size = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            size[i] = 1;
+        }
+    }
+
+    /**
+     * @param i an element
+     * @spec.requires 0 &lt;= i &lt; n
+     * @return the root of the set containing i
+     */
+    int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Merges the sets containing a and b.
+     *
+     * @param a an element
+     * @param b an element
+     * @spec.requires 0 &lt;= a, b &lt; n
+     */
+    void union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra == rb) {
+            return;
+        }
+        if (size[ra] < size[rb]) {
+            int swap = ra;
+            ra = rb;
+            rb = swap;
+        }
+        parent[rb] = ra;
+        size[ra] += size[rb];
+    }
+
+    /**
+     * Numbers the sets 0, 1, ... in the order of their smallest element.
+     *
+     * @return an array holding the number of the set of each element
+     */
+    int[] labels() {
+        int[] labels = new int[parent.length];
+        int[] rootLabel = new int[parent.length];
+        int next = 0;
+        for (int i = 0; i < parent.length; i++) {
+            // rootLabel holds the number of a set plus one, so 0 means not numbered yet
+            int root = find(i);
+            if (rootLabel[root] == 0) {
+                rootLabel[root] = ++next;
+            }
+            labels[i] = rootLabel[root] - 1;
+        }
+        return labels;
+    }
+}
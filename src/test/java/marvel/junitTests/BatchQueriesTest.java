@@ -0,0 +1,173 @@
+package marvel.junitTests;
+
+import graph.*;
+import marvel.BatchQueries;
+import marvel.CsrGraph;
+import marvel.MarvelPaths;
+import marvel.PathQueryService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.LinkedList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchQueriesTest {
+
+    private CsrGraph graph;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        executor = PathQueryService.newBoundedExecutor(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testTsvInInputOrder() throws IOException {
+        StringBuilder in = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (String u : graph.listNodes()) {
+            for (String v : graph.listNodes()) {
+                in.append(u).append('\t').append(v).append('\n');
+                LinkedList<DiGraph.LabeledEdge<String, String>> path = MarvelPaths.findBidirectionalPath(graph, u, v);
+                expected.append(u).append('\t').append(v).append('\t').append(path == null ? -1 : path.size());
+                if (path != null) {
+                    for (DiGraph.LabeledEdge<String, String> edge : path) {
+                        expected.append('\t').append(edge.getLabel()).append('\t').append(edge.getTo());
+                    }
+                }
+                expected.append('\n');
+            }
+        }
+        for (int window : new int[] {1, 3, 1000}) {
+            StringWriter out = new StringWriter();
+            long answered = BatchQueries.run(graph, new BufferedReader(new StringReader(in.toString())), out,
+                    BatchQueries.Format.TSV, executor, window);
+            assertEquals((long) graph.size() * graph.size(), answered);
+            assertEquals(expected.toString(), out.toString());
+        }
+    }
+
+    @Test
+    public void testJsonAndErrors() throws IOException {
+        String in = "John Blackbeard\tPete De\n\nNobody\tPete De\nJohn Blackbeard\n";
+        StringWriter out = new StringWriter();
+        assertEquals(3, BatchQueries.run(graph, new BufferedReader(new StringReader(in)), out,
+                BatchQueries.Format.JSON, executor, 2));
+        assertEquals("{\"from\":\"John Blackbeard\",\"to\":\"Pete De\",\"length\":1,\"path\":["
+                + "{\"from\":\"John Blackbeard\",\"to\":\"Pete De\",\"book\":\"PPS\"}]}\n"
+                + "{\"from\":\"Nobody\",\"to\":\"Pete De\",\"error\":\"Nobody is not in the graph.\"}\n"
+                + "{\"from\":\"\",\"to\":\"\",\"error\":\"line 4 is not two names separated by a tab\"}\n",
+                out.toString());
+
+        out = new StringWriter();
+        BatchQueries.run(graph, new BufferedReader(new StringReader(in)), out, BatchQueries.Format.TSV, executor, 2);
+        assertEquals("John Blackbeard\tPete De\t1\tPPS\tPete De\n"
+                + "Nobody\tPete De\terror\tNobody is not in the graph.\n"
+                + "\t\terror\tline 4 is not two names separated by a tab\n", out.toString());
+    }
+
+    @Test
+    public void testReadsAtMostWindowAhead() throws IOException {
+        int queries = 5000;
+        int window = 8;
+        AtomicInteger read = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+        BufferedReader in = new BufferedReader(new StringReader("")) {
+            @Override
+            public String readLine() {
+                if (read.get() == queries) {
+                    return null;
+                }
+                read.incrementAndGet();
+                return "John Blackbeard\tPete De";
+            }
+        };
+        Writer out = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+                // the line just read may be waiting for this one to be written, but no more than window
+                assertTrue(read.get() - written.incrementAndGet() <= window);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        assertEquals(queries, BatchQueries.run(graph, in, out, BatchQueries.Format.TSV, executor, window));
+        assertEquals(queries, written.get());
+    }
+
+    @Test
+    public void testWritesBeforeMoreInput() throws Exception {
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        BlockingQueue<String> flushed = new LinkedBlockingQueue<>();
+        BufferedReader in = new BufferedReader(new StringReader("")) {
+            @Override
+            public String readLine() throws IOException {
+                try {
+                    String line = lines.take();
+                    return line.equals("EOF") ? null : line;
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        };
+        StringWriter text = new StringWriter();
+        Writer out = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+                text.write(buffer, offset, length);
+            }
+
+            @Override
+            public void flush() {
+                flushed.add(text.toString());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> answered = reader.submit(() ->
+                    BatchQueries.run(graph, in, out, BatchQueries.Format.TSV, executor, 16));
+            lines.add("John Blackbeard\tPete De");
+            // the reader is now waiting for a second line, which only comes once the first answer is out
+            assertEquals("John Blackbeard\tPete De\t1\tPPS\tPete De\n", flushed.poll(10, TimeUnit.SECONDS));
+            lines.add("Nobody\tPete De");
+            assertEquals("John Blackbeard\tPete De\t1\tPPS\tPete De\n"
+                    + "Nobody\tPete De\terror\tNobody is not in the graph.\n", flushed.poll(10, TimeUnit.SECONDS));
+            lines.add("EOF");
+            assertEquals(2L, (long) answered.get(10, TimeUnit.SECONDS));
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+}
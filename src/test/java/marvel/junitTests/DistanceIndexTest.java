@@ -0,0 +1,131 @@
+package marvel.junitTests;
+
+import graph.*;
+import marvel.CsrGraph;
+import marvel.DistanceIndex;
+import marvel.LiveGraph;
+import marvel.MarvelParser;
+import marvel.MarvelPaths;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DistanceIndexTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("marvel", ".pll");
+        Files.delete(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testDistanceSameAsSearch() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        DistanceIndex index = DistanceIndex.build(graph);
+        for (String u : graph.listNodes()) {
+            for (String v : graph.listNodes()) {
+                assertEquals(u + " to " + v, searchDistance(graph, u, v), index.distance(graph, u, v));
+            }
+        }
+    }
+
+    @Test
+    public void testDistanceSameAsSearchMarvel() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("marvel.tsv");
+        DistanceIndex index = DistanceIndex.build(graph);
+        Random random = new Random(331);
+        for (int i = 0; i < 200; i++) {
+            String u = graph.name(random.nextInt(graph.size()));
+            String v = graph.name(random.nextInt(graph.size()));
+            assertEquals(u + " to " + v, searchDistance(graph, u, v), index.distance(graph, u, v));
+        }
+    }
+
+    @Test
+    public void testNotConnected() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy2.tsv");
+        DistanceIndex index = DistanceIndex.build(graph);
+        assertEquals(-1, index.distance(graph, "Bennet, James", "Bugala"));
+        assertEquals(0, index.distance(graph, "Bugala", "Bugala"));
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        DistanceIndex index = DistanceIndex.build(graph);
+        index.write(file, 42);
+        DistanceIndex mapped = DistanceIndex.read(file, 42);
+        assertEquals(index.entryCount(), mapped.entryCount());
+        assertEquals(index.report(), mapped.report());
+        for (String u : graph.listNodes()) {
+            for (String v : graph.listNodes()) {
+                assertEquals(index.distance(graph, u, v), mapped.distance(graph, u, v));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadStale() throws IOException {
+        DistanceIndex.build(MarvelPaths.loadCompactGraph("dummy3.tsv")).write(file, 42);
+        DistanceIndex.read(file, 43);
+    }
+
+    @Test
+    public void testLoadDistanceIndexWritesFile() throws IOException {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        DistanceIndex index = MarvelPaths.loadDistanceIndex("dummy3.tsv", graph, file);
+        assertTrue(Files.exists(file));
+        DistanceIndex mapped = DistanceIndex.read(file, MarvelParser.stamp("dummy3.tsv"));
+        assertEquals(index.entryCount(), mapped.entryCount());
+        assertEquals(index.entryCount(), MarvelPaths.loadDistanceIndex("dummy3.tsv", graph, file).entryCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAppendedGraph() {
+        LiveGraph live = LiveGraph.load("dummy3.tsv");
+        DistanceIndex index = DistanceIndex.build(live.graph());
+        CsrGraph after = live.append(Collections.singletonList(
+                new AbstractMap.SimpleEntry<>("John Blackbeard", "PPS 12")));
+        index.distance(after, "John Blackbeard", "Sir John Long");
+    }
+
+    @Test
+    public void testLoadDistanceIndexRebuildsForAppendedGraph() {
+        LiveGraph live = LiveGraph.load("dummy3.tsv");
+        MarvelPaths.loadDistanceIndex("dummy3.tsv", live.graph(), file);
+        CsrGraph after = live.append(Collections.singletonList(
+                new AbstractMap.SimpleEntry<>("John Blackbeard", "PPS 12")));
+        DistanceIndex index = MarvelPaths.loadDistanceIndex("dummy3.tsv", after, file);
+        assertTrue(index.isFor(after));
+        assertEquals(1, index.distance(after, "John Blackbeard", "Sir John Long"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonExistentNode() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy2.tsv");
+        DistanceIndex.build(graph).distance(graph, graph.name(0), "dummy");
+    }
+
+    private static int searchDistance(CsrGraph graph, String u, String v) {
+        List<DiGraph.LabeledEdge<String, String>> path = MarvelPaths.findCompactPath(graph, u, v);
+        return path == null ? -1 : path.size();
+    }
+}
@@ -0,0 +1,123 @@
+package marvel.junitTests;
+
+import marvel.BookMembership;
+import marvel.CsrGraph;
+import marvel.GraphSnapshot;
+import marvel.LiveGraph;
+import marvel.MarvelParser;
+import marvel.MarvelPaths;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static marvel.junitTests.TestGraphs.assertSameGraph;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GraphSnapshotTest {
+
+    private Path snapshot;
+
+    @Before
+    public void setUp() throws IOException {
+        snapshot = Files.createTempFile("marvel", ".snapshot");
+        Files.delete(snapshot);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(snapshot);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        GraphSnapshot.write(graph, snapshot, 42);
+        assertSameGraph(graph, GraphSnapshot.read(snapshot, 42));
+    }
+
+    @Test
+    public void testRoundTripAppended() throws IOException {
+        LiveGraph live = LiveGraph.load("dummy3.tsv");
+        CsrGraph graph = live.append(Arrays.asList(
+                new AbstractMap.SimpleEntry<>("Aaron", "ZZZ"),
+                new AbstractMap.SimpleEntry<>("John Blackbeard", "ZZZ"),
+                new AbstractMap.SimpleEntry<>("Aaron", "AAA")));
+        GraphSnapshot.write(graph, snapshot, 42);
+        CsrGraph read = GraphSnapshot.read(snapshot, 42);
+        assertSameGraph(graph, read);
+        assertEquals(0, read.id("Aaron"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadStale() throws IOException {
+        GraphSnapshot.write(MarvelPaths.loadCompactGraph("dummy3.tsv"), snapshot, 42);
+        GraphSnapshot.read(snapshot, 43);
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadCorrupt() throws IOException {
+        GraphSnapshot.write(MarvelPaths.loadCompactGraph("dummy3.tsv"), snapshot, 42);
+        corrupt(snapshot);
+        GraphSnapshot.read(snapshot, 42);
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadTruncated() throws IOException {
+        GraphSnapshot.write(MarvelPaths.loadCompactGraph("dummy3.tsv"), snapshot, 42);
+        try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "rw")) {
+            file.setLength(file.length() - 1);
+        }
+        GraphSnapshot.read(snapshot, 42);
+    }
+
+    @Test
+    public void testExtendReadGraph() throws IOException {
+        BookMembership before = MarvelParser.parseMembership("dummy3.tsv");
+        GraphSnapshot.write(CsrGraph.fromMembership(before), snapshot, 42);
+        CsrGraph read = GraphSnapshot.read(snapshot, 42);
+        assertSameGraph(read, read.extend(before, before.withRows(Collections.singletonList(
+                new AbstractMap.SimpleEntry<>("John Blackbeard", "PPS")))));
+        BookMembership after = before.withRows(Arrays.asList(
+                new AbstractMap.SimpleEntry<>("Aaron", "PPS"),
+                new AbstractMap.SimpleEntry<>("John Blackbeard", "ZZZ"),
+                new AbstractMap.SimpleEntry<>("Pete De", "ZZZ")));
+        assertSameGraph(CsrGraph.fromMembership(after), read.extend(before, after));
+    }
+
+    @Test
+    public void testLoadWritesSnapshot() throws IOException {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy2.tsv", snapshot);
+        assertTrue(Files.exists(snapshot));
+        assertSameGraph(graph, GraphSnapshot.read(snapshot, MarvelParser.stamp("dummy2.tsv")));
+    }
+
+    @Test
+    public void testLoadFallsBackWhenStaleOrCorrupt() throws IOException {
+        CsrGraph expected = MarvelPaths.loadCompactGraph("dummy2.tsv");
+        GraphSnapshot.write(MarvelPaths.loadCompactGraph("dummy3.tsv"), snapshot, MarvelParser.stamp("dummy3.tsv"));
+        assertSameGraph(expected, MarvelPaths.loadCompactGraph("dummy2.tsv", snapshot));
+        corrupt(snapshot);
+        assertSameGraph(expected, MarvelPaths.loadCompactGraph("dummy2.tsv", snapshot));
+        assertSameGraph(expected, GraphSnapshot.read(snapshot, MarvelParser.stamp("dummy2.tsv")));
+    }
+
+    // flips a byte in the middle of the payload
+    private static void corrupt(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            long middle = file.length() / 2;
+            file.seek(middle);
+            int b = file.read();
+            file.seek(middle);
+            file.write(b ^ 0xff);
+        }
+    }
+}
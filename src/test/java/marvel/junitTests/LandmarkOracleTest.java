@@ -0,0 +1,119 @@
+package marvel.junitTests;
+
+import graph.*;
+import marvel.CsrGraph;
+import marvel.LandmarkOracle;
+import marvel.LiveGraph;
+import marvel.MarvelPaths;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LandmarkOracleTest {
+
+    @Test
+    public void testDistanceSameAsSearch() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        LandmarkOracle oracle = LandmarkOracle.build(graph, 2);
+        for (String u : graph.listNodes()) {
+            for (String v : graph.listNodes()) {
+                assertBounds(graph, oracle, u, v);
+            }
+        }
+    }
+
+    @Test
+    public void testDistanceSameAsSearchMarvel() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("marvel.tsv");
+        LandmarkOracle oracle = LandmarkOracle.build(graph, 8);
+        Random random = new Random(331);
+        for (int i = 0; i < 200; i++) {
+            assertBounds(graph, oracle, graph.name(random.nextInt(graph.size())),
+                    graph.name(random.nextInt(graph.size())));
+        }
+    }
+
+    @Test
+    public void testNotConnected() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy2.tsv");
+        LandmarkOracle oracle = LandmarkOracle.build(graph, 1);
+        assertEquals(-1, oracle.distance(graph, "Bennet, James", "Bugala"));
+        assertEquals(-1, oracle.upperBound(graph, "Bennet, James", "Bugala"));
+        // the only landmark is in the big component, so it says nothing about the others
+        assertEquals(0, oracle.distance(graph, "Bugala", "Bugala"));
+    }
+
+    @Test
+    public void testLandmarksHaveMostNeighbors() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        List<String> landmarks = LandmarkOracle.build(graph, 3).landmarks();
+        assertEquals(3, landmarks.size());
+        int least = Integer.MAX_VALUE;
+        for (String landmark : landmarks) {
+            least = Math.min(least, graph.degree(graph.id(landmark)));
+        }
+        for (int n = 0; n < graph.size(); n++) {
+            assertTrue(landmarks.contains(graph.name(n)) || graph.degree(n) <= least);
+        }
+        assertEquals(Arrays.asList("Pete De"), LandmarkOracle.build(graph, Arrays.asList("Pete De")).landmarks());
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        LandmarkOracle oracle = LandmarkOracle.build(graph, 2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(oracle);
+        }
+        LandmarkOracle copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (LandmarkOracle) in.readObject();
+        }
+        assertEquals(oracle.landmarks(), copy.landmarks());
+        for (String u : graph.listNodes()) {
+            for (String v : graph.listNodes()) {
+                assertEquals(oracle.upperBound(graph, u, v), copy.upperBound(graph, u, v));
+                assertEquals(oracle.lowerBound(graph, u, v), copy.lowerBound(graph, u, v));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAppendedGraph() {
+        LiveGraph live = LiveGraph.load("dummy3.tsv");
+        LandmarkOracle oracle = LandmarkOracle.build(live.graph(), 2);
+        CsrGraph after = live.append(Collections.singletonList(
+                new AbstractMap.SimpleEntry<>("John Blackbeard", "PPS 12")));
+        oracle.distance(after, "John Blackbeard", "Sir John Long");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonExistentNode() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy2.tsv");
+        LandmarkOracle.build(graph, 1).distance(graph, graph.name(0), "dummy");
+    }
+
+    private static void assertBounds(CsrGraph graph, LandmarkOracle oracle, String u, String v) {
+        List<DiGraph.LabeledEdge<String, String>> path = MarvelPaths.findCompactPath(graph, u, v);
+        int expected = path == null ? -1 : path.size();
+        assertEquals(u + " to " + v, expected, oracle.distance(graph, u, v));
+        if (expected >= 0) {
+            assertTrue(oracle.lowerBound(graph, u, v) <= expected);
+            int upper = oracle.upperBound(graph, u, v);
+            assertTrue(upper < 0 || upper >= expected);
+        }
+    }
+}
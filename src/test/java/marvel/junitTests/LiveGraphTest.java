@@ -0,0 +1,174 @@
+package marvel.junitTests;
+
+import graph.*;
+import marvel.BookMembership;
+import marvel.CsrGraph;
+import marvel.LiveGraph;
+import marvel.MarvelParser;
+import marvel.MarvelPaths;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static marvel.junitTests.TestGraphs.assertSameGraph;
+import static marvel.junitTests.TestPaths.pathToString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LiveGraphTest {
+
+    @Test
+    public void testAppendSameAsFullBuild() {
+        List<Map.Entry<String, String>> rows = rows("marvel.tsv");
+        Collections.shuffle(rows, new Random(331));
+        int split = rows.size() - rows.size() / 100;
+        BookMembership base = MarvelParser.parseMembership("dummy2.tsv");
+        LiveGraph live = new LiveGraph(base.withRows(rows.subList(0, split)));
+        CsrGraph before = live.graph();
+        CsrGraph after = live.append(rows.subList(split, rows.size()));
+
+        assertTrue(before.version() != after.version());
+        assertTrue(live.graph() == after);
+        assertSameGraph(CsrGraph.fromMembership(base.withRows(rows)), after);
+        assertSameGraph(CsrGraph.fromMembership(live.membership()), after);
+    }
+
+    @Test
+    public void testAppendNewNamesKeepsIds() {
+        LiveGraph live = LiveGraph.load("dummy3.tsv");
+        CsrGraph before = live.graph();
+        List<Map.Entry<String, String>> rows = Arrays.asList(
+                new AbstractMap.SimpleEntry<>("Aaron", "PPS"),
+                new AbstractMap.SimpleEntry<>("Zed", "AAA"),
+                new AbstractMap.SimpleEntry<>("Pete De", "AAA"),
+                new AbstractMap.SimpleEntry<>("Pete De", "PPS"));
+        CsrGraph after = live.append(rows);
+        assertEquals(before.size() + 2, after.size());
+        assertEquals(before.labelCount() + 1, after.labelCount());
+        for (String name : before.listNodes()) {
+            assertEquals(before.id(name), after.id(name));
+        }
+        assertEquals(before.size(), after.id("Aaron"));
+        assertEquals(before.size() + 1, after.id("Zed"));
+        assertEquals(0, after.rank(after.id("Aaron")));
+        assertEquals("Aaron", after.listNodes().get(0));
+        assertSameGraph(CsrGraph.fromMembership(live.membership()), after);
+        assertSameGraph(CsrGraph.fromMembership(MarvelParser.parseMembership("dummy3.tsv").withRows(rows)), after);
+        assertEquals(Arrays.asList("PPS"), after.sharedLabels("Aaron", "John Blackbeard"));
+        assertEquals(2, MarvelPaths.findCompactPath(after, "Aaron", "Zed").size());
+        // the old graph is untouched
+        assertEquals(-1, before.id("Aaron"));
+    }
+
+    @Test
+    public void testAppendStream() throws Exception {
+        LiveGraph live = LiveGraph.load("dummy2.tsv");
+        String delta = "hero\tbook\nBugala\tNEW\n3G4\tNEW\n";
+        CsrGraph after = live.append(new ByteArrayInputStream(delta.getBytes(StandardCharsets.UTF_8)));
+        assertTrue(after.connected(after.id("Bugala"), after.id("3G4")));
+        assertEquals(2, after.componentCount());
+        assertSameGraph(CsrGraph.fromMembership(live.membership()), after);
+    }
+
+    @Test
+    public void testAppendNothing() {
+        LiveGraph live = LiveGraph.load("dummy3.tsv");
+        CsrGraph before = live.graph();
+        CsrGraph after = live.append(Collections.singletonList(new AbstractMap.SimpleEntry<>("Pete De", "PPS")));
+        assertTrue(before.version() != after.version());
+        assertSameGraph(before, after);
+    }
+
+    @Test
+    public void testManyAppendsSameAsFullBuild() {
+        List<Map.Entry<String, String>> rows = rows("marvel.tsv");
+        Collections.shuffle(rows, new Random(5));
+        int chunk = rows.size() / 40;
+        LiveGraph live = new LiveGraph(MarvelParser.parseMembership("dummy2.tsv").withRows(rows.subList(0, chunk)));
+        for (int from = chunk; from < rows.size(); from += chunk) {
+            live.append(rows.subList(from, Math.min(rows.size(), from + chunk)));
+        }
+        assertSameGraph(CsrGraph.fromMembership(MarvelParser.parseMembership("dummy2.tsv").withRows(rows)),
+                live.graph());
+    }
+
+    @Test
+    public void testExtendOlderGraphAgain() {
+        List<Map.Entry<String, String>> rows = rows("marvel.tsv");
+        Collections.shuffle(rows, new Random(7));
+        int third = rows.size() / 3;
+        BookMembership base = MarvelParser.parseMembership("dummy2.tsv").withRows(rows.subList(0, third));
+        CsrGraph graph = CsrGraph.fromMembership(base);
+        // the second extension of graph cannot append where the first did, and must not disturb it
+        BookMembership first = base.withRows(rows.subList(third, 2 * third));
+        BookMembership second = base.withRows(rows.subList(2 * third, rows.size()));
+        CsrGraph firstGraph = graph.extend(base, first);
+        CsrGraph secondGraph = graph.extend(base, second);
+        assertSameGraph(CsrGraph.fromMembership(first), firstGraph);
+        assertSameGraph(CsrGraph.fromMembership(second), secondGraph);
+        assertSameGraph(CsrGraph.fromMembership(base), graph);
+        BookMembership rest = first.withRows(rows.subList(2 * third, rows.size()));
+        assertSameGraph(CsrGraph.fromMembership(base.withRows(rows)), firstGraph.extend(first, rest));
+    }
+
+    @Test
+    public void testSearchesOnAppendedGraph() {
+        // half the books come in later, with characters not seen before, so ids are out of name order
+        List<Map.Entry<String, String>> rows = rows("marvel.tsv");
+        List<Map.Entry<String, String>> early = new ArrayList<>();
+        List<Map.Entry<String, String>> late = new ArrayList<>();
+        for (Map.Entry<String, String> row : rows) {
+            (Math.floorMod(row.getValue().hashCode(), 2) == 0 ? early : late).add(row);
+        }
+        LiveGraph live = new LiveGraph(MarvelParser.parseMembership("dummy2.tsv").withRows(early));
+        CsrGraph appended = live.append(late);
+        CsrGraph built = CsrGraph.fromMembership(live.membership());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<String> nodes = built.listNodes();
+            String u = "CAPTAIN AMERICA";
+            for (int i = 0; i < nodes.size(); i += 397) {
+                String v = nodes.get(i);
+                String expected = pathToString(MarvelPaths.findCompactPath(built, u, v));
+                assertEquals(u + " to " + v, expected, pathToString(MarvelPaths.findCompactPath(appended, u, v)));
+                assertEquals(u + " to " + v, expected,
+                        pathToString(MarvelPaths.findParallelPath(appended, u, v, pool)));
+                assertEquals(u + " to " + v, expected,
+                        pathToString(MarvelPaths.findBidirectionalPath(appended, u, v)));
+                assertEquals(u + " to " + v, strongestToString(MarvelPaths.findStrongestPath(built, u, v)),
+                        strongestToString(MarvelPaths.findStrongestPath(appended, u, v)));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static String strongestToString(List<DiGraph.LabeledEdge<String, Integer>> path) {
+        if (path == null) {
+            return "no path found";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (DiGraph.LabeledEdge<String, Integer> e : path) {
+            sb.append(e.getFrom()).append(" to ").append(e.getTo()).append(" sharing ").append(e.getLabel())
+                    .append("\n");
+        }
+        return sb.toString();
+    }
+
+    private static List<Map.Entry<String, String>> rows(String filename) {
+        List<Map.Entry<String, String>> rows = new ArrayList<>();
+        MarvelParser.parseRows(filename, (data, heroStart, heroEnd, bookStart, bookEnd) ->
+                rows.add(new AbstractMap.SimpleEntry<>(MarvelParser.decode(data, heroStart, heroEnd),
+                        MarvelParser.decode(data, bookStart, bookEnd))));
+        return rows;
+    }
+}
@@ -0,0 +1,66 @@
+package marvel.junitTests;
+
+import marvel.BookMembership;
+import marvel.MarvelParser;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class MarvelParserTest {
+
+    @Test
+    public void testParseRows() {
+        List<String> rows = new ArrayList<>();
+        MarvelParser.parseRows("staffSuperheroes.tsv", (data, heroStart, heroEnd, bookStart, bookEnd) ->
+                rows.add(MarvelParser.decode(data, heroStart, heroEnd) + "|"
+                        + MarvelParser.decode(data, bookStart, bookEnd)));
+        assertEquals(9, rows.size());
+        assertEquals("Ernst-the-Bicycling-Wizard|CSE331", rows.get(0));
+        assertEquals("Grossman-the-Youngest-of-them-all|CSE341", rows.get(8));
+    }
+
+    @Test
+    public void testParseDataSameAsOpenCsv() {
+        for (String file : new String[] {"dummy2.tsv", "dummy3.tsv", "staffSuperheroes.tsv", "dummyEmpty.tsv"}) {
+            assertEquals(file, MarvelParser.parseDataOpenCsv(file), MarvelParser.parseData(file));
+        }
+    }
+
+    @Test
+    public void testParseMembershipSameAsParseData() {
+        for (String file : new String[] {"dummy2.tsv", "dummy3.tsv", "staffSuperheroes.tsv", "dummyEmpty.tsv"}) {
+            BookMembership membership = MarvelParser.parseMembership(file);
+            Map<String, Set<String>> books = new HashMap<>();
+            for (int b = 0; b < membership.bookCount(); b++) {
+                Set<String> heroes = new HashSet<>();
+                for (int i = membership.bookFirst(b); i < membership.bookEnd(b); i++) {
+                    heroes.add(membership.heroName(membership.heroOf(i)));
+                }
+                books.put(membership.bookName(b), heroes);
+            }
+            assertEquals(file, MarvelParser.parseData(file), books);
+        }
+    }
+
+    @Test
+    public void testParseMembershipDictionaries() {
+        BookMembership membership = MarvelParser.parseMembership("staffSuperheroes.tsv");
+        assertEquals(4, membership.heroCount());
+        assertEquals(5, membership.bookCount());
+        assertEquals(0, membership.heroId("Ernst-the-Bicycling-Wizard"));
+        assertEquals("CSE331", membership.bookName(membership.bookId("CSE331")));
+        assertEquals(-1, membership.heroId("CSE331"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseRowsMissingColumn() {
+        MarvelParser.parseRows("dummy1.tsv", (data, heroStart, heroEnd, bookStart, bookEnd) -> { });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseRowsNonExistentFile() {
+        MarvelParser.parseRows("dummy.tsv", (data, heroStart, heroEnd, bookStart, bookEnd) -> { });
+    }
+}
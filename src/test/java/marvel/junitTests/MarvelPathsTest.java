@@ -1,15 +1,27 @@
 package marvel.junitTests;
 
 import graph.*;
+import marvel.BipartiteGraph;
+import marvel.CsrGraph;
 import marvel.MarvelPaths;
+import marvel.SearchStats;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
+import static marvel.junitTests.TestPaths.pathToString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class MarvelPathsTest {
 
@@ -91,4 +103,312 @@ public class MarvelPathsTest {
         graph = MarvelPaths.loadGraph("dummy3.tsv");
         assertEquals(16, graph.size());
     }
+
+    @Test
+    public void testLoadCompactGraph() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        assertEquals(16, graph.size());
+        assertEquals(MarvelPaths.loadGraph("dummy3.tsv").listNodes().size(), graph.listNodes().size());
+    }
+
+    @Test
+    public void testLoadCompactGraphChildrenSorted() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        for (int n = 0; n < graph.size(); n++) {
+            for (int e = graph.firstEdge(n) + 1; e < graph.endEdge(n); e++) {
+                String prev = graph.name(graph.target(e - 1)) + "\t" + graph.labelName(graph.label(e - 1));
+                String next = graph.name(graph.target(e)) + "\t" + graph.labelName(graph.label(e));
+                assertTrue(prev + " before " + next, prev.compareTo(next) < 0);
+            }
+        }
+    }
+
+    @Test
+    public void testLoadCompactGraphSameForAnyThreads() {
+        for (String file : new String[]{"dummy2.tsv", "dummy3.tsv", "marvel.tsv"}) {
+            CsrGraph serial = MarvelPaths.loadCompactGraph(file, 1);
+            for (int threads : new int[]{2, 3, 8}) {
+                CsrGraph parallel = MarvelPaths.loadCompactGraph(file, threads);
+                assertEquals(serial.listNodes(), parallel.listNodes());
+                assertEquals(serial.edgeCount(), parallel.edgeCount());
+                assertEquals(serial.componentCount(), parallel.componentCount());
+                for (int n = 0; n < serial.size(); n++) {
+                    assertEquals(serial.firstEdge(n), parallel.firstEdge(n));
+                    assertEquals(serial.component(n), parallel.component(n));
+                }
+                for (int e = 0; e < serial.edgeCount(); e++) {
+                    assertEquals(serial.target(e), parallel.target(e));
+                    assertEquals(serial.label(e), parallel.label(e));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLinksCollapseSharedBooks() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy4.tsv");
+        int ann = graph.id("Ann");
+        assertEquals(4, graph.endEdge(ann) - graph.firstEdge(ann));
+        assertEquals(2, graph.degree(ann));
+        assertEquals(8, graph.linkCount());
+        for (int k = graph.firstLink(ann); k < graph.endLink(ann); k++) {
+            String to = graph.name(graph.linkTarget(k));
+            assertEquals(to.equals("Bob") ? 1 : 3, graph.linkWeight(k));
+            assertEquals(graph.sharedLabels("Ann", to).get(0), graph.labelName(graph.linkLabel(k)));
+        }
+        assertEquals(Arrays.asList("X1", "X2", "X3"), graph.sharedLabels("Cat", "Ann"));
+        assertTrue(graph.sharedLabels("Ann", "Dan").isEmpty());
+    }
+
+    @Test
+    public void testLinksOfRowsSharingABoundaryTarget() {
+        // the rows of A and B are both just C, so one row ends with the target the next row starts with
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy5.tsv");
+        assertEquals(4, graph.linkCount());
+        assertEquals(1, graph.degree(graph.id("A")));
+        assertEquals(1, graph.degree(graph.id("B")));
+        assertEquals(2, graph.degree(graph.id("C")));
+        assertEquals("A to C via X\nC to B via Y\n", pathToString(MarvelPaths.findCompactPath(graph, "A", "B")));
+    }
+
+    @Test
+    public void testFindStrongestPath() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy4.tsv");
+        // the direct edge is shorter, but Ann and Bob share one book while both share three with Cat
+        assertEquals(1, MarvelPaths.findCompactPath(graph, "Ann", "Bob").size());
+        LinkedList<DiGraph.LabeledEdge<String, Integer>> path = MarvelPaths.findStrongestPath(graph, "Ann", "Bob");
+        assertEquals(2, path.size());
+        assertEquals("Cat", path.get(0).getTo());
+        assertEquals(Integer.valueOf(3), path.get(0).getLabel());
+        assertEquals(Integer.valueOf(3), path.get(1).getLabel());
+        assertTrue(MarvelPaths.findStrongestPath(graph, "Ann", "Ann").isEmpty());
+        assertNull(MarvelPaths.findStrongestPath(graph, "Ann", "Eve"));
+    }
+
+    @Test
+    public void testFindStrongestPathNoWeakerThanShortest() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("marvel.tsv");
+        List<String> nodes = graph.listNodes();
+        for (int i = 0; i < nodes.size(); i += 211) {
+            String u = "CAPTAIN AMERICA";
+            String v = nodes.get(i);
+            LinkedList<DiGraph.LabeledEdge<String, String>> shortest = MarvelPaths.findCompactPath(graph, u, v);
+            LinkedList<DiGraph.LabeledEdge<String, Integer>> strongest = MarvelPaths.findStrongestPath(graph, u, v);
+            assertEquals(shortest == null, strongest == null);
+            if (shortest != null) {
+                double shortestCost = 0;
+                for (DiGraph.LabeledEdge<String, String> e : shortest) {
+                    shortestCost += 1.0 / graph.sharedLabels(e.getFrom(), e.getTo()).size();
+                }
+                double strongestCost = 0;
+                for (DiGraph.LabeledEdge<String, Integer> e : strongest) {
+                    assertEquals(graph.sharedLabels(e.getFrom(), e.getTo()).size(), (int) e.getLabel());
+                    strongestCost += 1.0 / e.getLabel();
+                }
+                assertTrue(u + " to " + v, strongestCost <= shortestCost + 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testComponents() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy2.tsv");
+        assertEquals(3, graph.componentCount());
+        int bennet = graph.id("Bennet, James");
+        assertEquals(9, graph.componentSize(graph.component(bennet)));
+        assertEquals(1, graph.componentSize(graph.component(graph.id("3G4"))));
+        assertTrue(graph.connected(bennet, graph.id("Blubber")));
+        assertTrue(!graph.connected(bennet, graph.id("Bugala")));
+        assertNull(MarvelPaths.findCompactPath(graph, "Bennet, James", "Bugala"));
+        assertNull(MarvelPaths.findBidirectionalPath(graph, "Bugala", "3G4"));
+    }
+
+    @Test
+    public void testComponentsMatchSearch() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("marvel.tsv");
+        int total = 0;
+        for (int c = 0; c < graph.componentCount(); c++) {
+            total += graph.componentSize(c);
+        }
+        assertEquals(graph.size(), total);
+        // a search from the first node reaches exactly its component
+        String u = graph.name(0);
+        List<LinkedList<DiGraph.LabeledEdge<String, String>>> paths = MarvelPaths.findPaths(graph, u, graph.listNodes());
+        for (int i = 0; i < graph.size(); i++) {
+            assertEquals(graph.name(i), graph.connected(0, i), paths.get(i) != null);
+        }
+    }
+
+    @Test(expected = Exception.class)
+    public void testLoadCompactGraphNullColumn() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy1.tsv");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFindPathCompactNonExistentNode() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy2.tsv");
+        MarvelPaths.findCompactPath(graph, "Bennet, James", "dummy");
+    }
+
+    @Test
+    public void testFindPathCompactSameAsDiGraph() {
+        CsrGraph compact = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        DiGraph<String, String> graph = MarvelPaths.loadGraph("dummy3.tsv");
+        for (String u : compact.listNodes()) {
+            for (String v : compact.listNodes()) {
+                assertEquals(u + " to " + v, pathToString(MarvelPaths.findPath(graph, u, v)),
+                        pathToString(MarvelPaths.findCompactPath(compact, u, v)));
+            }
+        }
+    }
+
+    @Test
+    public void testFindPathCompactNoPath() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy2.tsv");
+        assertNull(MarvelPaths.findCompactPath(graph, "3G4", "Bennet, James"));
+        assertEquals(0, MarvelPaths.findCompactPath(graph, "3G4", "3G4").size());
+    }
+
+    @Test
+    public void testFindPathsSameAsCompact() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        for (String u : graph.listNodes()) {
+            List<LinkedList<DiGraph.LabeledEdge<String, String>>> paths = MarvelPaths.findPaths(graph, u,
+                    graph.listNodes());
+            assertEquals(graph.size(), paths.size());
+            for (int i = 0; i < graph.size(); i++) {
+                String v = graph.name(i);
+                assertEquals(u + " to " + v, pathToString(MarvelPaths.findCompactPath(graph, u, v)),
+                        pathToString(paths.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testFindParallelPathSameAsCompact() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            CsrGraph small = MarvelPaths.loadCompactGraph("dummy3.tsv");
+            for (String u : small.listNodes()) {
+                for (String v : small.listNodes()) {
+                    assertEquals(u + " to " + v, pathToString(MarvelPaths.findCompactPath(small, u, v)),
+                            pathToString(MarvelPaths.findParallelPath(small, u, v, pool)));
+                }
+            }
+            // from the characters with the most and the fewest neighbors, so levels go both ways
+            CsrGraph marvel = MarvelPaths.loadCompactGraph("marvel.tsv");
+            List<String> nodes = marvel.listNodes();
+            for (String u : new String[]{"CAPTAIN AMERICA", "SPIDER-MAN/PETER PAR", nodes.get(0)}) {
+                for (int i = 0; i < nodes.size(); i += 97) {
+                    String v = nodes.get(i);
+                    assertEquals(u + " to " + v, pathToString(MarvelPaths.findCompactPath(marvel, u, v)),
+                            pathToString(MarvelPaths.findParallelPath(marvel, u, v, pool)));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testFindParallelPathOneThread() {
+        // a pool of one thread runs the sequential search, which has to find the same paths
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            CsrGraph marvel = MarvelPaths.loadCompactGraph("marvel.tsv");
+            List<String> nodes = marvel.listNodes();
+            String u = "CAPTAIN AMERICA";
+            for (int i = 0; i < nodes.size(); i += 499) {
+                String v = nodes.get(i);
+                assertEquals(u + " to " + v, pathToString(MarvelPaths.findCompactPath(marvel, u, v)),
+                        pathToString(MarvelPaths.findParallelPath(marvel, u, v, pool)));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFindParallelPathNonExistentNode() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy2.tsv");
+        MarvelPaths.findParallelPath(graph, "Bennet, James", "dummy", ForkJoinPool.commonPool());
+    }
+
+    @Test
+    public void testFindPathsPairsInInputOrder() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        List<String> nodes = graph.listNodes();
+        List<Map.Entry<String, String>> pairs = new ArrayList<>();
+        // sources interleaved and repeated, so grouping by source has to restore the order
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = nodes.size() - 1; j >= 0; j--) {
+                pairs.add(new AbstractMap.SimpleEntry<>(nodes.get((i * 7 + j) % nodes.size()), nodes.get(j)));
+            }
+        }
+        List<LinkedList<DiGraph.LabeledEdge<String, String>>> paths = MarvelPaths.findPaths(graph, pairs);
+        assertEquals(pairs.size(), paths.size());
+        for (int i = 0; i < pairs.size(); i++) {
+            String u = pairs.get(i).getKey();
+            String v = pairs.get(i).getValue();
+            assertEquals(u + " to " + v, pathToString(MarvelPaths.findCompactPath(graph, u, v)),
+                    pathToString(paths.get(i)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFindPathsNonExistentNode() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy2.tsv");
+        MarvelPaths.findPaths(graph, graph.name(0), Arrays.asList(graph.name(0), "dummy"));
+    }
+
+    @Test
+    public void testLoadBipartiteGraph() {
+        BipartiteGraph graph = MarvelPaths.loadBipartiteGraph("staffSuperheroes.tsv");
+        assertEquals(4, graph.heroCount());
+        assertEquals(5, graph.bookCount());
+        assertEquals(9, graph.appearanceCount());
+    }
+
+    @Test
+    public void testFindBipartitePathSameAsCompact() {
+        for (String file : new String[] {"dummy2.tsv", "dummy3.tsv", "staffSuperheroes.tsv"}) {
+            CsrGraph compact = MarvelPaths.loadCompactGraph(file);
+            BipartiteGraph bipartite = MarvelPaths.loadBipartiteGraph(file);
+            for (String u : compact.listNodes()) {
+                for (String v : compact.listNodes()) {
+                    assertEquals(u + " to " + v, pathToString(MarvelPaths.findCompactPath(compact, u, v)),
+                            pathToString(MarvelPaths.findBipartitePath(bipartite, u, v)));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFindBipartitePathNonExistentNode() {
+        BipartiteGraph graph = MarvelPaths.loadBipartiteGraph("dummy2.tsv");
+        MarvelPaths.findBipartitePath(graph, "dummy", "Bennet, James");
+    }
+
+    @Test
+    public void testFindBidirectionalPathSameAsCompact() {
+        for (String file : new String[] {"dummy2.tsv", "dummy3.tsv", "staffSuperheroes.tsv"}) {
+            CsrGraph graph = MarvelPaths.loadCompactGraph(file);
+            for (String u : graph.listNodes()) {
+                for (String v : graph.listNodes()) {
+                    assertEquals(u + " to " + v, pathToString(MarvelPaths.findCompactPath(graph, u, v)),
+                            pathToString(MarvelPaths.findBidirectionalPath(graph, u, v)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFindBidirectionalPathStats() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy2.tsv");
+        SearchStats stats = new SearchStats();
+        assertNull(MarvelPaths.findBidirectionalPath(graph, "3G4", "Bennet, James", stats));
+        MarvelPaths.findBidirectionalPath(graph, "Bennet, James", "Blubber", stats);
+        assertEquals(2, stats.searches());
+        assertTrue(stats.nodesVisited() > 0);
+    }
 }
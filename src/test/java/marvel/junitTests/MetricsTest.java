@@ -0,0 +1,71 @@
+package marvel.junitTests;
+
+import marvel.CsrGraph;
+import marvel.MarvelPaths;
+import marvel.Metrics;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    @Test
+    public void testCounter() {
+        Metrics.Counter counter = new Metrics.Counter();
+        counter.add(3);
+        counter.add(4);
+        assertEquals(7, counter.sum());
+        counter.reset();
+        assertEquals(0, counter.sum());
+    }
+
+    @Test
+    public void testHistogram() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        assertEquals(0, histogram.percentile(0.5));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-5);
+        assertEquals(101, histogram.count());
+        assertEquals(5050, histogram.sum());
+        assertEquals(100, histogram.max());
+        // within a factor of two of the true value, never past the max
+        assertTrue(histogram.percentile(0.5) >= 50 && histogram.percentile(0.5) < 100);
+        assertTrue(histogram.percentile(0.99) >= 99 && histogram.percentile(0.99) <= 100);
+        assertEquals(0, histogram.percentile(0));
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+    }
+
+    @Test
+    public void testSnapshotRecordsOnlyWhenEnabled() {
+        Metrics.reset();
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        MarvelPaths.findCompactPath(graph, "John Blackbeard", "Pete De");
+        MarvelPaths.findPath(MarvelPaths.toDiGraph(graph), "John Blackbeard", "Pete De");
+        Map<String, Long> values = Metrics.snapshot();
+        assertTrue(values.containsKey("search.time.p99"));
+        assertTrue(values.containsKey("parse.rows"));
+        long searches = Metrics.ENABLED ? 2 : 0;
+        assertEquals(searches, (long) values.get("search.time.count"));
+        assertEquals(Metrics.ENABLED ? graph.size() : 0, (long) values.get("graph.nodes"));
+        assertTrue(Metrics.report().contains("parse.rowsPerSecond"));
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        Metrics.registerMBean();
+        Metrics.registerMBean();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        assertEquals(Metrics.ENABLED, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Enabled"));
+        assertTrue(((String) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Report"))
+                .contains("search.time.count"));
+    }
+}
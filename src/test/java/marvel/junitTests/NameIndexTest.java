@@ -0,0 +1,137 @@
+package marvel.junitTests;
+
+import marvel.CsrGraph;
+import marvel.MarvelPaths;
+import marvel.NameIndex;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NameIndexTest {
+
+    @Test
+    public void testLookupExact() {
+        NameIndex index = NameIndex.fromGraph(MarvelPaths.loadCompactGraph("dummy3.tsv"));
+        assertEquals(Collections.singletonList("Pete De"), index.lookup("Pete De"));
+    }
+
+    @Test
+    public void testLookupSubstring() {
+        NameIndex index = NameIndex.fromGraph(MarvelPaths.loadCompactGraph("dummy3.tsv"));
+        assertEquals(Arrays.asList("Cutthroat Pete The Long", "Large Pete The Pirate", "Pete Bones", "Pete De",
+                "Peteplank"), index.lookup("pete"));
+        assertEquals(Collections.singletonList("Pete De"), index.lookup("De"));
+    }
+
+    @Test
+    public void testLookupIsLiteral() {
+        NameIndex index = NameIndex.fromGraph(MarvelPaths.loadCompactGraph("dummy3.tsv"));
+        assertTrue(index.lookup("(").isEmpty());
+        assertTrue(index.lookup("Pete.*").isEmpty());
+        assertEquals(Collections.singletonList("Cap'n Dreadful"), index.lookup("cap'n"));
+    }
+
+    @Test
+    public void testPrefixMatches() {
+        NameIndex index = NameIndex.fromGraph(MarvelPaths.loadCompactGraph("marvel.tsv"));
+        assertEquals(Arrays.asList("PARKER, MARY", "PARKER, MARY (ROBOT)", "PARKER, MAY", "PARKER, MAY II",
+                "PARKER, MAY III", "PARKER, MAY | TIMESL"), index.prefixMatches("parker, m"));
+        assertTrue(index.prefixMatches("peter par").contains("SPIDER-MAN/PETER PAR"));
+        assertTrue(index.prefixMatches("parker").contains("HOLDSWORTH, PARKER"));
+        assertTrue(!index.prefixMatches("parker").contains("WATSON-PARKER, MARY"));
+    }
+
+    @Test
+    public void testLookupSameAsScan() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("marvel.tsv");
+        NameIndex index = NameIndex.fromGraph(graph);
+        for (String input : Arrays.asList("spider", "SPIDER-MAN/peter", "captain america", "x", "3-d man",
+                "wolverine/logan", "hulk", "ab", "(", "zzzz")) {
+            assertEquals(input, scan(graph, input), index.lookup(input));
+        }
+    }
+
+    @Test
+    public void testFuzzyMatchesTypos() {
+        NameIndex index = NameIndex.fromGraph(MarvelPaths.loadCompactGraph("marvel.tsv"));
+        assertEquals("SPIDER-MAN/PETER PAR", index.fuzzyMatches("Spiderman", 2, 5).get(0));
+        assertEquals("CAPTAIN AMERICA", index.fuzzyMatches("Capt America", 3, 5).get(0));
+        assertTrue(index.fuzzyMatches("Capt America", 2, 5).isEmpty());
+    }
+
+    @Test
+    public void testFuzzyMatchesRanking() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        NameIndex index = NameIndex.fromGraph(graph);
+        assertEquals(Arrays.asList("Pete De"), index.fuzzyMatches("pete de", 0, 5));
+        assertEquals(Arrays.asList("Pete De", "Pete Bones"), index.fuzzyMatches("Pete Be", 3, 5));
+        assertEquals(Arrays.asList("Pete De"), index.fuzzyMatches("Pete Be", 3, 1));
+        for (String input : Arrays.asList("Bill", "John Long", "Pete The")) {
+            List<String> matches = index.fuzzyMatches(input, 3, graph.size());
+            for (int i = 1; i < matches.size(); i++) {
+                int previous = levenshtein(matches.get(i - 1).toLowerCase(), input.toLowerCase());
+                int current = levenshtein(matches.get(i).toLowerCase(), input.toLowerCase());
+                assertTrue(matches.toString(), previous < current || (previous == current
+                        && index.degree(matches.get(i - 1)) >= index.degree(matches.get(i))));
+            }
+        }
+        assertEquals(-1, index.degree("dummy"));
+    }
+
+    @Test
+    public void testFuzzyMatchesSameAsScan() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        NameIndex index = NameIndex.fromGraph(graph);
+        for (String input : Arrays.asList("Pete Bonez", "john longbrnd", "admiral", "Large Pete", "xyz")) {
+            List<String> expected = new ArrayList<>();
+            for (String s : graph.listNodes()) {
+                if (levenshtein(s.toLowerCase(), input.toLowerCase()) <= 2) {
+                    expected.add(s);
+                }
+            }
+            List<String> actual = new ArrayList<>(index.fuzzyMatches(input, 2, graph.size()));
+            Collections.sort(actual);
+            assertEquals(input, expected, actual);
+        }
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                } else {
+                    d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1),
+                            d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1));
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    // what the prompt matched before the index: a name containing the input, or a "/"-separated
+    // alias longer than one letter that the input starts with, ignoring case
+    private static List<String> scan(CsrGraph graph, String input) {
+        List<String> result = new ArrayList<>();
+        String n = input.toLowerCase();
+        for (String s : graph.listNodes()) {
+            boolean match = s.toLowerCase().contains(n);
+            if (s.contains("/")) {
+                for (String alias : s.split("/")) {
+                    match |= alias.length() > 1 && n.startsWith(alias.toLowerCase());
+                }
+            }
+            if (match) {
+                result.add(s);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+package marvel.junitTests;
+
+import graph.*;
+import marvel.CsrGraph;
+import marvel.MarvelPaths;
+import marvel.PathCache;
+import org.junit.Test;
+
+import java.util.List;
+
+import static marvel.junitTests.TestPaths.pathToString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PathCacheTest {
+
+    @Test
+    public void testSameAsCompact() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        PathCache cache = new PathCache(1000);
+        for (int round = 0; round < 2; round++) {
+            for (String u : graph.listNodes()) {
+                for (String v : graph.listNodes()) {
+                    assertEquals(u + " to " + v, pathToString(MarvelPaths.findCompactPath(graph, u, v)),
+                            pathToString(cache.findPath(graph, u, v)));
+                }
+            }
+        }
+        int pairs = graph.size() * graph.size();
+        assertEquals(2L * pairs, cache.hits() + cache.misses());
+        assertTrue(cache.hits() >= pairs);
+        // some pairs have a single shortest path, so their reverse was answered without a search
+        assertTrue(cache.misses() < pairs);
+        assertEquals(0, cache.evictions());
+    }
+
+    @Test
+    public void testEviction() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        PathCache cache = new PathCache(2);
+        String a = graph.name(0);
+        cache.findPath(graph, a, graph.name(1));
+        cache.findPath(graph, a, graph.name(2));
+        cache.findPath(graph, a, graph.name(1));
+        cache.findPath(graph, a, graph.name(3));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        // (a, 1) was used after (a, 2), so (a, 2) was the one dropped
+        cache.findPath(graph, a, graph.name(1));
+        assertEquals(2, cache.hits());
+        cache.findPath(graph, a, graph.name(2));
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    public void testInvalidatedByNewGraph() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        PathCache cache = new PathCache(10);
+        String u = graph.name(0);
+        String v = graph.name(1);
+        cache.findPath(graph, u, v);
+        cache.findPath(graph, u, v);
+        assertEquals(1, cache.hits());
+
+        CsrGraph rebuilt = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        assertTrue(graph.version() != rebuilt.version());
+        assertEquals(pathToString(MarvelPaths.findCompactPath(rebuilt, u, v)),
+                pathToString(cache.findPath(rebuilt, u, v)));
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(1, cache.invalidations());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCallerCannotChangeCachedPath() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        PathCache cache = new PathCache(10);
+        String u = graph.name(0);
+        String v = graph.name(graph.size() - 1);
+        String expected = pathToString(cache.findPath(graph, u, v));
+        List<DiGraph.LabeledEdge<String, String>> path = cache.findPath(graph, u, v);
+        if (path != null) {
+            path.clear();
+        }
+        assertEquals(expected, pathToString(cache.findPath(graph, u, v)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonExistentNode() {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy2.tsv");
+        new PathCache(10).findPath(graph, graph.name(0), "dummy");
+    }
+}
@@ -0,0 +1,71 @@
+package marvel.junitTests;
+
+import graph.*;
+import marvel.CsrGraph;
+import marvel.MarvelPaths;
+import marvel.PathQueryService;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import static marvel.junitTests.TestPaths.pathToString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PathQueryServiceTest {
+
+    @Test
+    public void testFindPathSameAsCompact() throws Exception {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        try (PathQueryService service = new PathQueryService(graph)) {
+            List<CompletableFuture<LinkedList<DiGraph.LabeledEdge<String, String>>>> futures = new ArrayList<>();
+            for (String u : graph.listNodes()) {
+                for (String v : graph.listNodes()) {
+                    futures.add(service.findPath(u, v));
+                }
+            }
+            int i = 0;
+            for (String u : graph.listNodes()) {
+                for (String v : graph.listNodes()) {
+                    assertEquals(u + " to " + v, pathToString(MarvelPaths.findCompactPath(graph, u, v)),
+                            pathToString(futures.get(i++).get()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFindPathsOnGivenExecutor() throws Exception {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy3.tsv");
+        ExecutorService executor = PathQueryService.newBoundedExecutor(4);
+        try (PathQueryService service = new PathQueryService(graph, executor)) {
+            String u = graph.name(0);
+            List<LinkedList<DiGraph.LabeledEdge<String, String>>> expected =
+                    MarvelPaths.findPaths(graph, u, graph.listNodes());
+            List<LinkedList<DiGraph.LabeledEdge<String, String>>> paths =
+                    service.findPaths(u, graph.listNodes()).get();
+            assertEquals(expected.size(), paths.size());
+            for (int i = 0; i < paths.size(); i++) {
+                assertEquals(pathToString(expected.get(i)), pathToString(paths.get(i)));
+            }
+        }
+        assertTrue(!executor.isShutdown());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testFindPathNonExistentNode() throws InterruptedException {
+        CsrGraph graph = MarvelPaths.loadCompactGraph("dummy2.tsv");
+        try (PathQueryService service = new PathQueryService(graph)) {
+            service.findPath(graph.name(0), "dummy").get();
+            assertTrue("expected an exception", false);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+}
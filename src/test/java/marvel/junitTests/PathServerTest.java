@@ -0,0 +1,135 @@
+package marvel.junitTests;
+
+import marvel.CsrGraph;
+import marvel.MarvelPaths;
+import marvel.PathServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PathServerTest {
+
+    private PathServer server;
+
+    @BeforeClass
+    public static void setUpClass() {
+        // without it every keep-alive request waits out a delayed ack, see PathServer
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = PathServer.start(MarvelPaths.loadCompactGraph("dummy3.tsv"), 0);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testPath() throws IOException {
+        assertEquals("200 {\"from\":\"John Blackbeard\",\"to\":\"Pete De\",\"length\":1,\"path\":["
+                        + "{\"from\":\"John Blackbeard\",\"to\":\"Pete De\",\"book\":\"PPS\"}]}",
+                get("/path?from=John+Blackbeard&to=Pete%20De"));
+        assertEquals("200 {\"from\":\"Pete De\",\"to\":\"Pete De\",\"length\":0,\"path\":[]}",
+                get("/path?from=Pete+De&to=Pete+De"));
+    }
+
+    @Test
+    public void testPathSameAsBidirectional() throws IOException {
+        CsrGraph graph = server.graph();
+        for (String u : graph.listNodes()) {
+            for (String v : graph.listNodes()) {
+                String answer = get("/path?from=" + encode(u) + "&to=" + encode(v));
+                int length = MarvelPaths.findBidirectionalPath(graph, u, v) == null ? -1
+                        : MarvelPaths.findBidirectionalPath(graph, u, v).size();
+                assertTrue(answer, answer.contains(",\"length\":" + length + ","));
+            }
+        }
+    }
+
+    @Test
+    public void testDistance() throws IOException {
+        assertEquals("200 {\"from\":\"John Blackbeard\",\"to\":\"Pete De\",\"distance\":1}",
+                get("/distance?from=John+Blackbeard&to=Pete+De"));
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        String answer = get("/lookup?q=pete");
+        assertTrue(answer, answer.startsWith("200 {\"query\":\"pete\",\"fuzzy\":false,\"matches\":["));
+        assertTrue(answer, answer.contains("\"Pete De\""));
+        assertEquals("200 {\"query\":\"pete\",\"fuzzy\":false,\"matches\":[]}", get("/lookup?q=pete&limit=0"));
+        assertTrue(get("/lookup?q=Pete+Dx").startsWith("200 {\"query\":\"Pete Dx\",\"fuzzy\":true,"));
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        String answer = post("/batch", "John Blackbeard\tPete De\n\nNobody\tPete De\n");
+        assertEquals("200 {\"results\":[{\"from\":\"John Blackbeard\",\"to\":\"Pete De\",\"length\":1,\"path\":["
+                + "{\"from\":\"John Blackbeard\",\"to\":\"Pete De\",\"book\":\"PPS\"}]},"
+                + "{\"from\":\"Nobody\",\"to\":\"Pete De\",\"error\":\"Nobody is not in the graph.\"}]}", answer);
+        assertTrue(post("/batch", "John Blackbeard\n").startsWith("400 "));
+        // lines are counted as read, blank ones included
+        assertEquals("400 {\"error\":\"line 3 is not two names separated by a tab\"}",
+                post("/batch", "John Blackbeard\tPete De\n\nJohn Blackbeard\n"));
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        assertEquals("404 {\"error\":\"Nobody is not in the graph.\"}", get("/path?from=Nobody&to=Pete+De"));
+        assertEquals("400 {\"error\":\"missing parameter to\"}", get("/distance?from=Pete+De"));
+        assertEquals("404 {\"error\":\"Nobody is not in the graph.\"}", get("/distance?from=Pete+De&to=Nobody"));
+        assertEquals("405 {\"error\":\"use POST\"}", get("/batch"));
+        assertTrue(get("/metrics").startsWith("200 {\""));
+    }
+
+    private String get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url(path).openConnection();
+        return answer(connection);
+    }
+
+    private String post(String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url(path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return answer(connection);
+    }
+
+    private URL url(String path) throws IOException {
+        return new URL("http://localhost:" + server.port() + path);
+    }
+
+    // the status and body of the answer
+    private static String answer(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            byte[] buffer = new byte[4096];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                body.write(buffer, 0, n);
+            }
+        }
+        return status + " " + body.toString("UTF-8");
+    }
+
+    private static String encode(String s) throws IOException {
+        return java.net.URLEncoder.encode(s, "UTF-8");
+    }
+}
@@ -0,0 +1,92 @@
+package marvel.junitTests;
+
+import marvel.BookMembership;
+import marvel.CsrGraph;
+import marvel.MarvelParser;
+import marvel.MarvelPaths;
+import marvel.SyntheticData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SyntheticDataTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("marvel", ".tsv");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testSameSeedSameData() throws IOException {
+        assertEquals(text(5000, 7), text(5000, 7));
+        assertTrue(!text(5000, 7).equals(text(5000, 8)));
+    }
+
+    @Test
+    public void testRowCount() throws IOException {
+        for (long rows : new long[] {0, 1, 2, 999, 5000}) {
+            SyntheticData.write(file, rows, 1);
+            BookMembership membership = MarvelParser.parseMembership(file);
+            assertEquals(rows, membership.appearanceCount());
+            assertEquals(rows + 1, Files.readAllLines(file).size());
+        }
+    }
+
+    @Test
+    public void testLoadFromFile() throws IOException {
+        SyntheticData.write(file, 20000, 3);
+        CsrGraph graph = MarvelPaths.loadCompactGraph(file, 2);
+        assertEquals(MarvelParser.parseData(file).size(), graph.labelCount());
+        assertTrue(graph.size() <= 20000 / SyntheticData.ROWS_PER_HERO);
+        assertTrue(graph.size() > 20000 / SyntheticData.ROWS_PER_HERO / 2);
+        String u = graph.name(0);
+        String v = graph.name(graph.size() - 1);
+        assertEquals(MarvelPaths.findCompactPath(graph, u, v),
+                MarvelPaths.findPath(MarvelPaths.toDiGraph(graph), u, v));
+    }
+
+    @Test
+    public void testHubsAndSmallBooks() throws IOException {
+        SyntheticData.write(file, 50000, 5);
+        BookMembership membership = MarvelParser.parseMembership(file);
+        int[] books = new int[membership.heroCount()];
+        int small = 0;
+        int largest = 0;
+        for (int b = 0; b < membership.bookCount(); b++) {
+            int size = membership.bookEnd(b) - membership.bookFirst(b);
+            small += size <= 10 ? 1 : 0;
+            largest = Math.max(largest, size);
+            for (int i = membership.bookFirst(b); i < membership.bookEnd(b); i++) {
+                books[membership.heroOf(i)]++;
+            }
+        }
+        // most books are small but a few are large, and the busiest character is in far more books
+        // than the typical one
+        assertTrue(small > membership.bookCount() / 2);
+        assertTrue(largest >= 50);
+        Arrays.sort(books);
+        assertTrue(books[books.length - 1] > 20 * books[books.length / 2]);
+    }
+
+    private static String text(long rows, long seed) throws IOException {
+        StringWriter out = new StringWriter();
+        SyntheticData.write(out, rows, seed);
+        return out.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package marvel.junitTests;
+
+import marvel.CsrGraph;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Helpers shared by the tests that compare graphs built in different ways.
+ */
+final class TestGraphs {
+
+    private TestGraphs() {
+    }
+
+    /**
+     * Asserts that two graphs have the same nodes, edges, links and components. Nodes and labels are
+     * compared by name, edges and links in the order they are numbered for each node, the edges of a
+     * link by where they start in the row of its node, and components as a partition of the nodes, so
+     * the graphs may number their nodes and labels and place their rows differently.
+     *
+     * @param expected the graph actual should equal
+     * @param actual the graph to check
+     * @spec.requires expected != null and actual != null
+     */
+    static void assertSameGraph(CsrGraph expected, CsrGraph actual) {
+        assertEquals(expected.listNodes(), actual.listNodes());
+        assertEquals(expected.labelCount(), actual.labelCount());
+        assertEquals(expected.edgeCount(), actual.edgeCount());
+        assertEquals(expected.linkCount(), actual.linkCount());
+        assertEquals(expected.componentCount(), actual.componentCount());
+        int[] componentOf = new int[expected.componentCount()];
+        Arrays.fill(componentOf, -1);
+        for (String name : expected.listNodes()) {
+            int n = expected.id(name);
+            int m = actual.id(name);
+            assertEquals(name, expected.endEdge(n) - expected.firstEdge(n), actual.endEdge(m) - actual.firstEdge(m));
+            for (int e = expected.firstEdge(n), f = actual.firstEdge(m); e < expected.endEdge(n); e++, f++) {
+                assertEquals(name, expected.name(expected.target(e)), actual.name(actual.target(f)));
+                assertEquals(name, expected.labelName(expected.label(e)), actual.labelName(actual.label(f)));
+            }
+            assertEquals(name, expected.degree(n), actual.degree(m));
+            for (int k = expected.firstLink(n), l = actual.firstLink(m); k < expected.endLink(n); k++, l++) {
+                assertEquals(name, expected.name(expected.linkTarget(k)), actual.name(actual.linkTarget(l)));
+                assertEquals(name, expected.linkEdge(k) - expected.firstEdge(n),
+                        actual.linkEdge(l) - actual.firstEdge(m));
+                assertEquals(name, expected.linkWeight(k), actual.linkWeight(l));
+                assertEquals(name, expected.labelName(expected.linkLabel(k)), actual.labelName(actual.linkLabel(l)));
+            }
+            // the same component sizes, and nodes sharing a component in one sharing it in the other
+            int c = expected.component(n);
+            assertEquals(name, expected.componentSize(c), actual.componentSize(actual.component(m)));
+            if (componentOf[c] < 0) {
+                componentOf[c] = actual.component(m);
+            }
+            assertEquals(name, componentOf[c], actual.component(m));
+        }
+    }
+}
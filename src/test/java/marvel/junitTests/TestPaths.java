@@ -0,0 +1,29 @@
+package marvel.junitTests;
+
+import graph.*;
+
+import java.util.List;
+
+/**
+ * Helpers shared by the tests that compare the paths found by different searches.
+ */
+final class TestPaths {
+
+    private TestPaths() {
+    }
+
+    /**
+     * @param path a path, or null if there is none
+     * @return one "from to to via label" line per edge of path, or "no path found" if path is null
+     */
+    static String pathToString(List<DiGraph.LabeledEdge<String, String>> path) {
+        if (path == null) {
+            return "no path found";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (DiGraph.LabeledEdge<String, String> e : path) {
+            sb.append(e.getFrom()).append(" to ").append(e.getTo()).append(" via ").append(e.getLabel()).append("\n");
+        }
+        return sb.toString();
+    }
+}